@@ -0,0 +1,70 @@
+package com.mayakplay.testtask.benchmark;
+
+import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.infrastructure.CommandProcessor;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Полная обработка строки команды {@link CommandProcessor#processCommand(CharSequence, Consumer)}:
+ * разбор, проверка аргументов и вызов сервиса.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandProcessorBenchmark {
+
+    private static final Consumer<String> IGNORED_MESSAGES = message -> {
+    };
+
+    @Param({"NEW", "PURCHASE", "DEMAND", "SALESREPORT"})
+    public String command;
+
+    private CommandProcessor commandProcessor;
+    private String[] commandLines;
+    private int nextLine;
+
+    /**
+     * Каждая итерация начинается с нового состояния, чтобы NEW не упирался
+     * в уже созданные продукты, а PURCHASE и DEMAND - в историю прошлых итераций
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        commandProcessor = new CommandProcessor();
+        commandProcessor.setEcho(false);
+        commandProcessor.registerProcessedController(new ProductController(new ProductServiceImpl()));
+
+        commandProcessor.processCommand("NEW iphone", IGNORED_MESSAGES);
+        commandProcessor.processCommand("PURCHASE iphone 1000000000 1 01.01.2017", IGNORED_MESSAGES);
+        commandProcessor.processCommand("DEMAND iphone 1 2 01.01.2017", IGNORED_MESSAGES);
+
+        if (command.equals("NEW")) {
+            commandLines = new String[1 << 20];
+            for (int index = 0; index < commandLines.length; index++) {
+                commandLines[index] = "NEW product" + index;
+            }
+        } else if (command.equals("PURCHASE")) {
+            commandLines = new String[]{"PURCHASE iphone 10 1000 02.01.2017"};
+        } else if (command.equals("DEMAND")) {
+            commandLines = new String[]{"DEMAND iphone 1 2000 02.01.2017"};
+        } else {
+            commandLines = new String[]{"SALESREPORT iphone 02.01.2017"};
+        }
+        nextLine = 0;
+    }
+
+    @Benchmark
+    public String processCommand() {
+        final String commandLine = commandLines[nextLine];
+        nextLine = nextLine + 1 == commandLines.length ? 0 : nextLine + 1;
+
+        return commandProcessor.processCommand(commandLine, IGNORED_MESSAGES);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.mayakplay.testtask.benchmark;
+
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductServiceImpl#demandProduct} и закупка задним числом на короткой и длинной истории партий.
+ * <p>
+ * Все партии истории не израсходованы, и остатка каждой хватает на все итерации,
+ * поэтому израсходованные партии не удаляются и длина истории показывает стоимость
+ * проверки остатка на дату, списания из первой партии и вставки партии в начало истории.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemandBenchmark {
+
+    private static final LocalDate START_DATE = LocalDate.of(2017, 1, 1);
+
+    private static final int BATCH_AMOUNT = 1000000000;
+
+    @Param({"1", "1000", "100000"})
+    public int batches;
+
+    private ProductServiceImpl productService;
+    private int productId;
+    private LocalDate demandDate;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        productService = new ProductServiceImpl();
+        productId = productService.createProduct("iphone");
+
+        for (int index = 0; index < batches; index++) {
+            productService.purchaseBatch(productId, BATCH_AMOUNT, 1000, START_DATE.plusDays(1 + index / 100));
+        }
+        demandDate = START_DATE.plusDays(batches / 100 + 2);
+    }
+
+    @Benchmark
+    public void demandProduct() {
+        productService.demandProduct("iphone", 1, 2000, demandDate);
+    }
+
+    @Benchmark
+    public void demandProductById() {
+        productService.demandProduct(productId, 1, 2000, demandDate);
+    }
+
+    /**
+     * Партия раньше всех партий истории
+     */
+    @Benchmark
+    public void purchaseBackdated() {
+        productService.purchaseBatch(productId, 1, 1000, START_DATE);
+    }
+
+}
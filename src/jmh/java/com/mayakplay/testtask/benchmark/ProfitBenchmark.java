@@ -0,0 +1,54 @@
+package com.mayakplay.testtask.benchmark;
+
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductServiceImpl#getProfitFor} на растущем количестве продаж
+ * за дату в середине и в конце истории.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfitBenchmark {
+
+    private static final LocalDate START_DATE = LocalDate.of(2000, 1, 1);
+    private static final int SALES_PER_DAY = 10;
+
+    @Param({"100", "10000", "1000000"})
+    public int sales;
+
+    private ProductServiceImpl productService;
+    private LocalDate middleDate;
+    private LocalDate lastDate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        productService = new ProductServiceImpl();
+        productService.createProduct("iphone");
+        productService.purchaseBatch("iphone", sales, 1000, START_DATE);
+
+        for (int index = 0; index < sales; index++) {
+            productService.demandProduct("iphone", 1, 1000 + index % 100, START_DATE.plusDays(index / SALES_PER_DAY));
+        }
+        middleDate = START_DATE.plusDays(sales / SALES_PER_DAY / 2);
+        lastDate = START_DATE.plusDays(sales / SALES_PER_DAY);
+    }
+
+    @Benchmark
+    public int profitForMiddleDate() {
+        return productService.getProfitFor("iphone", middleDate);
+    }
+
+    @Benchmark
+    public int profitForLastDate() {
+        return productService.getProfitFor("iphone", lastDate);
+    }
+
+}
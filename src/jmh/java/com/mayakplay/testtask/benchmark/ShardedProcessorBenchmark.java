@@ -0,0 +1,69 @@
+package com.mayakplay.testtask.benchmark;
+
+import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.infrastructure.ShardedCommandProcessor;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Пропускная способность {@link ShardedCommandProcessor} на 1..N шардах.
+ * Каждая операция - пакет PURCHASE и DEMAND по многим продуктам,
+ * отправленный без ожидания ответов.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedProcessorBenchmark {
+
+    private static final int PRODUCTS = 1024;
+    private static final int BATCH_SIZE = 16 * 1024;
+
+    private static final Consumer<String> IGNORED_OUTPUT = line -> {
+    };
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private ShardedCommandProcessor commandProcessor;
+    private String[] commandLines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        commandProcessor = new ShardedCommandProcessor(shards, 4096,
+                processor -> processor.registerProcessedController(new ProductController(new ProductServiceImpl())));
+
+        for (int product = 0; product < PRODUCTS; product++) {
+            commandProcessor.submit("NEW product" + product, IGNORED_OUTPUT);
+        }
+        commandProcessor.flush();
+
+        commandLines = new String[BATCH_SIZE];
+        for (int index = 0; index < BATCH_SIZE; index += 2) {
+            final String product = "product" + (index / 2) % PRODUCTS;
+
+            commandLines[index] = "PURCHASE " + product + " 1 100 01.01.2017";
+            commandLines[index + 1] = "DEMAND " + product + " 1 150 02.01.2017";
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        commandProcessor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void processBatch() {
+        for (String commandLine : commandLines) {
+            commandProcessor.submit(commandLine, IGNORED_OUTPUT);
+        }
+        commandProcessor.flush();
+    }
+
+}
@@ -1,11 +1,35 @@
 package com.mayakplay.testtask;
 
+import com.mayakplay.testtask.controller.PersistenceController;
 import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.infrastructure.CommandPipeline;
 import com.mayakplay.testtask.infrastructure.CommandProcessor;
+import com.mayakplay.testtask.infrastructure.ShardedCommandProcessor;
+import com.mayakplay.testtask.network.CommandServer;
+import com.mayakplay.testtask.output.AsyncSink;
+import com.mayakplay.testtask.output.BufferedSink;
+import com.mayakplay.testtask.output.OutputSink;
+import com.mayakplay.testtask.persistence.PersistentStorage;
+import com.mayakplay.testtask.replay.ScriptReplayer;
 import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.service.impl.MappedProductServiceImpl;
 import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import com.mayakplay.testtask.type.FsyncPolicy;
 
-import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @see CommandProcessor содержит логику обработки команд
@@ -13,35 +37,222 @@ import java.util.Scanner;
  */
 public final class Main {
 
-    private final Scanner scanner;
-    private final CommandProcessor commandProcessor;
+    private static final int OUTPUT_BATCH_SIZE = 64 * 1024;
+    private static final int REPLAY_OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final String DEFAULT_FLUSH_INTERVAL_MILLIS = "10";
+    private static final int SHARD_QUEUE_CAPACITY = 4096;
 
-    private Main() {
-        this.scanner = new Scanner(System.in);
-        this.commandProcessor = new CommandProcessor();
+    /**
+     * Команды над продуктами разных шардов: шард не может выполнить их атомарно
+     * или посчитать отчет по всем продуктам
+     */
+    private static final String[] CROSS_SHARD_COMMANDS = {
+            "BEGIN", "COMMIT", "ROLLBACK", "PURCHASES", "DEMANDS", "TOTALS", "TOP"
+    };
 
-        ProductService productService = new ProductServiceImpl();
-        ProductController productController = new ProductController(productService);
+    private final CommandPipeline commandPipeline;
+    private final OutputSink outputSink;
 
-        commandProcessor.registerProcessedController(productController);
+    private Main(CommandPipeline commandPipeline, OutputSink outputSink) {
+        this.commandPipeline = commandPipeline;
+        this.outputSink = outputSink;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(outputSink::close));
     }
 
     /**
-     * Запускает обработку команд
+     * Запускает обработку команд.
+     * Вывод отправляется, когда во вводе не осталось готовых строк.
      */
-    private void startProcessing() {
-        commandProcessor.startProcessing();
-        while (scanner.hasNext()) {
-            System.out.println(
-                    commandProcessor.processCommand(scanner.nextLine())
-            );
+    private void startProcessing() throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+
+        final Consumer<String> output = outputSink::println;
+
+        commandPipeline.startProcessing();
+        outputSink.flush();
+
+        String commandLine;
+        while ((commandLine = reader.readLine()) != null) {
+            commandPipeline.submit(commandLine, output);
+
+            if (!reader.ready()) {
+                commandPipeline.flush();
+                outputSink.flush();
+            }
         }
+        commandPipeline.flush();
     }
 
-    public static void main(String[] args) {
-        final Main main = new Main();
+    /**
+     * Выполняет файл команд без интерактивного ввода, статистика печатается в stderr
+     *
+     * @param script путь к файлу команд
+     */
+    private void replay(String script) throws IOException {
+        final ScriptReplayer.ReplayStatistics statistics = new ScriptReplayer(commandPipeline, outputSink)
+                .replay(Paths.get(script));
+
+        System.err.println(statistics);
+    }
+
+    /**
+     * Создает вывод в stdout: "buffered" копит пакеты в потоке обработки,
+     * "async" пишет их отдельным потоком
+     *
+     * @param options параметры запуска
+     */
+    private static OutputSink createOutputSink(Map<String, String> options) {
+        final int batchSize = options.containsKey("--replay") ? REPLAY_OUTPUT_BUFFER_SIZE : OUTPUT_BATCH_SIZE;
+        final OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+
+        final String output = options.getOrDefault("--output", "buffered");
+        switch (output.toLowerCase()) {
+            case "buffered":
+                return new BufferedSink(stdout, batchSize);
+            case "async":
+                return new AsyncSink(stdout, batchSize);
+            default:
+                throw new IllegalArgumentException("Unknown output: " + output);
+        }
+    }
+
+    /**
+     * Принимает команды по TCP вместо стандартного ввода
+     *
+     * @param port порт сервера
+     */
+    private void serve(int port) throws IOException, InterruptedException {
+        final CommandServer server = CommandServer.start(commandPipeline, new InetSocketAddress(port));
+        System.err.println("Listening on " + server.getLocalAddress());
+
+        server.join();
+    }
+
+    /**
+     * Восстанавливает состояние сервиса из каталога данных и подключает к нему журнал.
+     * При завершении программы делается снимок состояния.
+     *
+     * @param options параметры запуска
+     * @return хранилище с восстановленным сервисом
+     */
+    private static PersistentStorage openStorage(Map<String, String> options) throws IOException {
+        final Path directory = Paths.get(options.get("--data-dir"));
+        final FsyncPolicy fsyncPolicy = FsyncPolicy.valueOf(options.getOrDefault("--fsync", "GROUP_COMMIT").toUpperCase());
+        final long flushIntervalMillis = Long.parseLong(options.getOrDefault("--flush-interval", DEFAULT_FLUSH_INTERVAL_MILLIS));
+
+        final long startTime = System.currentTimeMillis();
+        final PersistentStorage persistentStorage = PersistentStorage.open(
+                directory, createProductService(options), fsyncPolicy, flushIntervalMillis);
+        System.err.println("Restored " + directory + " in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                persistentStorage.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+
+        return persistentStorage;
+    }
 
-        main.startProcessing();
+    /**
+     * Открывает сервис, хранящий партии и продажи в отображенных в память файлах каталога.
+     * При завершении программы изменения сбрасываются на диск.
+     *
+     * @param options параметры запуска
+     * @return сервис с данными каталога
+     */
+    private static MappedProductServiceImpl openMappedService(Map<String, String> options) throws IOException {
+        final Path directory = Paths.get(options.get("--mapped-dir"));
+
+        final long startTime = System.currentTimeMillis();
+        final MappedProductServiceImpl productService = MappedProductServiceImpl.open(directory);
+        System.err.println("Opened " + directory + " in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                productService.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+
+        return productService;
+    }
+
+    /**
+     * @param options параметры запуска, "--sales-horizon" задает горизонт хранения продаж в днях
+     * @return новый сервис продуктов
+     */
+    private static ProductServiceImpl createProductService(Map<String, String> options) {
+        return options.containsKey("--sales-horizon")
+                ? new ProductServiceImpl(Integer.parseInt(options.get("--sales-horizon")))
+                : new ProductServiceImpl();
+    }
+
+    /**
+     * @return параметры запуска вида "--имя значение"
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (int index = 0; index + 1 < args.length; index += 2) {
+            if (!args[index].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument: " + args[index]);
+
+            options.put(args[index], args[index + 1]);
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Map<String, String> options = parseOptions(args);
+
+        final OutputSink outputSink = createOutputSink(options);
+
+        final Main main;
+        if (options.containsKey("--shards")) {
+            if (options.containsKey("--data-dir") || options.containsKey("--mapped-dir"))
+                throw new IllegalArgumentException("--shards can not be used with --data-dir or --mapped-dir");
+
+            final ShardedCommandProcessor shardedProcessor = new ShardedCommandProcessor(
+                    Integer.parseInt(options.get("--shards")), SHARD_QUEUE_CAPACITY,
+                    processor -> {
+                        processor.setOutputSink(outputSink);
+                        processor.registerProcessedController(new ProductController(createProductService(options)));
+                    });
+            shardedProcessor.rejectCommands(CROSS_SHARD_COMMANDS);
+
+            main = new Main(shardedProcessor, outputSink);
+        } else {
+            final CommandProcessor commandProcessor = new CommandProcessor();
+            commandProcessor.setOutputSink(outputSink);
+
+            if (options.containsKey("--data-dir") && options.containsKey("--mapped-dir"))
+                throw new IllegalArgumentException("--data-dir can not be used with --mapped-dir");
+
+            if (options.containsKey("--data-dir")) {
+                final PersistentStorage persistentStorage = openStorage(options);
+
+                commandProcessor.registerProcessedController(new ProductController(persistentStorage.getProductService()));
+                commandProcessor.registerProcessedController(new PersistenceController(persistentStorage));
+            } else if (options.containsKey("--mapped-dir")) {
+                commandProcessor.registerProcessedController(new ProductController(openMappedService(options)));
+            } else {
+                commandProcessor.registerProcessedController(new ProductController(createProductService(options)));
+            }
+
+            main = new Main(commandProcessor, outputSink);
+        }
+
+        if (options.containsKey("--replay")) {
+            main.replay(options.get("--replay"));
+        } else if (options.containsKey("--port")) {
+            main.serve(Integer.parseInt(options.get("--port")));
+        } else {
+            main.startProcessing();
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package com.mayakplay.testtask.controller;
+
+import com.mayakplay.testtask.annotation.CommandDescription;
+import com.mayakplay.testtask.annotation.CommandMethod;
+import com.mayakplay.testtask.persistence.PersistentStorage;
+import lombok.AllArgsConstructor;
+
+import java.io.IOException;
+
+@AllArgsConstructor
+public final class PersistenceController {
+
+    private final PersistentStorage persistentStorage;
+
+    @CommandMethod("SNAPSHOT")
+    @CommandDescription("Writes state snapshot in background and drops replayed journals")
+    public void snapshot() throws IOException {
+        persistentStorage.snapshot();
+    }
+
+}
@@ -1,42 +1,129 @@
 package com.mayakplay.testtask.controller;
 
 import com.mayakplay.testtask.annotation.Argument;
+import com.mayakplay.testtask.annotation.CommandDescription;
 import com.mayakplay.testtask.annotation.CommandMethod;
+import com.mayakplay.testtask.infrastructure.CommandSession;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
 import com.mayakplay.testtask.service.ProductService;
-import lombok.AllArgsConstructor;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.ProductOperationType;
+import com.mayakplay.testtask.type.SalesRanking;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.validation.constraints.PastOrPresent;
 import javax.validation.constraints.Positive;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
 
-@AllArgsConstructor
+/**
+ * Изменяющие команды возвращают {@link OperationStatus}, который обработчик команд
+ * выводит как OK, QUEUED или ERROR, не создавая исключений при отказе.
+ * Команды транзакции, вызванные не вовремя, отвечают {@link OperationStatus#TRANSACTION_STATE_MISMATCH}.
+ * Открытая транзакция хранится в {@link CommandSession} клиента, поэтому у каждого
+ * подключения своя транзакция, которая отбрасывается при его закрытии.
+ */
+@RequiredArgsConstructor
 public final class ProductController {
 
     private final ProductService productService;
 
+    /**
+     * Закупки и продажи открытой транзакции в сессии клиента, нет значения - транзакция не открыта
+     */
+    private final CommandSession.Key<List<ProductOperation>> transactionKey = new CommandSession.Key<>();
+
+    /**
+     * Сессия методов, вызванных напрямую, а не обработчиком команд
+     */
+    private final CommandSession directSession = new CommandSession();
+
     @CommandMethod("NEW")
-    public void createProduct(@Argument("name") String productName) {
-        productService.createProduct(productName);
+    public OperationStatus createProduct(@Argument("name") String productName) {
+        return productService.tryCreateProduct(productName);
     }
 
     @CommandMethod("PURCHASE")
-    public void purchaseProduct(
+    public OperationStatus purchaseProduct(
             @Argument("name") String productName,
             @Positive @Argument("amount") int amount,
             @Positive @Argument("price") int price,
             @PastOrPresent @Argument("date") LocalDate date
     ) {
-        productService.purchaseBatch(productName, amount, price, date);
+        final List<ProductOperation> transaction = getTransaction();
+        if (transaction != null) {
+            transaction.add(ProductOperation.purchase(productName, amount, price, date));
+            return OperationStatus.QUEUED;
+        }
+
+        return productService.tryPurchaseBatch(productName, amount, price, date);
     }
 
     @CommandMethod("DEMAND")
-    public void demandProduct(
+    public OperationStatus demandProduct(
             @Argument("name") String productName,
             @Positive @Argument("amount") int amount,
             @Positive @Argument("price") int price,
             @PastOrPresent @Argument("date") LocalDate date
     ) {
-        productService.demandProduct(productName, amount, price, date);
+        final List<ProductOperation> transaction = getTransaction();
+        if (transaction != null) {
+            transaction.add(ProductOperation.demand(productName, amount, price, date));
+            return OperationStatus.QUEUED;
+        }
+
+        return productService.tryDemandProduct(productName, amount, price, date);
+    }
+
+    @CommandMethod("PURCHASES")
+    @CommandDescription("Purchases items name:amount:price,name:amount:price atomically")
+    public OperationStatus purchaseProducts(
+            @PastOrPresent @Argument("date") LocalDate date,
+            @Argument("items") String items
+    ) {
+        return productService.tryApplyOperations(parseItems(ProductOperationType.PURCHASE, date, items));
+    }
+
+    @CommandMethod("DEMANDS")
+    @CommandDescription("Demands items name:amount:price,name:amount:price atomically")
+    public OperationStatus demandProducts(
+            @PastOrPresent @Argument("date") LocalDate date,
+            @Argument("items") String items
+    ) {
+        return productService.tryApplyOperations(parseItems(ProductOperationType.DEMAND, date, items));
+    }
+
+    @CommandMethod("BEGIN")
+    @CommandDescription("Starts a transaction: PURCHASE and DEMAND are queued until COMMIT")
+    public OperationStatus beginTransaction() {
+        if (getTransaction() != null)
+            return OperationStatus.TRANSACTION_STATE_MISMATCH;
+
+        session().set(transactionKey, new ArrayList<>());
+        return OperationStatus.OK;
+    }
+
+    @CommandMethod("COMMIT")
+    @CommandDescription("Applies queued PURCHASE and DEMAND all together or none of them")
+    public OperationStatus commitTransaction() {
+        final List<ProductOperation> operations = endTransaction();
+        if (operations == null)
+            return OperationStatus.TRANSACTION_STATE_MISMATCH;
+
+        return productService.tryApplyOperations(operations);
+    }
+
+    @CommandMethod("ROLLBACK")
+    @CommandDescription("Drops queued PURCHASE and DEMAND")
+    public OperationStatus rollbackTransaction() {
+        return endTransaction() == null ? OperationStatus.TRANSACTION_STATE_MISMATCH : OperationStatus.OK;
     }
 
     @CommandMethod("SALESREPORT")
@@ -47,4 +134,106 @@ public final class ProductController {
         return productService.getProfitFor(productName, date);
     }
 
+    @CommandMethod("STOCK")
+    @CommandDescription("Prints amount available for sale on the date and its FIFO purchase cost")
+    public String getStock(
+            @Argument("name") String productName,
+            @Argument("date") LocalDate date
+    ) {
+        final Stock stock = productService.getStock(productName, date);
+        return String.format("amount=%d value=%d", stock.getAmount(), stock.getValue());
+    }
+
+    @CommandMethod("PROFIT")
+    @CommandDescription("Prints profit of the product between dates inclusive")
+    public long getProfitBetween(
+            @Argument("name") String productName,
+            @Argument("from") LocalDate from,
+            @Argument("to") LocalDate to
+    ) {
+        return productService.getProfitBetween(productName, from, to);
+    }
+
+    @CommandMethod("TOTALS")
+    @CommandDescription("Prints profit and sold amount of all products between dates inclusive")
+    public String getTotals(
+            @Argument("from") LocalDate from,
+            @Argument("to") LocalDate to
+    ) {
+        final SalesSummary summary = productService.getSalesSummary(from, to);
+        return String.format("profit=%d volume=%d", summary.getProfit(), summary.getVolume());
+    }
+
+    @CommandMethod("TOP")
+    @CommandDescription("Prints best products by PROFIT or VOLUME between dates inclusive")
+    public String getTopProducts(
+            @Argument("ranking") SalesRanking ranking,
+            @Positive @Argument("limit") int limit,
+            @Argument("from") LocalDate from,
+            @Argument("to") LocalDate to
+    ) {
+        final StringJoiner joiner = new StringJoiner(System.lineSeparator());
+        for (ProductSales sales : productService.getTopProducts(ranking, limit, from, to)) {
+            joiner.add(String.format(" %s profit=%d volume=%d",
+                    sales.getProductName(), sales.getProfit(), sales.getVolume()));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Закрывает открытую транзакцию клиента
+     *
+     * @return ее операции или null, если транзакция не открыта
+     */
+    @Nullable
+    private List<ProductOperation> endTransaction() {
+        final List<ProductOperation> operations = getTransaction();
+        if (operations != null) {
+            session().set(transactionKey, null);
+        }
+        return operations;
+    }
+
+    /**
+     * @return операции открытой транзакции клиента или null
+     */
+    @Nullable
+    private List<ProductOperation> getTransaction() {
+        return session().get(transactionKey);
+    }
+
+    @NotNull
+    private CommandSession session() {
+        final CommandSession session = CommandSession.current();
+        return session != null ? session : directSession;
+    }
+
+    /**
+     * Разбирает позиции вида name:amount:price, разделенные запятыми.
+     * Имя может содержать двоеточия, количество и цена берутся с конца позиции.
+     *
+     * @throws IllegalArgumentException если позиция не соответствует формату
+     */
+    @NotNull
+    private static List<ProductOperation> parseItems(
+            @NotNull ProductOperationType type,
+            @NotNull LocalDate date,
+            @NotNull String items
+    ) throws IllegalArgumentException {
+        final List<ProductOperation> operations = new ArrayList<>();
+        for (String item : items.split(",")) {
+            final int priceSeparator = item.lastIndexOf(':');
+            final int amountSeparator = priceSeparator > 0 ? item.lastIndexOf(':', priceSeparator - 1) : -1;
+            if (amountSeparator <= 0)
+                throw new IllegalArgumentException("Item must be name:amount:price: " + item);
+
+            final String productName = item.substring(0, amountSeparator);
+            final int amount = Integer.parseInt(item.substring(amountSeparator + 1, priceSeparator));
+            final int price = Integer.parseInt(item.substring(priceSeparator + 1));
+
+            operations.add(new ProductOperation(type, productName, amount, price, date));
+        }
+        return operations;
+    }
+
 }
@@ -26,12 +26,45 @@ final class ArgumentDefinition {
     @NotNull
     private final String originalParameterName;
 
-    static ArgumentDefinition of(@NotNull Parameter parameter) {
+    @NotNull
+    private final ArgumentParser<?> parser;
+
+    /**
+     * Передается ли аргумент числом без упаковки, см. {@link #isNumericType(Class)}
+     */
+    private final boolean numeric;
+
+    static ArgumentDefinition of(@NotNull Parameter parameter, @NotNull ArgumentParserRegistry parserRegistry) {
         final Argument annotation = parameter.getAnnotation(Argument.class);
         final String argumentName = annotation != null ? annotation.value() : parameter.getType().getSimpleName();
         final String errorDescription = annotation != null ? annotation.onError() : null;
 
-        return new ArgumentDefinition(argumentName, parameter.getType(), errorDescription, parameter.getName());
+        final ArgumentParser<?> parser = parserRegistry.getParser(parameter.getType());
+
+        return new ArgumentDefinition(argumentName, parameter.getType(), errorDescription, parameter.getName(), parser,
+                isNumericType(parameter.getType()));
+    }
+
+    static ArgumentDefinition of(
+            @NotNull String name,
+            @NotNull Class<?> type,
+            @Nullable String errorDescription,
+            @NotNull String originalParameterName,
+            @NotNull ArgumentParserRegistry parserRegistry
+    ) {
+        return new ArgumentDefinition(name, type, errorDescription, originalParameterName, parserRegistry.getParser(type),
+                isNumericType(type));
+    }
+
+    /**
+     * Аргументы типов int и long разбираются через {@link ArgumentParser#parseNumber(CharSequence)}
+     * в массив чисел и передаются методу команды без упаковки
+     *
+     * @param type тип параметра
+     * @return true, если аргумент такого типа передается числом
+     */
+    static boolean isNumericType(@NotNull Class<?> type) {
+        return type == int.class || type == long.class;
     }
 
 }
@@ -0,0 +1,36 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Преобразует слово команды в значение аргумента.
+ * Выбирается один раз при регистрации команды.
+ *
+ * @param <T> тип аргумента
+ */
+@FunctionalInterface
+public interface ArgumentParser<T> {
+
+    /**
+     * @param text слово команды
+     * @return значение аргумента
+     *
+     * @throws IllegalArgumentException если слово не является значением аргумента,
+     *      сообщение исключения будет выведено пользователю
+     */
+    T parse(@NotNull CharSequence text) throws IllegalArgumentException;
+
+    /**
+     * Разбирает слово аргумента типа int или long, который передается методу без упаковки.
+     * По умолчанию берет число из результата {@link #parse(CharSequence)}
+     *
+     * @param text слово команды
+     * @return значение аргумента
+     *
+     * @throws IllegalArgumentException если слово не является значением аргумента
+     */
+    default long parseNumber(@NotNull CharSequence text) throws IllegalArgumentException {
+        return ((Number) parse(text)).longValue();
+    }
+
+}
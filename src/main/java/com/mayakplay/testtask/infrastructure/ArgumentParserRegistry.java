@@ -0,0 +1,227 @@
+package com.mayakplay.testtask.infrastructure;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.mayakplay.testtask.adapter.LocalDateTypeAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Реестр {@link ArgumentParser} по типам аргументов.
+ * <p>
+ * Строки, числа, даты и перечисления разбираются напрямую из слова команды,
+ * остальные типы - через {@link Gson}, который создается только при первой необходимости.
+ */
+public final class ArgumentParserRegistry {
+
+    static final String DATE_PATTERN = "dd.MM.u";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_PATTERN);
+
+    private static final ArgumentParser<Integer> INT_PARSER = new ArgumentParser<Integer>() {
+        @Override
+        public Integer parse(@NotNull CharSequence text) {
+            return parseInt(text);
+        }
+
+        @Override
+        public long parseNumber(@NotNull CharSequence text) {
+            return parseInt(text);
+        }
+    };
+
+    private static final ArgumentParser<Long> LONG_PARSER = new ArgumentParser<Long>() {
+        @Override
+        public Long parse(@NotNull CharSequence text) {
+            return parseLong(text);
+        }
+
+        @Override
+        public long parseNumber(@NotNull CharSequence text) {
+            return parseLong(text);
+        }
+    };
+
+    private final Map<Class<?>, ArgumentParser<?>> parsersMap = new HashMap<>();
+
+    private Gson gson;
+
+    ArgumentParserRegistry() {
+        register(String.class, CharSequence::toString);
+        register(int.class, INT_PARSER);
+        register(Integer.class, INT_PARSER);
+        register(long.class, LONG_PARSER);
+        register(Long.class, LONG_PARSER);
+        register(LocalDate.class, ArgumentParserRegistry::parseDate);
+    }
+
+    /**
+     * Регистрирует разборщик для типа, заменяя существующий
+     *
+     * @param type   тип аргумента
+     * @param parser разборщик
+     */
+    <T> void register(@NotNull Class<T> type, @NotNull ArgumentParser<? extends T> parser) {
+        parsersMap.put(type, parser);
+    }
+
+    /**
+     * @param type тип аргумента
+     * @return разборщик для типа
+     */
+    @NotNull
+    ArgumentParser<?> getParser(@NotNull Class<?> type) {
+        final ArgumentParser<?> parser = parsersMap.get(type);
+        if (parser != null)
+            return parser;
+
+        if (type.isEnum()) {
+            final Enum<?>[] constants = (Enum<?>[]) type.getEnumConstants();
+            return text -> parseEnum(constants, type, text);
+        }
+
+        return text -> parseJson(text, type);
+    }
+
+    //region PARSERS
+    /**
+     * Разбирает десятичное число без промежуточных строк
+     *
+     * @throws NumberFormatException если слово не является числом типа int
+     */
+    static int parseInt(@NotNull CharSequence text) throws NumberFormatException {
+        final long value = parseLong(text);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw numberFormatException(text);
+
+        return (int) value;
+    }
+
+    /**
+     * Разбирает десятичное число без промежуточных строк
+     *
+     * @throws NumberFormatException если слово не является числом типа long
+     */
+    static long parseLong(@NotNull CharSequence text) throws NumberFormatException {
+        final int length = text.length();
+        if (length == 0)
+            throw numberFormatException(text);
+
+        final boolean negative = text.charAt(0) == '-';
+        int position = negative || text.charAt(0) == '+' ? 1 : 0;
+        if (position == length)
+            throw numberFormatException(text);
+
+        long value = 0;
+        for (; position < length; position++) {
+            final int digit = text.charAt(position) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10)
+                throw numberFormatException(text);
+
+            value = value * 10 - digit;
+        }
+
+        if (!negative && value == Long.MIN_VALUE)
+            throw numberFormatException(text);
+
+        return negative ? value : -value;
+    }
+
+    /**
+     * Разбирает дату формата {@value #DATE_PATTERN}. Слова вида dd.MM.yyyy
+     * с корректной датой разбираются напрямую, остальные - через {@link DateTimeFormatter}
+     *
+     * @throws DateTimeException если слово не является датой
+     */
+    @NotNull
+    static LocalDate parseDate(@NotNull CharSequence text) throws DateTimeException {
+        if (text.length() == 10 && text.charAt(2) == '.' && text.charAt(5) == '.') {
+            final int day = digits(text, 0, 2);
+            final int month = digits(text, 3, 5);
+            final int year = digits(text, 6, 10);
+
+            if (day > 0 && month > 0 && month <= 12 && year >= 0 && day <= lengthOfMonth(year, month))
+                return LocalDate.of(year, month, day);
+        }
+
+        return LocalDate.parse(text, DATE_FORMATTER);
+    }
+
+    /**
+     * Находит константу перечисления по имени без учета регистра, не создавая строк
+     *
+     * @throws IllegalArgumentException если такой константы нет
+     */
+    @NotNull
+    static Enum<?> parseEnum(@NotNull Enum<?>[] constants, @NotNull Class<?> type, @NotNull CharSequence text)
+            throws IllegalArgumentException {
+        for (Enum<?> constant : constants) {
+            final String name = constant.name();
+
+            if (name.length() == text.length() && matchesIgnoreCase(name, text))
+                return constant;
+        }
+
+        throw new IllegalArgumentException("No enum constant " + type.getCanonicalName() + "." + text.toString().toUpperCase());
+    }
+
+    private Object parseJson(@NotNull CharSequence text, @NotNull Class<?> type) throws JsonParseException {
+        if (gson == null) {
+            gson = new GsonBuilder()
+                    .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter(DATE_PATTERN))
+                    .create();
+        }
+
+        return gson.fromJson(text.toString(), type);
+    }
+    //endregion
+
+    /**
+     * @return число из цифр слова или -1, если среди символов есть не цифры
+     */
+    private static int digits(@NotNull CharSequence text, int start, int end) {
+        int value = 0;
+        for (int position = start; position < end; position++) {
+            final int digit = text.charAt(position) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static boolean matchesIgnoreCase(@NotNull String name, @NotNull CharSequence text) {
+        for (int index = 0; index < name.length(); index++) {
+            if (Character.toUpperCase(text.charAt(index)) != Character.toUpperCase(name.charAt(index)))
+                return false;
+        }
+        return true;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    @NotNull
+    private static NumberFormatException numberFormatException(@NotNull CharSequence text) {
+        return new NumberFormatException("For input string: \"" + text + "\"");
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.mayakplay.testtask.infrastructure;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Описание команды в {@link CommandRegistry}: то, что обработчик команд
+ * иначе читает из аннотаций метода через рефлексию
+ */
+@Getter
+@RequiredArgsConstructor
+public final class CommandDeclaration {
+
+    /**
+     * Значение {@link com.mayakplay.testtask.annotation.CommandMethod}
+     */
+    @NotNull
+    private final String name;
+
+    /**
+     * Значение {@link com.mayakplay.testtask.annotation.CommandDescription}, пустое, если ее нет
+     */
+    @NotNull
+    private final String description;
+
+    @NotNull
+    private final String methodName;
+
+    @NotNull
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * Имена аргументов из {@link com.mayakplay.testtask.annotation.Argument}
+     * или простые имена типов параметров без нее
+     */
+    @NotNull
+    private final String[] argumentNames;
+
+    @NotNull
+    private final String[] parameterNames;
+
+    /**
+     * Сообщения об ошибке из {@link com.mayakplay.testtask.annotation.Argument}, null для параметров без нее
+     */
+    @NotNull
+    private final String[] errorDescriptions;
+
+    /**
+     * Есть ли у метода или параметров ограничения {@code javax.validation}
+     */
+    private final boolean constrained;
+
+}
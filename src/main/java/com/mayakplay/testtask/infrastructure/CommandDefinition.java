@@ -3,48 +3,234 @@ package com.mayakplay.testtask.infrastructure;
 
 import com.google.common.collect.ImmutableList;
 import com.mayakplay.testtask.annotation.CommandDescription;
-import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+/**
+ * Определение команды. Создается из {@link CommandRegistry} контроллера или,
+ * если реестра нет, из метода через рефлексию.
+ * <p>
+ * Для команды из реестра метод ищется, а план проверки аргументов составляется
+ * только при первой проверке аргументов с ограничениями.
+ */
 final class CommandDefinition {
 
+    private static final String DEFAULT_DESCRIPTION = "This is default command description ;).";
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class, long[].class);
+
+    private static final MethodHandle OBJECT_GETTER = MethodHandles.arrayElementGetter(Object[].class);
+    private static final MethodHandle NUMBER_GETTER = MethodHandles.arrayElementGetter(long[].class);
+
     @NotNull
     @Getter
     private final Object controller;
 
     @NotNull
     @Getter
-    private final Method commandMethod;
+    private final String description;
 
     @NotNull
-    @Getter
-    private final String description;
+    private final ImmutableList<ArgumentDefinition> arguments;
+
+    /**
+     * Метод контроллера, привязанный к объекту контроллера,
+     * с типом (Object[], long[])Object. Null для команды из реестра.
+     */
+    @Nullable
+    private final MethodHandle invoker;
+
+    @Nullable
+    private final CommandRegistry<Object> registry;
+
+    private final int registryIndex;
+
+    @Nullable
+    private final CommandDeclaration declaration;
+
+    @Nullable
+    private Method commandMethod;
+
+    @Nullable
+    private ConstraintPlan constraintPlan;
 
     @NotNull
-    private final List<ArgumentDefinition> arguments;
+    @Getter
+    private final CommandStatistics statistics = new CommandStatistics();
 
-    static CommandDefinition of(@NotNull Object controller, @NotNull Method method) {
+    private CommandDefinition(
+            @NotNull Object controller,
+            @NotNull String description,
+            @NotNull ImmutableList<ArgumentDefinition> arguments,
+            @Nullable MethodHandle invoker,
+            @Nullable CommandRegistry<Object> registry,
+            int registryIndex,
+            @Nullable CommandDeclaration declaration,
+            @Nullable Method commandMethod,
+            @Nullable ConstraintPlan constraintPlan
+    ) {
+        this.controller = controller;
+        this.description = description;
+        this.arguments = arguments;
+        this.invoker = invoker;
+        this.registry = registry;
+        this.registryIndex = registryIndex;
+        this.declaration = declaration;
+        this.commandMethod = commandMethod;
+        this.constraintPlan = constraintPlan;
+    }
+
+    static CommandDefinition of(
+            @NotNull Object controller,
+            @NotNull Method method,
+            @NotNull ArgumentParserRegistry parserRegistry
+    ) {
         CommandDescription annotation = method.getAnnotation(CommandDescription.class);
-        String description = annotation == null || annotation.value().isEmpty()
-                ? "This is default command description ;)." : annotation.value();
 
-        final List<ArgumentDefinition> argumentDefinitions = Arrays.stream(method.getParameters())
-                .map(ArgumentDefinition::of)
-                .collect(Collectors.toList());
+        final ImmutableList<ArgumentDefinition> argumentDefinitions = ImmutableList.copyOf(
+                Arrays.stream(method.getParameters())
+                        .map(parameter -> ArgumentDefinition.of(parameter, parserRegistry))
+                        .collect(Collectors.toList()));
+
+        return new CommandDefinition(controller, description(annotation == null ? null : annotation.value()),
+                argumentDefinitions, bindInvoker(controller, method), null, -1, null,
+                method, ConstraintPlan.compile(method));
+    }
+
+    /**
+     * @param registry реестр команд класса контроллера
+     * @param index    номер команды в реестре
+     */
+    static CommandDefinition of(
+            @NotNull Object controller,
+            @NotNull CommandRegistry<Object> registry,
+            int index,
+            @NotNull CommandDeclaration declaration,
+            @NotNull ArgumentParserRegistry parserRegistry
+    ) {
+        final ImmutableList.Builder<ArgumentDefinition> argumentDefinitions = ImmutableList.builder();
+        for (int parameter = 0; parameter < declaration.getParameterTypes().length; parameter++) {
+            argumentDefinitions.add(ArgumentDefinition.of(
+                    declaration.getArgumentNames()[parameter],
+                    declaration.getParameterTypes()[parameter],
+                    declaration.getErrorDescriptions()[parameter],
+                    declaration.getParameterNames()[parameter],
+                    parserRegistry));
+        }
 
-        return new CommandDefinition(controller, method, description, argumentDefinitions);
+        return new CommandDefinition(controller, description(declaration.getDescription()),
+                argumentDefinitions.build(), null, registry, index, declaration,
+                null, declaration.isConstrained() ? null : ConstraintPlan.empty());
     }
 
     List<ArgumentDefinition> getArgumentsList() {
-        return ImmutableList.copyOf(arguments);
+        return arguments;
+    }
+
+    /**
+     * @return метод контроллера. Для команды из реестра ищется при первом вызове
+     */
+    @NotNull
+    Method getCommandMethod() {
+        if (commandMethod == null) {
+            assert declaration != null;
+
+            try {
+                commandMethod = controller.getClass()
+                        .getDeclaredMethod(declaration.getMethodName(), declaration.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return commandMethod;
+    }
+
+    /**
+     * @return план проверки аргументов. Для команды из реестра составляется при первом вызове
+     */
+    @NotNull
+    ConstraintPlan getConstraintPlan() {
+        if (constraintPlan == null) {
+            constraintPlan = ConstraintPlan.compile(getCommandMethod());
+        }
+        return constraintPlan;
+    }
+
+    /**
+     * Запускает метод контроллера
+     *
+     * @param argumentObjects аргументы метода, кроме числовых, см. {@link ArgumentDefinition#isNumeric()}
+     * @param argumentNumbers числовые аргументы метода по тем же индексам
+     * @return результат метода или null, если метод ничего не возвращает
+     */
+    Object invoke(@NotNull Object[] argumentObjects, @NotNull long[] argumentNumbers) throws Throwable {
+        if (registry != null)
+            return registry.invoke(controller, registryIndex, argumentObjects, argumentNumbers);
+
+        assert invoker != null;
+        return (Object) invoker.invokeExact(argumentObjects, argumentNumbers);
+    }
+
+    /**
+     * @return все аргументы метода, числовые упакованы. Нужен для {@link javax.validation.Validator}
+     */
+    @NotNull
+    Object[] boxArguments(@NotNull Object[] argumentObjects, @NotNull long[] argumentNumbers) {
+        final Object[] arguments = argumentObjects.clone();
+        for (int index = 0; index < arguments.length; index++) {
+            final ArgumentDefinition argument = this.arguments.get(index);
+
+            if (argument.isNumeric()) {
+                arguments[index] = argument.getType() == int.class
+                        ? Integer.valueOf((int) argumentNumbers[index]) : Long.valueOf(argumentNumbers[index]);
+            }
+        }
+        return arguments;
+    }
+
+    @NotNull
+    private static String description(@Nullable String description) {
+        return description == null || description.isEmpty() ? DEFAULT_DESCRIPTION : description;
+    }
+
+    /**
+     * Привязывает метод к контроллеру: каждый параметр читается из своего элемента
+     * массива аргументов или, если он числовой, массива чисел
+     */
+    @NotNull
+    private static MethodHandle bindInvoker(@NotNull Object controller, @NotNull Method method) {
+        method.setAccessible(true);
+
+        try {
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            final MethodHandle[] getters = new MethodHandle[parameterTypes.length];
+            final int[] sources = new int[parameterTypes.length];
+
+            for (int index = 0; index < parameterTypes.length; index++) {
+                final boolean numeric = ArgumentDefinition.isNumericType(parameterTypes[index]);
+                final MethodHandle getter = MethodHandles.insertArguments(numeric ? NUMBER_GETTER : OBJECT_GETTER, 1, index);
+
+                getters[index] = MethodHandles.explicitCastArguments(getter,
+                        MethodType.methodType(parameterTypes[index], numeric ? long[].class : Object[].class));
+                sources[index] = numeric ? 1 : 0;
+            }
+
+            final MethodHandle target = MethodHandles.filterArguments(
+                    MethodHandles.lookup().unreflect(method).bindTo(controller), 0, getters);
+            return MethodHandles.permuteArguments(target.asType(target.type().changeReturnType(Object.class)),
+                    INVOKER_TYPE, sources);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
 }
@@ -0,0 +1,168 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Разбивает строку команды на слова по пробелам без регулярных выражений.
+ * Пробелы в начале, в конце и повторяющиеся пробелы пропускаются.
+ * <p>
+ * Слова не копируются: токенизатор хранит их границы в своих массивах,
+ * которые переиспользуются от строки к строке, а {@link #token} отдает слово
+ * через один и тот же {@link CharSequence}. Используется одним потоком.
+ */
+final class CommandLineTokenizer {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    @NotNull
+    private CharSequence commandLine = "";
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int count;
+
+    private final TokenSlice slice = new TokenSlice();
+
+    /**
+     * Разбивает строку на слова, заменяя результат предыдущего разбора
+     *
+     * @param commandLine строка команды, не должна меняться до {@link #clear()}
+     * @return количество слов
+     */
+    int tokenize(@NotNull CharSequence commandLine) {
+        this.commandLine = commandLine;
+        count = 0;
+
+        final int length = commandLine.length();
+        int position = 0;
+        while (position < length) {
+            while (position < length && commandLine.charAt(position) == ' ') {
+                position++;
+            }
+
+            final int start = position;
+            while (position < length && commandLine.charAt(position) != ' ') {
+                position++;
+            }
+
+            if (position > start) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = start;
+                ends[count] = position;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @param index номер слова, начиная с 0
+     * @return слово. Один и тот же объект для всех слов,
+     * действителен до следующего вызова {@link #token} или {@link #clear()}
+     */
+    @NotNull
+    CharSequence token(int index) {
+        return slice.reset(commandLine, starts[index], ends[index]);
+    }
+
+    /**
+     * Отпускает строку команды
+     */
+    void clear() {
+        commandLine = "";
+        count = 0;
+        slice.reset("", 0, 0);
+    }
+
+    /**
+     * Считает {@link String#hashCode()} слова, не выделяя для него строку
+     *
+     * @param commandLine строка команды
+     * @param tokenIndex  номер слова, начиная с 0
+     * @return хеш слова или 0, если слов меньше
+     */
+    static int hashToken(@NotNull CharSequence commandLine, int tokenIndex) {
+        final int length = commandLine.length();
+        int position = 0;
+        for (int token = 0; position < length; token++) {
+            while (position < length && commandLine.charAt(position) == ' ') {
+                position++;
+            }
+
+            int hash = 0;
+            while (position < length && commandLine.charAt(position) != ' ') {
+                hash = 31 * hash + commandLine.charAt(position++);
+            }
+
+            if (token == tokenIndex)
+                return hash;
+        }
+        return 0;
+    }
+
+    /**
+     * Слово строки команды без копирования символов
+     */
+    private static final class TokenSlice implements CharSequence {
+
+        @NotNull
+        private CharSequence source = "";
+        private int start;
+        private int end;
+
+        @NotNull
+        private TokenSlice reset(@NotNull CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start)
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + (end - start));
+
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > this.end - this.start || start > end)
+                throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length());
+
+            return source.subSequence(this.start + start, this.start + end);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return source.subSequence(start, end).toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Принимает строки команд и выдает их ответы в порядке поступления.
+ * <p>
+ * Ответ команды - ее сообщения и строка результата. Он может быть выдан
+ * позже, но всегда в потоке, вызывающем {@link #submit} или {@link #flush()}.
+ * Сам конвейер используется одним потоком.
+ */
+public interface CommandPipeline {
+
+    /**
+     * Печатает справку по командам перед приемом команд
+     */
+    void startProcessing();
+
+    /**
+     * Принимает команду в сессии конвейера по умолчанию
+     *
+     * @param commandLine строка команды
+     * @param output      получатель строк ответа
+     */
+    void submit(@NotNull String commandLine, @NotNull Consumer<String> output);
+
+    /**
+     * Принимает команду клиента
+     *
+     * @param commandLine строка команды
+     * @param output      получатель строк ответа
+     * @param session     сессия клиента, в которой выполняется команда
+     */
+    void submit(@NotNull String commandLine, @NotNull Consumer<String> output, @NotNull CommandSession session);
+
+    /**
+     * Ждет выполнения всех принятых команд и выдает их ответы
+     */
+    void flush();
+
+    /**
+     * @return повторяется ли строка команды в ответе
+     */
+    boolean isEcho();
+
+    /**
+     * @param echo повторять ли строку команды в ответе перед ее обработкой
+     */
+    void setEcho(boolean echo);
+
+}
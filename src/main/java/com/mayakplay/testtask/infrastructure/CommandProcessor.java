@@ -1,189 +1,407 @@
 package com.mayakplay.testtask.infrastructure;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.mayakplay.testtask.adapter.LocalDateTypeAdapter;
 import com.mayakplay.testtask.annotation.CommandDescription;
 import com.mayakplay.testtask.annotation.CommandMethod;
 import com.mayakplay.testtask.exception.CommandAlreadyExistsException;
 import com.mayakplay.testtask.exception.InvalidCommandNameException;
-import com.mayakplay.testtask.type.ArgumentMistakeType;
+import com.mayakplay.testtask.output.OutputSink;
+import com.mayakplay.testtask.output.PrintStreamSink;
+import com.mayakplay.testtask.type.CommandPhase;
+import com.mayakplay.testtask.type.OperationStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.validation.*;
 import java.lang.reflect.Method;
-import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
- * Класс используется для регистрации и обработки команд
+ * Класс используется для регистрации и обработки команд.
+ * <p>
+ * Обработчик используется одним потоком, поэтому границы слов команды и аргументы
+ * хранятся в его переиспользуемых массивах: разбор корректной команды не создает
+ * объектов, кроме значений аргументов и результата команды.
  */
-public final class CommandProcessor {
+public final class CommandProcessor implements CommandPipeline {
 
-    private final Gson gson;
-    private final Validator validator;
+    private static final String UNKNOWN_COMMAND_MESSAGE = "Unknown command! Try \'?\', to get all commands.";
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final ArgumentParserRegistry parserRegistry = new ArgumentParserRegistry();
 
     /**
-     * Мапа содержит в себе зарегистрированные определения команд
-     *
-     * &lt;Имя команды, Определение команды&gt;
+     * Создается при первой команде, которую не может проверить {@link ConstraintPlan}
      */
-    private final Map<String, CommandDefinition> classDefinitionsMap = new LinkedHashMap<>();
+    private Validator validator;
 
-    //region CONSTRUCTION
-    public CommandProcessor() {
-        this.gson = new GsonBuilder()
-                .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter("dd.MM.u"))
-                .create();
+    /**
+     * Зарегистрированные определения команд по именам
+     */
+    private final CommandTable commandTable = new CommandTable();
 
-        registerProcessedController(this);
+    private final CommandLineTokenizer tokenizer = new CommandLineTokenizer();
 
-        final ValidatorFactory factory = Validation.byDefaultProvider()
-                .configure()
-                .buildValidatorFactory();
+    /**
+     * Массивы аргументов по количеству аргументов команды.
+     * Заполняются при разборе команды и очищаются после ее вызова.
+     */
+    private Object[][] argumentArrays = {NO_ARGUMENTS};
 
-        this.validator = factory.getValidator();
+    /**
+     * Числовые аргументы команды, см. {@link ArgumentDefinition#isNumeric()}.
+     * Не меньше самого длинного массива аргументов
+     */
+    private long[] argumentNumbers = new long[0];
+
+    /**
+     * Повторять ли строку команды в выводе перед ее обработкой
+     */
+    private boolean echo = true;
+
+    /**
+     * Вывод по умолчанию для сообщений команд и справки
+     */
+    @NotNull
+    private OutputSink outputSink = new PrintStreamSink(System.out);
+
+    /**
+     * Получатель сообщений команды, обрабатываемой в данный момент:
+     * повтора строки, ошибок аргументов и справки
+     */
+    @NotNull
+    private Consumer<String> messageConsumer = outputSink::println;
+
+    /**
+     * Получатель сообщений команд, вызванных без своего получателя
+     */
+    @NotNull
+    private Consumer<String> defaultMessageConsumer = messageConsumer;
+
+    /**
+     * Сессия команд, вызванных без своей сессии
+     */
+    @NotNull
+    private final CommandSession defaultSession = new CommandSession();
+
+    //region CONSTRUCTION
+    public CommandProcessor() {
+        registerProcessedController(this);
     }
 
     /**
-     * Метод ищет методы, над которыми стоит {@link CommandMethod},
-     * в классе объекта контроллера и создает из них {@link CommandDefinition}
+     * Метод регистрирует команды контроллера. Если для класса контроллера при компиляции
+     * составлен {@link CommandRegistry}, команды берутся из него, иначе метод ищет методы,
+     * над которыми стоит {@link CommandMethod}, в классе объекта контроллера через рефлексию.
      *
      * @throws CommandAlreadyExistsException если команда с таким именем уже существует
      */
     public void registerProcessedController(Object controller) throws CommandAlreadyExistsException {
+        final CommandRegistry<Object> registry = findRegistry(controller.getClass());
+
+        if (registry != null) {
+            final CommandDeclaration[] declarations = registry.getDeclarations();
+            for (int index = 0; index < declarations.length; index++) {
+                registerCommand(declarations[index].getName(),
+                        CommandDefinition.of(controller, registry, index, declarations[index], parserRegistry));
+            }
+            return;
+        }
+
         for (Method method : controller.getClass().getDeclaredMethods()) {
             final CommandMethod annotation = method.getAnnotation(CommandMethod.class);
 
             if (annotation != null) {
-                final String commandName = annotation.value().toUpperCase();
-
-                if (commandName.contains(" ")) {
-                    throw new InvalidCommandNameException();
-                }
-
-                if (!classDefinitionsMap.containsKey(commandName)) {
-                    classDefinitionsMap.put(commandName, CommandDefinition.of(controller, method));
-                } else {
-                    throw new CommandAlreadyExistsException();
-                }
+                registerCommand(annotation.value(), CommandDefinition.of(controller, method, parserRegistry));
             }
         }
     }
 
+    /**
+     * Регистрирует разборщик аргументов для типа.
+     * Действует на контроллеры, зарегистрированные после вызова.
+     *
+     * @param type   тип аргумента
+     * @param parser разборщик
+     */
+    public <T> void registerArgumentParser(@NotNull Class<T> type, @NotNull ArgumentParser<? extends T> parser) {
+        parserRegistry.register(type, parser);
+    }
+
+    @Override
     public void startProcessing() {
         printHelp();
     }
+
+    private void registerCommand(@NotNull String name, @NotNull CommandDefinition commandDefinition)
+            throws CommandAlreadyExistsException {
+        final String commandName = name.toUpperCase();
+
+        if (commandName.contains(" ")) {
+            throw new InvalidCommandNameException();
+        }
+
+        if (!commandTable.contains(commandName)) {
+            commandTable.put(commandName, commandDefinition);
+        } else {
+            throw new CommandAlreadyExistsException();
+        }
+    }
+
+    /**
+     * @return реестр команд, составленный при компиляции для класса контроллера, или null
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static CommandRegistry<Object> findRegistry(@NotNull Class<?> controllerClass) {
+        try {
+            final Class<?> registryClass = Class.forName(
+                    controllerClass.getName() + CommandRegistry.CLASS_SUFFIX, true, controllerClass.getClassLoader());
+
+            return (CommandRegistry<Object>) registryClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
     //endregion
 
     //region API
     /**
-     * Метод обрабатывает строку, как команду
+     * Метод обрабатывает строку, как команду.
+     * Сообщения команды выводятся в {@link #getOutputSink()}.
      *
      * @param commandLine строка команды
      * @return вывод команды
      */
     @NotNull
-    public String processCommand(@NotNull String commandLine) {
-        System.out.println(commandLine);
-        String[] split = commandLine.split(" ");
+    public String processCommand(@NotNull CharSequence commandLine) {
+        return processCommand(commandLine, defaultMessageConsumer);
+    }
 
-        CommandDefinition commandDefinition = classDefinitionsMap.get(split[0].toUpperCase());
+    /**
+     * Метод обрабатывает строку, как команду
+     *
+     * @param commandLine     строка команды, может быть переиспользуемым буфером:
+     *                        обработчик не хранит ее после возврата
+     * @param messageConsumer получатель сообщений команды, которые идут перед ее выводом
+     * @return вывод команды
+     */
+    @NotNull
+    public String processCommand(@NotNull CharSequence commandLine, @NotNull Consumer<String> messageConsumer) {
+        return processCommand(commandLine, messageConsumer, defaultSession);
+    }
+
+    /**
+     * Метод обрабатывает строку, как команду клиента
+     *
+     * @param commandLine     строка команды, может быть переиспользуемым буфером:
+     *                        обработчик не хранит ее после возврата
+     * @param messageConsumer получатель сообщений команды, которые идут перед ее выводом
+     * @param session         сессия клиента, текущая на время выполнения команды
+     * @return вывод команды
+     */
+    @NotNull
+    public String processCommand(
+            @NotNull CharSequence commandLine,
+            @NotNull Consumer<String> messageConsumer,
+            @NotNull CommandSession session
+    ) {
+        final Consumer<String> previousConsumer = this.messageConsumer;
+        final CommandSession previousSession = CommandSession.enter(session);
+        this.messageConsumer = messageConsumer;
+        try {
+            return processCommandLine(commandLine);
+        } finally {
+            this.messageConsumer = previousConsumer;
+            CommandSession.enter(previousSession);
+        }
+    }
 
-        String UNKNOWN_COMMAND_MESSAGE = "Unknown command! Try \'?\', to get all commands.";
-        if (commandDefinition == null)
-            return UNKNOWN_COMMAND_MESSAGE;
+    /**
+     * Выполняет команду сразу и выдает ее ответ
+     */
+    @Override
+    public void submit(@NotNull String commandLine, @NotNull Consumer<String> output) {
+        submit(commandLine, output, defaultSession);
+    }
 
-        final List<ArgumentProcessingDescription> processingDescriptions = processArguments(
-                commandDefinition, Arrays.copyOfRange(split, 1, split.length));
+    /**
+     * Выполняет команду клиента сразу и выдает ее ответ
+     */
+    @Override
+    public void submit(@NotNull String commandLine, @NotNull Consumer<String> output, @NotNull CommandSession session) {
+        output.accept(processCommand(commandLine, output, session));
+    }
+
+    /**
+     * Все ответы уже выданы в {@link #submit}
+     */
+    @Override
+    public void flush() {
+    }
 
-        final boolean successArgumentsProcessing = processingDescriptions.stream()
-                .map(ArgumentProcessingDescription::getMistakeType)
-                .allMatch(argumentMistakeType -> argumentMistakeType.equals(ArgumentMistakeType.OK));
+    /**
+     * @return количество зарегистрированных команд
+     */
+    public int getCommandsCount() {
+        return commandTable.size();
+    }
 
-        if (successArgumentsProcessing) {
-            final Object[] invocationObjects = processingDescriptions.stream()
-                    .map(ArgumentProcessingDescription::getObject)
-                    .toArray();
+    /**
+     * Статистика команд, которые вызывались хотя бы раз.
+     * Может вызываться из любого потока.
+     *
+     * @return &lt;Имя команды, Статистика команды&gt; в порядке регистрации команд
+     */
+    @NotNull
+    public Map<String, CommandStatistics.Snapshot> getStatistics() {
+        final Map<String, CommandStatistics.Snapshot> statistics = new LinkedHashMap<>();
+        for (int index = 0; index < commandTable.size(); index++) {
+            final CommandStatistics.Snapshot snapshot = commandTable.definitionAt(index).getStatistics().snapshot();
 
-            return processInvocation(commandDefinition, invocationObjects);
+            if (snapshot.getCalls() > 0) {
+                statistics.put(commandTable.nameAt(index), snapshot);
+            }
         }
+        return statistics;
+    }
 
-        processingDescriptions.stream()
-                .filter(processingDescription -> !processingDescription.getMistakeType().equals(ArgumentMistakeType.OK))
-                .map(ArgumentProcessingDescription::getErrorDescription)
-                .forEach(System.out::println);
+    /**
+     * @return вывод по умолчанию для сообщений команд и справки
+     */
+    @NotNull
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
 
-        return "ERROR";
+    /**
+     * @param outputSink вывод по умолчанию для сообщений команд и справки
+     */
+    public void setOutputSink(@NotNull OutputSink outputSink) {
+        this.outputSink = outputSink;
+        this.messageConsumer = outputSink::println;
+        this.defaultMessageConsumer = messageConsumer;
     }
 
     /**
-     * @return количество зарегистрированных команд
+     * @return повторяется ли строка команды в выводе
      */
-    public int getCommandsCount() {
-        return classDefinitionsMap.size();
+    @Override
+    public boolean isEcho() {
+        return echo;
+    }
+
+    /**
+     * @param echo повторять ли строку команды в выводе перед ее обработкой
+     */
+    @Override
+    public void setEcho(boolean echo) {
+        this.echo = echo;
     }
     //endregion
 
     //region PROCESSING
+    @NotNull
+    private String processCommandLine(@NotNull CharSequence commandLine) {
+        if (echo)
+            messageConsumer.accept(commandLine.toString());
+
+        final int tokenCount = tokenizer.tokenize(commandLine);
+        try {
+            if (tokenCount == 0)
+                return UNKNOWN_COMMAND_MESSAGE;
+
+            final CommandDefinition commandDefinition = commandTable.find(commandLine, tokenizer.start(0), tokenizer.end(0));
+
+            if (commandDefinition == null)
+                return UNKNOWN_COMMAND_MESSAGE;
+
+            final CommandStatistics statistics = commandDefinition.getStatistics();
+            final long parseStart = System.nanoTime();
+
+            final Object[] argumentObjects = argumentArray(commandDefinition.getArgumentsList().size());
+            try {
+                final boolean successArgumentsProcessing = processArguments(commandDefinition, argumentObjects);
+
+                recordPhase(statistics, CommandPhase.PARSE, parseStart);
+
+                if (successArgumentsProcessing)
+                    return processInvocation(commandDefinition, argumentObjects, argumentNumbers);
+            } finally {
+                Arrays.fill(argumentObjects, null);
+            }
+
+            statistics.recordCall(true);
+            return "ERROR";
+        } finally {
+            tokenizer.clear();
+        }
+    }
+
     /**
-     * Метод преобразует массив строк аргументов в лист {@link ArgumentProcessingDescription},
-     * содержащий информацию об обработке аргументов.
-     * <p>
-     * Размер выходящего листа, ВСЕГДА, будет равен количеству необходимых
-     * команде аргументов.
+     * Метод разбирает слова аргументов команды, следующие за ее именем, в массив аргументов,
+     * а числовые аргументы - в массив чисел без упаковки. Ошибки аргументов выводятся по порядку аргументов.
      *
      * @param commandDefinition определение команды, для которой необходимо подать аргументы
-     * @param commandLineArgs   массив строк
-     * @return лист обработаных аргументов, для определения команды,
-     * полученный из массива строк
+     * @param argumentObjects   массив аргументов размером с количество аргументов команды
+     * @return true, если все аргументы разобраны
      */
-    @NotNull
-    private List<ArgumentProcessingDescription> processArguments(
+    private boolean processArguments(
             @NotNull CommandDefinition commandDefinition,
-            @NotNull String[] commandLineArgs
+            @NotNull Object[] argumentObjects
     ) {
         final List<ArgumentDefinition> argumentsList = commandDefinition.getArgumentsList();
-        final List<ArgumentProcessingDescription> processingDescriptionsList = new ArrayList<>();
 
-        for (int i = 0; i < argumentsList.size(); i++) {
-            final ArgumentDefinition argumentDefinition = argumentsList.get(i);
-            final @Nullable String argumentString = commandLineArgs.length > i ? commandLineArgs[i] : null;
+        boolean success = true;
+        for (int index = 0; index < argumentObjects.length; index++) {
+            final ArgumentDefinition argumentDefinition = argumentsList.get(index);
+
+            if (index + 1 >= tokenizer.getCount()) {
+                messageConsumer.accept(String.format(" Argument \"%s\" is not specified!", argumentDefinition.getName()));
+                success = false;
+                continue;
+            }
+
+            try {
+                if (argumentDefinition.isNumeric()) {
+                    argumentNumbers[index] = argumentDefinition.getParser().parseNumber(tokenizer.token(index + 1));
+                } else {
+                    argumentObjects[index] = argumentDefinition.getParser().parse(tokenizer.token(index + 1));
+                }
+            } catch (Exception e) {
+                final String errorDescription = !Strings.isNullOrEmpty(argumentDefinition.getErrorDescription())
+                        ? argumentDefinition.getErrorDescription() : e.getMessage();
 
-            processingDescriptionsList.add(processArgument(argumentDefinition, argumentString));
+                messageConsumer.accept(" " + argumentDefinition.getName() + ": " + errorDescription);
+                success = false;
+            }
         }
 
-        return processingDescriptionsList;
+        return success;
     }
 
     /**
-     * Метод обрабатывает конкретную строку (слово), для получения описания
-     * обработки аргумента
-     *
-     * @param argumentDefinition определение аргумента
-     * @param argumentString     строка аргумента
-     * @return вернет описание обработки строки аргумента
+     * @return пустой массив аргументов заданного размера, общий для всех команд с таким количеством аргументов.
+     * Массив чисел увеличивается до того же размера
      */
-    private ArgumentProcessingDescription processArgument(
-            @NotNull ArgumentDefinition argumentDefinition,
-            @Nullable String argumentString
-    ) {
-        if (argumentString == null)
-            return ArgumentProcessingDescription.notSpecified(argumentDefinition.getName());
-
-        try {
-            final Object parsedObject = gson.fromJson(argumentString, argumentDefinition.getType());
-
-            return ArgumentProcessingDescription.ok(parsedObject);
-        } catch (Exception e) {
-            final String errorDescription = !Strings.isNullOrEmpty(argumentDefinition.getErrorDescription())
-                    ? argumentDefinition.getErrorDescription() : e.getMessage();
+    @NotNull
+    private Object[] argumentArray(int size) {
+        if (size >= argumentArrays.length) {
+            argumentArrays = Arrays.copyOf(argumentArrays, size + 1);
+            argumentNumbers = new long[size];
+        }
 
-            return ArgumentProcessingDescription.error(" " + argumentDefinition.getName() + ": " + errorDescription);
+        Object[] argumentObjects = argumentArrays[size];
+        if (argumentObjects == null) {
+            argumentObjects = new Object[size];
+            argumentArrays[size] = argumentObjects;
         }
+        return argumentObjects;
     }
 
     /**
@@ -191,58 +409,128 @@ public final class CommandProcessor {
      *
      * @param commandDefinition определение команды, которую необходимо запустить
      * @param argumentObjects   массив обработанных аргументов
+     * @param argumentNumbers   массив обработанных числовых аргументов
      * @return результат, полученный при запуске метода.
-     * "OK", если результат - null
-     * "ERROR", если произошла ошибка, в ходе исполнения
+     * "OK", если результат - null или {@link OperationStatus#OK}, "QUEUED" для {@link OperationStatus#QUEUED}
+     * "ERROR", если аргументы не прошли проверку, операция отклонена или произошла ошибка в ходе исполнения
      */
     @NotNull
-    private String processInvocation(@NotNull CommandDefinition commandDefinition, @NotNull Object[] argumentObjects) {
-        final Method commandMethod = commandDefinition.getCommandMethod();
+    private String processInvocation(
+            @NotNull CommandDefinition commandDefinition,
+            @NotNull Object[] argumentObjects,
+            @NotNull long[] argumentNumbers
+    ) {
+        final CommandStatistics statistics = commandDefinition.getStatistics();
+        CommandPhase phase = CommandPhase.VALIDATE;
+        long phaseStart = System.nanoTime();
 
-        commandMethod.setAccessible(true);
         try {
-            validateArguments(commandDefinition, argumentObjects);
+            if (validateArguments(commandDefinition, argumentObjects, argumentNumbers)) {
+                phaseStart = recordPhase(statistics, phase, phaseStart);
+                phase = CommandPhase.INVOKE;
+
+                final Object invoke = commandDefinition.invoke(argumentObjects, argumentNumbers);
+                recordPhase(statistics, phase, phaseStart);
 
-            final Object invoke = commandMethod.invoke(commandDefinition.getController(), argumentObjects);
+                if (invoke instanceof OperationStatus) {
+                    final OperationStatus status = (OperationStatus) invoke;
+                    statistics.recordCall(!status.isSuccess());
+                    return status == OperationStatus.QUEUED ? "QUEUED" : status.isSuccess() ? "OK" : "ERROR";
+                }
 
-            return invoke == null ? "OK" : invoke.toString();
-        } catch (ReflectiveOperationException | ValidationException ignored) {
+                statistics.recordCall(false);
+                return invoke == null ? "OK" : invoke.toString();
+            }
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable ignored) {
         }
 
+        recordPhase(statistics, phase, phaseStart);
+        statistics.recordCall(true);
         return "ERROR";
     }
 
+    /**
+     * Записывает время этапа, начавшегося в phaseStart
+     *
+     * @return время окончания этапа
+     */
+    private static long recordPhase(@NotNull CommandStatistics statistics, @NotNull CommandPhase phase, long phaseStart) {
+        final long phaseEnd = System.nanoTime();
+        statistics.record(phase, phaseEnd - phaseStart);
+        return phaseEnd;
+    }
+
     /**
      * Метод проверяет входящие параметры команды,
      * печатает неправильно введенные параметры, если они есть.
      *
      * @param commandDefinition определение команды
-     * @param argumentObjects   массив параметро
-     *
-     * @throws ValidationException если есть неправильно введенные параметры
+     * @param argumentObjects   массив параметров
+     * @param argumentNumbers   массив числовых параметров
+     * @return false, если есть неправильно введенные параметры
      */
-    private void validateArguments(
+    private boolean validateArguments(
             @NotNull CommandDefinition commandDefinition,
-            @NotNull Object[] argumentObjects
-    ) throws ValidationException {
-        Set<ConstraintViolation<@NotNull Object>> constraintViolations = validator.forExecutables().validateParameters(
+            @NotNull Object[] argumentObjects,
+            @NotNull long[] argumentNumbers
+    ) {
+        final ConstraintPlan constraintPlan = commandDefinition.getConstraintPlan();
+        final List<ArgumentDefinition> argumentsList = commandDefinition.getArgumentsList();
+
+        if (!constraintPlan.isValidatorRequired()) {
+            if (constraintPlan.isValid(argumentObjects, argumentNumbers))
+                return true;
+
+            constraintPlan.validate(argumentObjects, argumentNumbers, (message, index) ->
+                    messageConsumer.accept(" " + argumentsList.get(index).getName() + ": " + message));
+            return false;
+        }
+
+        Set<ConstraintViolation<@NotNull Object>> constraintViolations = getValidator().forExecutables().validateParameters(
                 commandDefinition.getController(),
                 commandDefinition.getCommandMethod(),
-                argumentObjects
+                commandDefinition.boxArguments(argumentObjects, argumentNumbers)
         );
 
-        for (ArgumentDefinition argumentDefinition : commandDefinition.getArgumentsList()) {
-            for (ConstraintViolation<Object> violation : constraintViolations) {
-                final String argumentPropertyPath = commandDefinition.getCommandMethod().getName() + "."
-                        + argumentDefinition.getOriginalParameterName();
+        final List<ConstraintViolation<Object>> sortedViolations = new ArrayList<>(constraintViolations);
+        sortedViolations.sort(Comparator.comparingInt(CommandProcessor::getParameterIndex));
 
-                if (argumentPropertyPath.equals(violation.getPropertyPath().toString())) {
-                    System.out.println(" " + argumentDefinition.getName() + ": " + violation.getMessage());
-                }
+        for (ConstraintViolation<Object> violation : sortedViolations) {
+            final int index = getParameterIndex(violation);
+            final String argumentName = index < argumentsList.size()
+                    ? argumentsList.get(index).getName() : commandDefinition.getCommandMethod().getName();
+
+            messageConsumer.accept(" " + argumentName + ": " + violation.getMessage());
+        }
+
+        return constraintViolations.isEmpty();
+    }
+
+    /**
+     * @return индекс параметра, к которому относится нарушение,
+     * или {@link Integer#MAX_VALUE} для ограничений всего метода
+     */
+    private static int getParameterIndex(@NotNull ConstraintViolation<?> violation) {
+        for (Path.Node node : violation.getPropertyPath()) {
+            if (node.getKind() == ElementKind.PARAMETER) {
+                return node.as(Path.ParameterNode.class).getParameterIndex();
             }
         }
+        return Integer.MAX_VALUE;
+    }
+
+    @NotNull
+    private Validator getValidator() {
+        if (validator == null) {
+            final ValidatorFactory factory = Validation.byDefaultProvider()
+                    .configure()
+                    .buildValidatorFactory();
 
-        if (constraintViolations.size() > 0) throw new ValidationException();
+            validator = factory.getValidator();
+        }
+        return validator;
     }
 
     //endregion
@@ -253,8 +541,8 @@ public final class CommandProcessor {
      */
     @CommandMethod("Q")
     @CommandDescription("To quit")
-    private void exitCommandMethod() {
-        System.out.println(1);
+    void exitCommandMethod() {
+        messageConsumer.accept("1");
         System.exit(0);
     }
 
@@ -264,20 +552,46 @@ public final class CommandProcessor {
      */
     @CommandMethod("?")
     @CommandDescription("Prints this list")
-    private String helpCommandMethod() {
-        System.out.println("Available commands:");
+    String helpCommandMethod() {
+        messageConsumer.accept("Available commands:");
         printHelp();
-        System.out.println("\"q\" to quit");
+        messageConsumer.accept("\"q\" to quit");
         return "";
     }
 
+    /**
+     * Метод стандартной команды "STATS", печатающий количество вызовов
+     * и ошибок команд и процентили времени их этапов в микросекундах
+     */
+    @CommandMethod("STATS")
+    @CommandDescription("Prints calls, errors and p50/p99/p999 latency of command phases in microseconds")
+    String statsCommandMethod() {
+        final StringJoiner joiner = new StringJoiner(System.lineSeparator());
+        for (Map.Entry<String, CommandStatistics.Snapshot> entry : getStatistics().entrySet()) {
+            final CommandStatistics.Snapshot snapshot = entry.getValue();
+            final StringBuilder line = new StringBuilder(String.format(" %s calls=%d errors=%d",
+                    entry.getKey(), snapshot.getCalls(), snapshot.getFailures()));
+
+            for (CommandPhase phase : CommandPhase.values()) {
+                final LatencyHistogram.Snapshot latency = snapshot.getPhase(phase);
+
+                if (latency.getCount() > 0) {
+                    line.append(String.format(Locale.ROOT, " %s=%.1f/%.1f/%.1f", phase.name().toLowerCase(),
+                            latency.getP50() / 1000.0, latency.getP99() / 1000.0, latency.getP999() / 1000.0));
+                }
+            }
+            joiner.add(line);
+        }
+        return joiner.toString();
+    }
+
     /**
      * Метод печатает доступные команды и их описание
      */
     private void printHelp() {
-        for (Map.Entry<String, CommandDefinition> entry : classDefinitionsMap.entrySet()) {
-            final String commandName = entry.getKey();
-            final CommandDefinition commandDefinition = entry.getValue();
+        for (int index = 0; index < commandTable.size(); index++) {
+            final String commandName = commandTable.nameAt(index);
+            final CommandDefinition commandDefinition = commandTable.definitionAt(index);
 
             final String argumentsString = commandDefinition.getArgumentsList().stream()
                     .map(ArgumentDefinition::getName)
@@ -288,7 +602,7 @@ public final class CommandProcessor {
                     argumentsString,
                     commandDefinition.getDescription());
 
-            System.out.println(commandMessage);
+            messageConsumer.accept(commandMessage);
         }
     }
     //endregion
@@ -0,0 +1,35 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Реестр команд контроллера, составленный при компиляции
+ * {@link com.mayakplay.testtask.processor.CommandRegistryProcessor}.
+ * Класс реестра называется {@code <Контроллер>}{@value #CLASS_SUFFIX} и лежит в пакете контроллера.
+ *
+ * @param <C> тип контроллера
+ */
+public interface CommandRegistry<C> {
+
+    String CLASS_SUFFIX = "_Commands";
+
+    /**
+     * @return описания команд в порядке объявления, индекс описания - номер команды в {@link #invoke}
+     */
+    @NotNull
+    CommandDeclaration[] getDeclarations();
+
+    /**
+     * Вызывает метод команды напрямую
+     *
+     * @param controller объект контроллера
+     * @param command    номер команды
+     * @param arguments  аргументы метода, кроме аргументов типов int и long
+     * @param numbers    аргументы типов int и long по тем же индексам
+     * @return результат метода или null, если метод ничего не возвращает
+     */
+    @Nullable
+    Object invoke(@NotNull C controller, int command, @NotNull Object[] arguments, @NotNull long[] numbers) throws Throwable;
+
+}
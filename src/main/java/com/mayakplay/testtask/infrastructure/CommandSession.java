@@ -0,0 +1,82 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Состояние одного клиента команд, например подключения к серверу.
+ * <p>
+ * Контроллеры хранят в сессии данные, которые живут между командами клиента
+ * (открытую транзакцию), по своим ключам {@link Key}. {@link CommandProcessor}
+ * делает сессию текущей на время выполнения команды, см. {@link #current()}.
+ * Команды без своей сессии выполняются в сессии обработчика по умолчанию.
+ * <p>
+ * Сессию использует поток, выполняющий ее команды, {@link #close()} вызывается
+ * после выдачи ответов на все ее команды.
+ */
+public final class CommandSession {
+
+    private static final ThreadLocal<CommandSession> CURRENT = new ThreadLocal<>();
+
+    private final Map<Key<?>, Object> attributes = new HashMap<>(4);
+
+    /**
+     * @return сессию выполняемой в этом потоке команды или null вне команды
+     */
+    @Nullable
+    public static CommandSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Делает сессию текущей для потока
+     *
+     * @return прежнюю текущую сессию, которую нужно вернуть после команды
+     */
+    @Nullable
+    static CommandSession enter(@Nullable CommandSession session) {
+        final CommandSession previous = CURRENT.get();
+        CURRENT.set(session);
+        return previous;
+    }
+
+    /**
+     * @return значение по ключу или null, если его нет
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull Key<T> key) {
+        return (T) attributes.get(key);
+    }
+
+    /**
+     * @param value значение, null удаляет ключ
+     */
+    public <T> void set(@NotNull Key<T> key, @Nullable T value) {
+        if (value == null) {
+            attributes.remove(key);
+        } else {
+            attributes.put(key, value);
+        }
+    }
+
+    /**
+     * Отбрасывает данные сессии, например незавершенную транзакцию
+     */
+    public void close() {
+        attributes.clear();
+    }
+
+    /**
+     * Ключ данных в сессии. Ключи сравниваются по ссылке, поэтому
+     * у каждого экземпляра контроллера свои данные
+     *
+     * @param <T> тип значения
+     */
+    public static final class Key<T> {
+    }
+
+}
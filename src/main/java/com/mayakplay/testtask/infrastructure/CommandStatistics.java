@@ -0,0 +1,77 @@
+package com.mayakplay.testtask.infrastructure;
+
+import com.mayakplay.testtask.type.CommandPhase;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики и гистограммы задержек одной команды по этапам {@link CommandPhase}.
+ * Обновляются без блокировок и могут читаться из другого потока.
+ */
+public final class CommandStatistics {
+
+    private static final CommandPhase[] PHASES = CommandPhase.values();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+    CommandStatistics() {
+        for (int index = 0; index < histograms.length; index++) {
+            histograms[index] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param phase этап обработки
+     * @param nanos время этапа
+     */
+    void record(@NotNull CommandPhase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * @param failed завершилась ли команда ошибкой
+     */
+    void recordCall(boolean failed) {
+        calls.increment();
+        if (failed)
+            failures.increment();
+    }
+
+    @NotNull
+    public Snapshot snapshot() {
+        final Map<CommandPhase, LatencyHistogram.Snapshot> phases = new EnumMap<>(CommandPhase.class);
+        for (CommandPhase phase : PHASES) {
+            phases.put(phase, histograms[phase.ordinal()].snapshot());
+        }
+        return new Snapshot(calls.sum(), failures.sum(), phases);
+    }
+
+    /**
+     * Состояние статистики команды на момент вызова {@link #snapshot()}
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Snapshot {
+
+        private final long calls;
+        private final long failures;
+
+        @NotNull
+        private final Map<CommandPhase, LatencyHistogram.Snapshot> phases;
+
+        @NotNull
+        public LatencyHistogram.Snapshot getPhase(@NotNull CommandPhase phase) {
+            return phases.get(phase);
+        }
+
+    }
+
+}
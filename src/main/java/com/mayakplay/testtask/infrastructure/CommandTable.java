@@ -0,0 +1,114 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Определения команд по именам в верхнем регистре в порядке регистрации.
+ * <p>
+ * Команда находится по слову строки без учета регистра и без создания строки:
+ * хеш считается по символам слова, приведенным к верхнему регистру,
+ * в открытой адресации с линейным пробированием.
+ */
+final class CommandTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private CommandDefinition[] definitions = new CommandDefinition[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Номер команды + 1 в ячейке хеш-таблицы, 0 - пустая ячейка. Заполнена не больше чем наполовину.
+     */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * @param name имя команды в верхнем регистре
+     */
+    void put(@NotNull String name, @NotNull CommandDefinition definition) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            definitions = Arrays.copyOf(definitions, size * 2);
+            slots = new int[names.length * 2];
+
+            for (int index = 0; index < size; index++) {
+                slots[freeSlot(names[index])] = index + 1;
+            }
+        }
+
+        names[size] = name;
+        definitions[size] = definition;
+        slots[freeSlot(name)] = ++size;
+    }
+
+    /**
+     * @param name имя команды в верхнем регистре
+     */
+    boolean contains(@NotNull String name) {
+        return find(name, 0, name.length()) != null;
+    }
+
+    /**
+     * @param text  строка со словом
+     * @param start начало слова
+     * @param end   конец слова, не включая
+     * @return определение команды, имя которой совпадает со словом без учета регистра, или null
+     */
+    @Nullable
+    CommandDefinition find(@NotNull CharSequence text, int start, int end) {
+        final int mask = slots.length - 1;
+        for (int slot = hash(text, start, end) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final int index = slots[slot] - 1;
+
+            if (matches(names[index], text, start, end))
+                return definitions[index];
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @NotNull
+    String nameAt(int index) {
+        return names[index];
+    }
+
+    @NotNull
+    CommandDefinition definitionAt(int index) {
+        return definitions[index];
+    }
+
+    private int freeSlot(@NotNull String name) {
+        final int mask = slots.length - 1;
+        int slot = hash(name, 0, name.length()) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(@NotNull CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int position = start; position < end; position++) {
+            hash = 31 * hash + Character.toUpperCase(text.charAt(position));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(@NotNull String name, @NotNull CharSequence text, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+
+        for (int index = 0; index < name.length(); index++) {
+            if (Character.toUpperCase(text.charAt(start + index)) != name.charAt(index))
+                return false;
+        }
+        return true;
+    }
+
+}
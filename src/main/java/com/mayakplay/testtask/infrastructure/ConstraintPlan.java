@@ -0,0 +1,323 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.validation.Constraint;
+import javax.validation.Valid;
+import javax.validation.constraints.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Заранее составленный план проверки аргументов команды.
+ * <p>
+ * Встроенные ограничения {@code javax.validation} над числами и датами
+ * проверяются напрямую, сообщения об ошибках берутся из тех же бандлов,
+ * что и у Hibernate Validator. Числовые аргументы проверяются в массиве чисел
+ * без упаковки, см. {@link ArgumentDefinition#isNumericType(Class)}. Если у метода есть ограничения, которые
+ * план проверить не может, команда целиком проверяется через {@link javax.validation.Validator}.
+ */
+final class ConstraintPlan {
+
+    private static final String USER_MESSAGES_BUNDLE = "ValidationMessages";
+    private static final String DEFAULT_MESSAGES_BUNDLE = "org.hibernate.validator.ValidationMessages";
+
+    private static final ArgumentConstraint[] NO_CONSTRAINTS = new ArgumentConstraint[0];
+
+    /**
+     * Ограничения каждого аргумента
+     */
+    @NotNull
+    private final ArgumentConstraint[][] constraints;
+
+    /**
+     * Нужно ли проверять команду через {@link javax.validation.Validator}
+     */
+    private final boolean validatorRequired;
+
+    private ConstraintPlan(@NotNull ArgumentConstraint[][] constraints, boolean validatorRequired) {
+        this.constraints = constraints;
+        this.validatorRequired = validatorRequired;
+    }
+
+    /**
+     * @return план для команды без ограничений
+     */
+    @NotNull
+    static ConstraintPlan empty() {
+        return new ConstraintPlan(new ArgumentConstraint[0][], false);
+    }
+
+    /**
+     * Составляет план проверки аргументов метода
+     *
+     * @param method метод команды
+     * @return план проверки
+     */
+    @NotNull
+    static ConstraintPlan compile(@NotNull Method method) {
+        if (hasConstraints(method.getAnnotations()))
+            return new ConstraintPlan(new ArgumentConstraint[0][], true);
+
+        final Parameter[] parameters = method.getParameters();
+        final ArgumentConstraint[][] constraints = new ArgumentConstraint[parameters.length][];
+
+        for (int index = 0; index < parameters.length; index++) {
+            final List<ArgumentConstraint> argumentConstraints = new ArrayList<>();
+
+            for (Annotation annotation : parameters[index].getAnnotations()) {
+                if (annotation instanceof Valid)
+                    return new ConstraintPlan(new ArgumentConstraint[0][], true);
+
+                if (!isConstraint(annotation))
+                    continue;
+
+                final ArgumentConstraint constraint = compileConstraint(annotation, parameters[index].getType());
+                if (constraint == null)
+                    return new ConstraintPlan(new ArgumentConstraint[0][], true);
+
+                argumentConstraints.add(constraint);
+            }
+
+            constraints[index] = argumentConstraints.toArray(NO_CONSTRAINTS);
+        }
+
+        return new ConstraintPlan(constraints, false);
+    }
+
+    /**
+     * @return true, если команду нужно проверять через {@link javax.validation.Validator}
+     */
+    boolean isValidatorRequired() {
+        return validatorRequired;
+    }
+
+    /**
+     * Проверяет аргументы по плану, не создавая сообщений
+     *
+     * @param argumentObjects аргументы команды
+     * @param argumentNumbers числовые аргументы команды по тем же индексам
+     * @return true, если нарушений нет
+     */
+    boolean isValid(@NotNull Object[] argumentObjects, @NotNull long[] argumentNumbers) {
+        for (int index = 0; index < constraints.length; index++) {
+            for (ArgumentConstraint constraint : constraints[index]) {
+                if (constraint.check(argumentObjects[index], argumentNumbers[index]) != null)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет аргументы по плану
+     *
+     * @param argumentObjects аргументы команды
+     * @param argumentNumbers числовые аргументы команды по тем же индексам
+     * @param violations      получатель сообщений о нарушениях и индексов аргументов
+     * @return true, если нарушений нет
+     */
+    boolean validate(
+            @NotNull Object[] argumentObjects,
+            @NotNull long[] argumentNumbers,
+            @NotNull ObjIntConsumer<String> violations
+    ) {
+        boolean valid = true;
+        for (int index = 0; index < constraints.length; index++) {
+            for (ArgumentConstraint constraint : constraints[index]) {
+                final String message = constraint.check(argumentObjects[index], argumentNumbers[index]);
+
+                if (message != null) {
+                    violations.accept(message, index);
+                    valid = false;
+                }
+            }
+        }
+        return valid;
+    }
+
+    //region COMPILATION
+    /**
+     * @return проверку ограничения или null, если его нельзя проверить напрямую
+     */
+    @Nullable
+    private static ArgumentConstraint compileConstraint(@NotNull Annotation annotation, @NotNull Class<?> type) {
+        final String message = resolveMessage(annotation);
+        if (message == null || hasGroups(annotation))
+            return null;
+
+        final boolean numeric = ArgumentDefinition.isNumericType(type);
+        if (annotation instanceof javax.validation.constraints.NotNull)
+            return (value, number) -> value == null && !numeric ? message : null;
+
+        if (isIntegral(type)) {
+            if (annotation instanceof Positive)
+                return longConstraint(value -> value > 0, message, numeric);
+            if (annotation instanceof PositiveOrZero)
+                return longConstraint(value -> value >= 0, message, numeric);
+            if (annotation instanceof Negative)
+                return longConstraint(value -> value < 0, message, numeric);
+            if (annotation instanceof NegativeOrZero)
+                return longConstraint(value -> value <= 0, message, numeric);
+
+            if (annotation instanceof Min) {
+                final long min = ((Min) annotation).value();
+                return longConstraint(value -> value >= min, message.replace("{value}", String.valueOf(min)), numeric);
+            }
+            if (annotation instanceof Max) {
+                final long max = ((Max) annotation).value();
+                return longConstraint(value -> value <= max, message.replace("{value}", String.valueOf(max)), numeric);
+            }
+        }
+
+        if (type == LocalDate.class) {
+            if (annotation instanceof Past)
+                return dateConstraint(epochDay -> epochDay < Today.epochDay(), message);
+            if (annotation instanceof PastOrPresent)
+                return dateConstraint(epochDay -> epochDay <= Today.epochDay(), message);
+            if (annotation instanceof Future)
+                return dateConstraint(epochDay -> epochDay > Today.epochDay(), message);
+            if (annotation instanceof FutureOrPresent)
+                return dateConstraint(epochDay -> epochDay >= Today.epochDay(), message);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param numeric берется ли значение из массива чисел
+     */
+    @NotNull
+    private static ArgumentConstraint longConstraint(@NotNull LongCheck check, @NotNull String message, boolean numeric) {
+        if (numeric)
+            return (value, number) -> check.test(number) ? null : message;
+
+        return (value, number) -> value == null || check.test(((Number) value).longValue()) ? null : message;
+    }
+
+    @NotNull
+    private static ArgumentConstraint dateConstraint(@NotNull DateCheck check, @NotNull String message) {
+        return (value, number) -> value == null || check.test(((LocalDate) value).toEpochDay()) ? null : message;
+    }
+
+    /**
+     * Получает сообщение ограничения, если оно задано ключом бандла или текстом без выражений
+     *
+     * @return сообщение или null, если его должен интерполировать {@link javax.validation.Validator}
+     */
+    @Nullable
+    private static String resolveMessage(@NotNull Annotation annotation) {
+        final String template = (String) attribute(annotation, "message");
+        if (template == null)
+            return null;
+
+        if (template.startsWith("{") && template.endsWith("}") && template.indexOf('{', 1) < 0) {
+            final String key = template.substring(1, template.length() - 1);
+
+            for (String bundleName : new String[]{USER_MESSAGES_BUNDLE, DEFAULT_MESSAGES_BUNDLE}) {
+                try {
+                    return ResourceBundle.getBundle(bundleName, Locale.getDefault()).getString(key);
+                } catch (MissingResourceException ignored) {
+                }
+            }
+            return null;
+        }
+
+        return template.contains("{") || template.contains("$") ? null : template;
+    }
+
+    private static boolean hasGroups(@NotNull Annotation annotation) {
+        final Object groups = attribute(annotation, "groups");
+        return groups instanceof Class[] && ((Class<?>[]) groups).length > 0;
+    }
+
+    @Nullable
+    private static Object attribute(@NotNull Annotation annotation, @NotNull String name) {
+        try {
+            return annotation.annotationType().getMethod(name).invoke(annotation);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasConstraints(@NotNull Annotation[] annotations) {
+        return Arrays.stream(annotations).anyMatch(ConstraintPlan::isConstraint);
+    }
+
+    private static boolean isConstraint(@NotNull Annotation annotation) {
+        return annotation.annotationType().isAnnotationPresent(Constraint.class)
+                || annotation.annotationType().getSimpleName().equals("List")
+                && annotation.annotationType().getEnclosingClass() != null
+                && annotation.annotationType().getEnclosingClass().isAnnotationPresent(Constraint.class);
+    }
+
+    private static boolean isIntegral(@NotNull Class<?> type) {
+        return type == int.class || type == Integer.class
+                || type == long.class || type == Long.class
+                || type == short.class || type == Short.class
+                || type == byte.class || type == Byte.class;
+    }
+    //endregion
+
+    /**
+     * Проверка одного ограничения аргумента
+     */
+    @FunctionalInterface
+    private interface ArgumentConstraint {
+
+        /**
+         * @param value  значение аргумента
+         * @param number значение числового аргумента
+         * @return сообщение о нарушении или null, если значение допустимо
+         */
+        @Nullable
+        String check(@Nullable Object value, long number);
+
+    }
+
+    @FunctionalInterface
+    private interface LongCheck {
+        boolean test(long value);
+    }
+
+    @FunctionalInterface
+    private interface DateCheck {
+        boolean test(long epochDay);
+    }
+
+    /**
+     * Текущий день в часовом поясе по умолчанию. Пересчитывается при наступлении следующего дня,
+     * чтобы проверка даты не создавала {@link LocalDate#now()} на каждую команду.
+     */
+    private static final class Today {
+
+        private static volatile Today current = new Today();
+
+        private final long epochDay;
+        private final long endMillis;
+
+        private Today() {
+            final LocalDate today = LocalDate.now();
+
+            this.epochDay = today.toEpochDay();
+            this.endMillis = today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        private static long epochDay() {
+            Today today = current;
+            if (System.currentTimeMillis() >= today.endMillis) {
+                today = new Today();
+                current = today;
+            }
+            return today.epochDay;
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.mayakplay.testtask.infrastructure;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Гистограмма задержек в наносекундах без блокировок.
+ * <p>
+ * Значения до {@link #SUB_BUCKET_COUNT} хранятся точно, большие делятся на
+ * степени двойки, каждая из которых разбита на {@link #SUB_BUCKET_COUNT} корзин,
+ * поэтому относительная погрешность процентилей не больше 1/16.
+ * Запись - один атомарный инкремент, чтение не останавливает запись.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos задержка в наносекундах, отрицательная считается нулевой
+     */
+    public void record(long nanos) {
+        final long value = Math.max(nanos, 0);
+
+        counts.incrementAndGet(bucketOf(value));
+        max.accumulate(value);
+    }
+
+    /**
+     * @return процентили по текущему содержимому гистограммы
+     */
+    @NotNull
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            copy[bucket] = counts.get(bucket);
+            count += copy[bucket];
+        }
+
+        final long maxValue = max.get();
+        return new Snapshot(count,
+                valueAtPercentile(copy, count, maxValue, 50),
+                valueAtPercentile(copy, count, maxValue, 99),
+                valueAtPercentile(copy, count, maxValue, 99.9),
+                maxValue);
+    }
+
+    /**
+     * @return наибольшее значение корзины, на которой набирается процентиль
+     */
+    private static long valueAtPercentile(long[] counts, long count, long maxValue, double percentile) {
+        if (count == 0)
+            return 0;
+
+        final long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long accumulated = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            accumulated += counts[bucket];
+
+            if (accumulated >= target)
+                return Math.min(highestValueOf(bucket), maxValue);
+        }
+        return maxValue;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+
+        final int shift = bucket / SUB_BUCKET_COUNT - 1;
+        final long lowest = (long) (SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Процентили гистограммы в наносекундах
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Snapshot {
+
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+    }
+
+}
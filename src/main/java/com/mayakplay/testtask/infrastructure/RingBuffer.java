@@ -0,0 +1,95 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная очередь без блокировок для одного производителя и одного потребителя.
+ * <p>
+ * Каждая сторона пишет только свой счетчик и публикует его через lazySet,
+ * а счетчик другой стороны перечитывает, только когда кэшированного не хватает.
+ */
+final class RingBuffer<T> {
+
+    private final Object[] items;
+    private final int mask;
+
+    /**
+     * Следующая позиция чтения, пишет потребитель
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Следующая позиция записи, пишет производитель
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private long cachedHead;
+    private long cachedTail;
+
+    /**
+     * @param capacity емкость, степень двойки
+     */
+    RingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+
+        this.items = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Вызывается только производителем
+     *
+     * @return false, если очередь заполнена
+     */
+    boolean offer(@NotNull T item) {
+        final long position = tail.get();
+
+        if (position - cachedHead == items.length) {
+            cachedHead = head.get();
+            if (position - cachedHead == items.length)
+                return false;
+        }
+
+        items[(int) position & mask] = item;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Вызывается только потребителем
+     *
+     * @return следующий элемент или null, если очередь пуста
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    T poll() {
+        final long position = head.get();
+
+        if (position == cachedTail) {
+            cachedTail = tail.get();
+            if (position == cachedTail)
+                return null;
+        }
+
+        final int index = (int) position & mask;
+        final T item = (T) items[index];
+        items[index] = null;
+        head.lazySet(position + 1);
+        return item;
+    }
+
+    /**
+     * Вызывается только потребителем, перечитывает счетчик производителя
+     *
+     * @return true, если очередь пуста
+     */
+    boolean isEmpty() {
+        cachedTail = tail.get();
+        return head.get() == cachedTail;
+    }
+
+}
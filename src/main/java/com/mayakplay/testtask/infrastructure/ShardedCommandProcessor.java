@@ -0,0 +1,360 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Конвейер команд, выполняющий их в N потоках-шардах без блокировок.
+ * <p>
+ * У каждого шарда свой {@link CommandProcessor} со своими контроллерами и данными,
+ * которые трогает только поток шарда. Команда попадает в шард по хешу первого
+ * аргумента (имени продукта), поэтому все операции над продуктом выполняются
+ * одним потоком в порядке поступления, и порядок списания партий не меняется.
+ * Команды без аргументов выполняет шард 0. Команды, которые затрагивают продукты
+ * разных шардов, отклоняются через {@link #rejectCommands(String...)}: шард не видит
+ * чужих продуктов и ответил бы неверно.
+ * <p>
+ * Команды передаются шардам через {@link RingBuffer}, а ответы выдаются
+ * вызывающему потоку в порядке приема команд, даже если шарды выполнили их в другом.
+ * Если очередь шарда заполнена, {@link #submit} ждет. Шард без команд после
+ * активного ожидания засыпает до следующей команды, которую {@link #submit} будит.
+ */
+public final class ShardedCommandProcessor implements CommandPipeline, Closeable {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final String REJECTED_MESSAGE = " Command \"%s\" is not supported with shards";
+
+    @NotNull
+    private final Shard[] shards;
+
+    /**
+     * Принятые команды, ответы которых еще не выданы, в порядке приема
+     */
+    private final ArrayDeque<Task> pending = new ArrayDeque<>();
+
+    /**
+     * Имена отклоняемых команд в верхнем регистре
+     */
+    private final Set<String> rejectedCommands = new HashSet<>();
+
+    /**
+     * Сессия команд, принятых без своей сессии
+     */
+    private final CommandSession defaultSession = new CommandSession();
+
+    private boolean echo;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param shardCount    количество шардов
+     * @param queueCapacity емкость очереди каждого шарда, степень двойки
+     * @param configurer    регистрирует контроллеры в обработчике шарда,
+     *                      вызывается для каждого шарда со своими данными
+     */
+    public ShardedCommandProcessor(
+            int shardCount,
+            int queueCapacity,
+            @NotNull Consumer<CommandProcessor> configurer
+    ) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+
+        this.shards = new Shard[shardCount];
+        for (int index = 0; index < shardCount; index++) {
+            final CommandProcessor commandProcessor = new CommandProcessor();
+            commandProcessor.setEcho(false);
+            configurer.accept(commandProcessor);
+
+            shards[index] = new Shard(commandProcessor, new RingBuffer<>(queueCapacity), "shard-" + index);
+        }
+
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Справку печатает обработчик шарда 0 в свой вывод по умолчанию
+     */
+    @Override
+    public void startProcessing() {
+        shards[0].commandProcessor.startProcessing();
+    }
+
+    /**
+     * Отклоняемые команды отвечают сообщением и ERROR, не попадая в шарды.
+     * Вызывается до приема команд
+     *
+     * @param commandNames имена команд без учета регистра
+     */
+    public void rejectCommands(@NotNull String... commandNames) {
+        for (String commandName : commandNames) {
+            rejectedCommands.add(commandName.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    @Override
+    public void submit(@NotNull String commandLine, @NotNull Consumer<String> output) {
+        submit(commandLine, output, defaultSession);
+    }
+
+    /**
+     * Сессию используют потоки шардов, которые выполняют ее команды,
+     * поэтому она закрывается после {@link #flush()}
+     */
+    @Override
+    public void submit(@NotNull String commandLine, @NotNull Consumer<String> output, @NotNull CommandSession session) {
+        final Task task = new Task(commandLine, output, session);
+        if (!rejectedCommands.isEmpty() && reject(task))
+            return;
+
+        final Shard shard = shards[shardOf(commandLine)];
+
+        int idleCount = 0;
+        while (!shard.queue.offer(task)) {
+            deliverCompleted();
+            idleCount = idle(idleCount);
+        }
+        shard.wakeUp();
+        pending.addLast(task);
+
+        deliverCompleted();
+    }
+
+    @Override
+    public void flush() {
+        int idleCount = 0;
+        while (!pending.isEmpty()) {
+            if (pending.peekFirst().done) {
+                pending.pollFirst().deliver();
+                idleCount = 0;
+            } else {
+                idleCount = idle(idleCount);
+            }
+        }
+    }
+
+    /**
+     * Строка команды повторяется в ответе. Меняется до приема команд,
+     * шарды видят значение через очередь.
+     */
+    @Override
+    public boolean isEcho() {
+        return echo;
+    }
+
+    @Override
+    public void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    /**
+     * @return количество шардов
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Выдает ответы принятых команд и останавливает шарды
+     */
+    @Override
+    public void close() {
+        flush();
+        running = false;
+
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    /**
+     * Отвечает на отклоняемую команду в порядке приема
+     *
+     * @return true, если команда отклонена
+     */
+    private boolean reject(@NotNull Task task) {
+        final String commandName = commandNameOf(task.commandLine);
+        if (!rejectedCommands.contains(commandName.toUpperCase(Locale.ROOT)))
+            return false;
+
+        if (echo)
+            task.addMessage(task.commandLine);
+
+        task.addMessage(String.format(REJECTED_MESSAGE, commandName));
+        task.result = "ERROR";
+        task.done = true;
+        pending.addLast(task);
+
+        deliverCompleted();
+        return true;
+    }
+
+    /**
+     * @return первое слово строки команды
+     */
+    @NotNull
+    private static String commandNameOf(@NotNull String commandLine) {
+        final String trimmed = commandLine.trim();
+        final int end = trimmed.indexOf(' ');
+        return end < 0 ? trimmed : trimmed.substring(0, end);
+    }
+
+    private int shardOf(@NotNull String commandLine) {
+        final int hash = CommandLineTokenizer.hashToken(commandLine, 1);
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length;
+    }
+
+    private void deliverCompleted() {
+        while (!pending.isEmpty() && pending.peekFirst().done) {
+            pending.pollFirst().deliver();
+        }
+    }
+
+    /**
+     * Ожидание без блокировок: сначала активное, затем с уступкой процессора, затем с парковкой
+     *
+     * @return количество попыток ожидания
+     */
+    private static int idle(int idleCount) {
+        if (idleCount < SPIN_TRIES) {
+            return idleCount + 1;
+        }
+
+        if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idleCount + 1;
+    }
+
+    /**
+     * Поток шарда с его обработчиком и очередью
+     */
+    private final class Shard {
+
+        private final CommandProcessor commandProcessor;
+        private final RingBuffer<Task> queue;
+        private final Thread thread;
+
+        /**
+         * Спит ли поток шарда до следующей команды
+         */
+        private final AtomicBoolean sleeping = new AtomicBoolean();
+
+        private Shard(CommandProcessor commandProcessor, RingBuffer<Task> queue, String threadName) {
+            this.commandProcessor = commandProcessor;
+            this.queue = queue;
+            this.thread = new Thread(this::run, threadName);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            int idleCount = 0;
+            while (running) {
+                final Task task = queue.poll();
+
+                if (task == null) {
+                    idleCount = idleCount < SPIN_TRIES + YIELD_TRIES ? idle(idleCount) : sleep();
+                    continue;
+                }
+
+                idleCount = 0;
+                execute(task);
+            }
+        }
+
+        /**
+         * Засыпает до {@link #wakeUp()}, если очередь все еще пуста
+         *
+         * @return количество попыток ожидания, с которого начнется следующее ожидание
+         */
+        private int sleep() {
+            sleeping.set(true);
+            if (queue.isEmpty() && running) {
+                LockSupport.park(this);
+            }
+            sleeping.set(false);
+            return 0;
+        }
+
+        /**
+         * Будит поток шарда после добавления команды в очередь. Атомарная замена флага
+         * упорядочивает его чтение после публикации команды, поэтому шард, проверивший
+         * очередь до публикации, будет разбужен
+         */
+        private void wakeUp() {
+            if (sleeping.getAndSet(false)) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void execute(Task task) {
+            try {
+                if (echo)
+                    task.addMessage(task.commandLine);
+
+                task.result = commandProcessor.processCommand(task.commandLine, task::addMessage, task.session);
+            } catch (Exception e) {
+                task.result = "ERROR";
+            } finally {
+                task.done = true;
+            }
+        }
+
+    }
+
+    /**
+     * Команда и ее ответ. Ответ заполняет поток шарда,
+     * выдает поток, принявший команду, после {@link #done}.
+     */
+    private static final class Task {
+
+        private final String commandLine;
+        private final Consumer<String> output;
+        private final CommandSession session;
+
+        private List<String> messages;
+        private String result;
+
+        private volatile boolean done;
+
+        private Task(String commandLine, Consumer<String> output, CommandSession session) {
+            this.commandLine = commandLine;
+            this.output = output;
+            this.session = session;
+        }
+
+        private void addMessage(String message) {
+            if (messages == null) {
+                messages = new ArrayList<>(2);
+            }
+            messages.add(message);
+        }
+
+        private void deliver() {
+            if (messages != null) {
+                messages.forEach(output);
+            }
+            output.accept(result);
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.mayakplay.testtask.model;
+
+import com.mayakplay.testtask.type.ProductOperationType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * Закупка или продажа продукта в составе транзакции
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class ProductOperation {
+
+    private ProductOperationType type;
+    private String productName;
+    private int amount;
+    private int price;
+    private LocalDate date;
+
+    public static ProductOperation purchase(String productName, int amount, int price, LocalDate date) {
+        return new ProductOperation(ProductOperationType.PURCHASE, productName, amount, price, date);
+    }
+
+    public static ProductOperation demand(String productName, int amount, int price, LocalDate date) {
+        return new ProductOperation(ProductOperationType.DEMAND, productName, amount, price, date);
+    }
+
+}
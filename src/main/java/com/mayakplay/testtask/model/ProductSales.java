@@ -0,0 +1,19 @@
+package com.mayakplay.testtask.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Прибыль и количество проданного одного продукта за период
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class ProductSales {
+
+    private String productName;
+    private long profit;
+    private long volume;
+
+}
@@ -0,0 +1,18 @@
+package com.mayakplay.testtask.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Прибыль и количество проданного продукта за период
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class SalesSummary {
+
+    private long profit;
+    private long volume;
+
+}
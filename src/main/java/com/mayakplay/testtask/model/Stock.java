@@ -0,0 +1,18 @@
+package com.mayakplay.testtask.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Остаток продукта на дату и его закупочная стоимость по FIFO
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class Stock {
+
+    private long amount;
+    private long value;
+
+}
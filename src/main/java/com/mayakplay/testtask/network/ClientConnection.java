@@ -0,0 +1,147 @@
+package com.mayakplay.testtask.network;
+
+import com.mayakplay.testtask.infrastructure.CommandSession;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Состояние одного подключения {@link CommandServer}.
+ * <p>
+ * Входящие байты копятся в буфере до перевода строки, ответы на все
+ * строки, пришедшие одним чтением, собираются в выходной буфер
+ * и отправляются одной записью. Команды подключения выполняются в его {@link CommandSession}.
+ */
+final class ClientConnection {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    @NotNull
+    private final SocketChannel channel;
+
+    @NotNull
+    private final CommandSession session = new CommandSession();
+
+    /**
+     * Оба буфера держат данные до position
+     */
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer output = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Закрыть подключение, когда выходной буфер будет отправлен
+     */
+    private boolean closeAfterWrite;
+
+    ClientConnection(@NotNull SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @NotNull
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    @NotNull
+    CommandSession getSession() {
+        return session;
+    }
+
+    /**
+     * Читает доступные байты и передает каждую полную строку обработчику
+     *
+     * @param maxLineLength максимальная длина строки в байтах
+     * @param lineConsumer  обработчик строк без перевода строки
+     * @return false, если клиент закрыл подключение
+     *
+     * @throws IOException если строка длиннее maxLineLength
+     */
+    boolean read(int maxLineLength, @NotNull Consumer<String> lineConsumer) throws IOException {
+        if (!input.hasRemaining()) {
+            if (input.capacity() >= maxLineLength)
+                throw new IOException("Line is longer than " + maxLineLength + " bytes");
+
+            input = grow(input, Math.min(maxLineLength, input.capacity() * 2));
+        }
+
+        final int read = channel.read(input);
+
+        final byte[] bytes = input.array();
+        final int limit = input.position();
+        int lineStart = 0;
+        for (int position = 0; position < limit; position++) {
+            if (bytes[position] == '\n') {
+                final int lineEnd = position > lineStart && bytes[position - 1] == '\r' ? position - 1 : position;
+
+                lineConsumer.accept(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                lineStart = position + 1;
+            }
+        }
+
+        System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+        input.position(limit - lineStart);
+
+        return read != -1;
+    }
+
+    /**
+     * Добавляет ответ в выходной буфер
+     *
+     * @param response строки ответа, каждая с переводом строки
+     */
+    void enqueue(@NotNull CharSequence response) {
+        final byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (output.remaining() < bytes.length) {
+            output = grow(output, Math.max(output.capacity() * 2, output.position() + bytes.length));
+        }
+        output.put(bytes);
+    }
+
+    /**
+     * Отправляет выходной буфер, сколько примет сокет
+     *
+     * @return true, если буфер отправлен полностью
+     */
+    boolean write() throws IOException {
+        output.flip();
+        try {
+            channel.write(output);
+            return !output.hasRemaining();
+        } finally {
+            output.compact();
+        }
+    }
+
+    /**
+     * @return количество байт, ожидающих отправки
+     */
+    int getPendingBytes() {
+        return output.position();
+    }
+
+    boolean isCloseAfterWrite() {
+        return closeAfterWrite;
+    }
+
+    void closeAfterWrite() {
+        this.closeAfterWrite = true;
+    }
+
+    /**
+     * @param buffer   буфер, данные которого лежат до position
+     * @param capacity новая емкость
+     * @return буфер большей емкости с теми же данными
+     */
+    @NotNull
+    private static ByteBuffer grow(@NotNull ByteBuffer buffer, int capacity) {
+        final ByteBuffer grown = ByteBuffer.allocate(capacity);
+        grown.put(buffer.array(), 0, buffer.position());
+        return grown;
+    }
+
+}
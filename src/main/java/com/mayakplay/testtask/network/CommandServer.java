@@ -0,0 +1,233 @@
+package com.mayakplay.testtask.network;
+
+import com.mayakplay.testtask.infrastructure.CommandPipeline;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Сервер строкового протокола команд на неблокирующих каналах.
+ * <p>
+ * Все подключения обслуживает один поток с {@link Selector}, он же передает
+ * команды в {@link CommandPipeline}, поэтому конвейеру не нужна синхронизация.
+ * Клиент может отправлять команды, не дожидаясь ответов: строки, пришедшие
+ * одним чтением, передаются конвейеру по порядку, а их ответы отправляются одной записью.
+ * Ответ на команду - ее сообщения (ошибки аргументов, справка) и строка результата.
+ * Команда "Q" закрывает подключение, а не завершает сервер. У каждого подключения
+ * своя сессия команд, которая закрывается вместе с ним, поэтому открытая
+ * транзакция клиента не видна другим клиентам и не переживает подключение.
+ * <p>
+ * Пока ответы клиента не отправлены больше чем на {@link #MAX_PENDING_BYTES},
+ * его команды не читаются, чтобы клиент, не читающий ответы, не занимал память.
+ */
+public final class CommandServer implements Closeable {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+
+    private static final String QUIT_COMMAND = "Q";
+
+    @NotNull
+    private final CommandPipeline commandPipeline;
+
+    @NotNull
+    private final Selector selector;
+
+    @NotNull
+    private final ServerSocketChannel serverChannel;
+
+    @NotNull
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * Ответы на строки текущего чтения
+     */
+    private final StringBuilder response = new StringBuilder();
+
+    private final Consumer<String> responseWriter = line -> response.append(line).append('\n');
+
+    private CommandServer(
+            @NotNull CommandPipeline commandPipeline,
+            @NotNull Selector selector,
+            @NotNull ServerSocketChannel serverChannel
+    ) {
+        this.commandPipeline = commandPipeline;
+        this.selector = selector;
+        this.serverChannel = serverChannel;
+        this.thread = new Thread(this::run, "command-server");
+    }
+
+    /**
+     * Открывает порт и запускает поток сервера.
+     * Строки команд не повторяются в ответах.
+     *
+     * @param commandPipeline  конвейер команд, используется только потоком сервера
+     * @param address          адрес, порт 0 - любой свободный
+     * @return запущенный сервер
+     */
+    @NotNull
+    public static CommandServer start(
+            @NotNull CommandPipeline commandPipeline,
+            @NotNull InetSocketAddress address
+    ) throws IOException {
+        commandPipeline.setEcho(false);
+
+        final Selector selector = Selector.open();
+        final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        final CommandServer server = new CommandServer(commandPipeline, selector, serverChannel);
+        server.thread.start();
+        return server;
+    }
+
+    /**
+     * @return адрес, на котором сервер принимает подключения
+     */
+    @NotNull
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Ждет остановки сервера
+     */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    /**
+     * Останавливает сервер и закрывает все подключения
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            process(key);
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new ClientConnection(channel));
+    }
+
+    private void process(@NotNull SelectionKey key) throws IOException {
+        final ClientConnection connection = (ClientConnection) key.attachment();
+
+        if (key.isReadable()) {
+            final boolean open = connection.read(MAX_LINE_LENGTH, line -> processLine(connection, line));
+            commandPipeline.flush();
+
+            if (response.length() > 0) {
+                connection.enqueue(response);
+                response.setLength(0);
+            }
+            if (!open) {
+                connection.closeAfterWrite();
+            }
+        }
+
+        final boolean written = connection.write();
+        if (written && connection.isCloseAfterWrite()) {
+            closeConnection(key);
+            return;
+        }
+
+        int interestOps = 0;
+        if (!connection.isCloseAfterWrite() && connection.getPendingBytes() < MAX_PENDING_BYTES)
+            interestOps |= SelectionKey.OP_READ;
+        if (!written)
+            interestOps |= SelectionKey.OP_WRITE;
+        key.interestOps(interestOps);
+    }
+
+    private void processLine(@NotNull ClientConnection connection, @NotNull String line) {
+        if (connection.isCloseAfterWrite() || line.isEmpty())
+            return;
+
+        if (line.trim().equalsIgnoreCase(QUIT_COMMAND)) {
+            connection.closeAfterWrite();
+            return;
+        }
+
+        commandPipeline.submit(line, responseWriter, connection.getSession());
+    }
+
+    /**
+     * Закрывает подключение и его сессию. Принятые команды сначала выполняются,
+     * а их ответы отбрасываются, чтобы сессию не трогали после закрытия
+     */
+    private void closeConnection(@NotNull SelectionKey key) {
+        if (key.attachment() instanceof ClientConnection) {
+            commandPipeline.flush();
+            response.setLength(0);
+            ((ClientConnection) key.attachment()).getSession().close();
+        }
+
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
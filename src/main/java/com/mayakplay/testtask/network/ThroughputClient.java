@@ -0,0 +1,145 @@
+package com.mayakplay.testtask.network;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Нагрузочный клиент {@link CommandServer}.
+ * <p>
+ * Каждый клиент создает свой продукт и отправляет чередующиеся PURCHASE и DEMAND,
+ * не дожидаясь ответов, а отдельный поток считает строки ответов.
+ * <pre>
+ * java -cp testtask.jar com.mayakplay.testtask.network.ThroughputClient host port clients commands
+ * </pre>
+ */
+public final class ThroughputClient {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            System.err.println("Usage: ThroughputClient host port clients commandsPerClient");
+            System.exit(1);
+        }
+
+        final InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        final int clients = Integer.parseInt(args[2]);
+        final int commands = Integer.parseInt(args[3]);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(clients * 2);
+        try {
+            final long startTime = System.nanoTime();
+
+            final List<Future<Long>> results = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                results.add(runClient(executor, address, "product-" + client + "-" + startTime, commands));
+            }
+
+            long okResponses = 0;
+            for (Future<Long> result : results) {
+                okResponses += result.get();
+            }
+
+            final long elapsedNanos = System.nanoTime() - startTime;
+            final long total = (long) clients * (commands + 1);
+            System.out.printf("%d commands (%d OK) in %d ms (%d commands/sec)%n",
+                    total, okResponses, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    total * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsedNanos, 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Запускает одного клиента
+     *
+     * @return количество ответов "OK"
+     */
+    @NotNull
+    private static Future<Long> runClient(
+            @NotNull ExecutorService executor,
+            @NotNull InetSocketAddress address,
+            @NotNull String product,
+            int commands
+    ) throws IOException {
+        final SocketChannel channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+
+        executor.submit(() -> {
+            sendCommands(channel, product, commands);
+            return null;
+        });
+
+        return executor.submit(() -> {
+            try {
+                return countResponses(channel, commands + 1);
+            } finally {
+                channel.close();
+            }
+        });
+    }
+
+    private static void sendCommands(@NotNull SocketChannel channel, @NotNull String product, int commands) {
+        final StringBuilder batch = new StringBuilder("NEW ").append(product).append('\n');
+        try {
+            for (int command = 0; command < commands; command++) {
+                if (command % 2 == 0) {
+                    batch.append("PURCHASE ").append(product).append(" 1 100 01.01.2017\n");
+                } else {
+                    batch.append("DEMAND ").append(product).append(" 1 150 02.01.2017\n");
+                }
+
+                if (batch.length() >= BUFFER_SIZE / 2 || command == commands - 1) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    batch.setLength(0);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long countResponses(@NotNull SocketChannel channel, long expected) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final byte[] bytes = buffer.array();
+
+        long responses = 0;
+        long okResponses = 0;
+        int lineLength = 0;
+        boolean ok = true;
+        while (responses < expected) {
+            buffer.clear();
+            if (channel.read(buffer) == -1)
+                throw new IOException("Connection closed after " + responses + " responses");
+
+            for (int position = 0; position < buffer.position(); position++) {
+                final byte value = bytes[position];
+
+                if (value == '\n') {
+                    if (ok && lineLength == 2)
+                        okResponses++;
+                    responses++;
+                    lineLength = 0;
+                    ok = true;
+                } else {
+                    ok &= lineLength < 2 && value == "OK".charAt(lineLength);
+                    lineLength++;
+                }
+            }
+        }
+        return okResponses;
+    }
+
+}
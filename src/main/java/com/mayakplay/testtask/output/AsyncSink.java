@@ -0,0 +1,152 @@
+package com.mayakplay.testtask.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Передает строки отдельному потоку записи.
+ * <p>
+ * Строки добавляются в накопитель под короткой блокировкой, поток записи
+ * забирает весь накопитель целиком и пишет его без блокировки, поэтому
+ * пока идет запись, следующие строки собираются в новый пакет.
+ * Обработка команд ждет только если накопитель превысил {@code maxPending} символов.
+ */
+public final class AsyncSink implements OutputSink {
+
+    @NotNull
+    private final OutputStream stream;
+
+    private final int maxPending;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    @NotNull
+    private StringBuilder pending = new StringBuilder();
+
+    /**
+     * Пишет ли поток записи пакет в данный момент
+     */
+    private boolean writing;
+    private boolean closed;
+
+    private IOException failure;
+
+    @NotNull
+    private final Thread writer;
+
+    /**
+     * @param stream     поток вывода
+     * @param maxPending размер накопителя в символах, при котором обработка ждет записи
+     */
+    public AsyncSink(@NotNull OutputStream stream, int maxPending) {
+        this.stream = stream;
+        this.maxPending = maxPending;
+
+        this.writer = new Thread(this::writeLoop, "output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void println(@NotNull String line) {
+        lock.lock();
+        try {
+            while (pending.length() >= maxPending && !closed && failure == null) {
+                drained.awaitUninterruptibly();
+            }
+            checkFailure();
+
+            final boolean wasEmpty = pending.length() == 0;
+            pending.append(line).append(System.lineSeparator());
+            if (wasEmpty) {
+                hasPending.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Поток записи пишет, как только появляются строки, поэтому ничего не делает
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Ждет записи всех строк и останавливает поток записи
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            while ((pending.length() > 0 || writing) && failure == null) {
+                drained.awaitUninterruptibly();
+            }
+            closed = true;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            lock.lock();
+            try {
+                writing = false;
+                drained.signalAll();
+
+                while (pending.length() == 0 && !closed) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (pending.length() == 0)
+                    return;
+
+                final StringBuilder filled = pending;
+                pending = batch;
+                batch = filled;
+                writing = true;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                stream.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+                stream.flush();
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    writing = false;
+                    drained.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            batch.setLength(0);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new UncheckedIOException(failure);
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.mayakplay.testtask.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Копит строки и пишет их в поток одной записью, когда набирается пакет
+ * или когда вызывающий код сообщает о простое через {@link #flush()}.
+ * <p>
+ * Не потокобезопасен, используется потоком, обрабатывающим команды.
+ */
+public final class BufferedSink implements OutputSink {
+
+    @NotNull
+    private final OutputStream stream;
+
+    private final int batchSize;
+
+    @NotNull
+    private final StringBuilder batch;
+
+    /**
+     * @param stream    поток вывода
+     * @param batchSize размер пакета в символах
+     */
+    public BufferedSink(@NotNull OutputStream stream, int batchSize) {
+        this.stream = stream;
+        this.batchSize = batchSize;
+        this.batch = new StringBuilder(batchSize + 256);
+    }
+
+    @Override
+    public void println(@NotNull String line) {
+        batch.append(line).append(System.lineSeparator());
+
+        if (batch.length() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (batch.length() == 0)
+            return;
+
+        try {
+            stream.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.setLength(0);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+}
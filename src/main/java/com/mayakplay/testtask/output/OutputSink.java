@@ -0,0 +1,35 @@
+package com.mayakplay.testtask.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+
+/**
+ * Получатель строк вывода программы: результатов команд, их сообщений и справки.
+ * <p>
+ * Реализации могут копить строки, поэтому вызывающий код сообщает
+ * о простое через {@link #flush()}, а перед завершением вызывает {@link #close()}.
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * Выводит строку и перевод строки
+     *
+     * @param line строка без перевода строки
+     */
+    void println(@NotNull String line);
+
+    /**
+     * Отправляет накопленные строки.
+     * Асинхронные реализации не ждут окончания записи.
+     */
+    void flush();
+
+    /**
+     * Дописывает все накопленные строки.
+     * Поток, в который пишет получатель, не закрывается.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,32 @@
+package com.mayakplay.testtask.output;
+
+import lombok.AllArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+
+/**
+ * Пишет каждую строку сразу в {@link PrintStream}
+ */
+@AllArgsConstructor
+public final class PrintStreamSink implements OutputSink {
+
+    @NotNull
+    private final PrintStream stream;
+
+    @Override
+    public void println(@NotNull String line) {
+        stream.println(line);
+    }
+
+    @Override
+    public void flush() {
+        stream.flush();
+    }
+
+    @Override
+    public void close() {
+        stream.flush();
+    }
+
+}
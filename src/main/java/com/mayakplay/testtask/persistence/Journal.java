@@ -0,0 +1,308 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.type.FsyncPolicy;
+import com.mayakplay.testtask.type.ProductOperationType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменяющих операций в двоичном формате.
+ * <p>
+ * Формат записи: длина данных (int), данные, CRC32 данных (int).
+ * Данные: тип операции (byte), длина имени продукта (short), имя в UTF-8,
+ * для закупки и продажи - количество, цена и день (int).
+ * Транзакция записывается заголовком с количеством операций, за которым идут ее операции.
+ * <p>
+ * Записи накапливаются в буфере. В зависимости от {@link FsyncPolicy} буфер пишется
+ * и сбрасывается на диск при каждой записи или фоновым потоком раз в интервал.
+ * Пока фоновый поток пишет один буфер, операции продолжают заполнять второй.
+ */
+public final class Journal implements Closeable {
+
+    static final int HEADER_SIZE = Integer.BYTES;
+    static final int CHECKSUM_SIZE = Integer.BYTES;
+    static final int MAX_PAYLOAD_SIZE = 1 + Short.BYTES + Short.MAX_VALUE + 3 * Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @NotNull
+    private final FileChannel channel;
+
+    @NotNull
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * Буфер, в который добавляются новые записи, защищен монитором журнала
+     */
+    @NotNull
+    private ByteBuffer activeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Буфер, который пишется в файл, защищен {@link #channelLock}
+     */
+    @NotNull
+    private ByteBuffer flushingBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Порядок записи в файл совпадает с порядком захвата блокировки,
+     * а захватывается она только под монитором журнала
+     */
+    private final ReentrantLock channelLock = new ReentrantLock();
+
+    private final byte[] payload = new byte[MAX_PAYLOAD_SIZE];
+    private final CRC32 checksum = new CRC32();
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Ошибка фоновой записи, после нее журнал не принимает новые записи
+     */
+    private volatile IOException failure;
+
+    private Journal(@NotNull FileChannel channel, @NotNull FsyncPolicy fsyncPolicy, long flushIntervalMillis) {
+        this.channel = channel;
+        this.fsyncPolicy = fsyncPolicy;
+
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            this.flusher = null;
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flushInBackground,
+                    flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Открывает журнал для добавления записей в конец.
+     * Перед открытием журнал нужно восстановить через {@link JournalReader#replay}.
+     *
+     * @param path                путь к файлу журнала
+     * @param fsyncPolicy         политика сброса на диск
+     * @param flushIntervalMillis интервал фоновой записи для {@link FsyncPolicy#GROUP_COMMIT} и {@link FsyncPolicy#OS}
+     * @return открытый журнал
+     */
+    @NotNull
+    public static Journal open(@NotNull Path path, @NotNull FsyncPolicy fsyncPolicy, long flushIntervalMillis)
+            throws IOException {
+        final FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        return new Journal(channel, fsyncPolicy, flushIntervalMillis);
+    }
+
+    //region API
+    /**
+     * Добавляет запись о создании продукта
+     */
+    public void appendNew(@NotNull String productName) {
+        append(JournalRecordType.NEW, productName, 0, 0, 0);
+    }
+
+    /**
+     * Добавляет запись о закупке партии
+     */
+    public void appendPurchase(@NotNull String productName, int amount, int price, int epochDay) {
+        append(JournalRecordType.PURCHASE, productName, amount, price, epochDay);
+    }
+
+    /**
+     * Добавляет запись о продаже
+     */
+    public void appendDemand(@NotNull String productName, int amount, int price, int epochDay) {
+        append(JournalRecordType.DEMAND, productName, amount, price, epochDay);
+    }
+
+    /**
+     * Добавляет записи транзакции подряд, между ними не попадают записи других операций.
+     * При {@link FsyncPolicy#ALWAYS} сбрасывает их на диск один раз.
+     */
+    public synchronized void appendTransaction(@NotNull List<ProductOperation> operations) {
+        checkFailure();
+        try {
+            put(JournalRecordType.TRANSACTION, "", operations.size(), 0, 0);
+            for (ProductOperation operation : operations) {
+                final JournalRecordType type = operation.getType() == ProductOperationType.PURCHASE
+                        ? JournalRecordType.PURCHASE : JournalRecordType.DEMAND;
+
+                put(type, operation.getProductName(), operation.getAmount(), operation.getPrice(),
+                        (int) operation.getDate().toEpochDay());
+            }
+
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Пишет накопленные записи в файл и сбрасывает их на диск
+     */
+    public synchronized void flush() throws IOException {
+        channelLock.lock();
+        try {
+            write(activeBuffer);
+            channel.force(false);
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+    //endregion
+
+    //region WRITING
+    private synchronized void append(
+            @NotNull JournalRecordType type,
+            @NotNull String productName,
+            int amount,
+            int price,
+            int epochDay
+    ) {
+        checkFailure();
+        try {
+            put(type, productName, amount, price, epochDay);
+
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new UncheckedIOException("Journal is broken", failure);
+    }
+
+    /**
+     * Добавляет запись в {@link #activeBuffer}, записывая его в файл, если запись не помещается.
+     * Вызывается под монитором журнала.
+     */
+    private void put(
+            @NotNull JournalRecordType type,
+            @NotNull String productName,
+            int amount,
+            int price,
+            int epochDay
+    ) throws IOException {
+        final int payloadSize = encode(type, productName, amount, price, epochDay);
+        checksum.reset();
+        checksum.update(payload, 0, payloadSize);
+
+        if (activeBuffer.remaining() < HEADER_SIZE + payloadSize + CHECKSUM_SIZE) {
+            channelLock.lock();
+            try {
+                write(activeBuffer);
+            } finally {
+                channelLock.unlock();
+            }
+        }
+
+        activeBuffer.putInt(payloadSize)
+                .put(payload, 0, payloadSize)
+                .putInt((int) checksum.getValue());
+    }
+
+    /**
+     * Кодирует данные записи в {@link #payload}
+     *
+     * @return размер данных
+     */
+    private int encode(@NotNull JournalRecordType type, @NotNull String productName, int amount, int price, int epochDay) {
+        final byte[] name = productName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Product name is too long");
+
+        final ByteBuffer buffer = ByteBuffer.wrap(payload);
+        buffer.put(type.getCode())
+                .putShort((short) name.length)
+                .put(name);
+
+        if (type.hasBatchFields()) {
+            buffer.putInt(amount)
+                    .putInt(price)
+                    .putInt(epochDay);
+        }
+
+        return buffer.position();
+    }
+
+    /**
+     * Фоновая запись: буферы меняются местами под монитором журнала,
+     * а запись и сброс на диск идут без него
+     */
+    private void flushInBackground() {
+        synchronized (this) {
+            if (activeBuffer.position() == 0)
+                return;
+
+            channelLock.lock();
+
+            final ByteBuffer buffer = activeBuffer;
+            activeBuffer = flushingBuffer;
+            flushingBuffer = buffer;
+        }
+
+        try {
+            write(flushingBuffer);
+
+            if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    private void write(@NotNull ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    //endregion
+
+}
@@ -0,0 +1,186 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.service.ProductService;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Восстанавливает состояние по журналу операций
+ */
+public final class JournalReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private JournalReader() {
+    }
+
+    /**
+     * Применяет операции журнала к сервису по порядку.
+     * Недописанная или поврежденная запись в конце журнала
+     * (например, после падения процесса) отрезается вместе со всем, что после нее.
+     * Транзакция применяется одним вызовом {@link ProductService#applyOperations(List)},
+     * только если все ее записи целы, иначе отрезается целиком.
+     *
+     * @param path           путь к файлу журнала, может не существовать
+     * @param productService сервис, к которому применяются операции
+     * @return количество примененных записей
+     */
+    public static long replay(@NotNull Path path, @NotNull ProductService productService) throws IOException {
+        if (!Files.exists(path))
+            return 0;
+
+        long records = 0;
+        long validSize = 0;
+        long offset = 0;
+
+        List<ProductOperation> transaction = null;
+        int transactionSize = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            final byte[] payload = new byte[Journal.MAX_PAYLOAD_SIZE];
+            final CRC32 checksum = new CRC32();
+
+            buffer.flip();
+
+            boolean endOfFile = false;
+            while (true) {
+                if (buffer.remaining() >= Journal.HEADER_SIZE) {
+                    final int payloadSize = buffer.getInt(buffer.position());
+                    if (payloadSize <= 0 || payloadSize > Journal.MAX_PAYLOAD_SIZE)
+                        break;
+
+                    if (buffer.remaining() >= Journal.HEADER_SIZE + payloadSize + Journal.CHECKSUM_SIZE) {
+                        buffer.getInt();
+                        buffer.get(payload, 0, payloadSize);
+
+                        checksum.reset();
+                        checksum.update(payload, 0, payloadSize);
+                        if (buffer.getInt() != (int) checksum.getValue())
+                            break;
+
+                        offset += Journal.HEADER_SIZE + payloadSize + Journal.CHECKSUM_SIZE;
+                        final ByteBuffer record = ByteBuffer.wrap(payload, 0, payloadSize);
+
+                        if (transaction != null) {
+                            transaction.add(readOperation(record));
+                        } else if (payload[0] == JournalRecordType.TRANSACTION.getCode()) {
+                            transactionSize = readTransactionSize(record);
+                            transaction = new ArrayList<>(transactionSize);
+                        } else {
+                            apply(record, productService);
+                            records++;
+                            validSize = offset;
+                        }
+
+                        if (transaction != null && transaction.size() == transactionSize) {
+                            productService.applyOperations(transaction);
+                            records += transactionSize + 1;
+                            validSize = offset;
+                            transaction = null;
+                        }
+                        continue;
+                    }
+                }
+
+                if (endOfFile)
+                    break;
+
+                buffer.compact();
+                endOfFile = channel.read(buffer) == -1;
+                buffer.flip();
+            }
+
+            if (validSize < channel.size()) {
+                channel.truncate(validSize);
+                channel.force(false);
+            }
+        }
+
+        return records;
+    }
+
+    private static void apply(@NotNull ByteBuffer payload, @NotNull ProductService productService) throws IOException {
+        final JournalRecordType type = readType(payload);
+        final String productName = readName(payload);
+
+        switch (type) {
+            case NEW:
+                productService.createProduct(productName);
+                break;
+            case PURCHASE:
+                productService.purchaseBatch(productName, payload.getInt(), payload.getInt(),
+                        LocalDate.ofEpochDay(payload.getInt()));
+                break;
+            case DEMAND:
+                productService.demandProduct(productName, payload.getInt(), payload.getInt(),
+                        LocalDate.ofEpochDay(payload.getInt()));
+                break;
+            default:
+                throw new IOException("Unexpected journal record type " + type);
+        }
+    }
+
+    /**
+     * @return количество операций транзакции по ее заголовку
+     */
+    private static int readTransactionSize(@NotNull ByteBuffer payload) throws IOException {
+        readType(payload);
+        readName(payload);
+
+        final int size = payload.getInt();
+        if (size < 0)
+            throw new IOException("Negative transaction size");
+
+        return size;
+    }
+
+    /**
+     * @return закупку или продажу из записи транзакции
+     */
+    @NotNull
+    private static ProductOperation readOperation(@NotNull ByteBuffer payload) throws IOException {
+        final JournalRecordType type = readType(payload);
+        final String productName = readName(payload);
+        final int amount = payload.getInt();
+        final int price = payload.getInt();
+        final LocalDate date = LocalDate.ofEpochDay(payload.getInt());
+
+        switch (type) {
+            case PURCHASE:
+                return ProductOperation.purchase(productName, amount, price, date);
+            case DEMAND:
+                return ProductOperation.demand(productName, amount, price, date);
+            default:
+                throw new IOException("Unexpected record type in transaction: " + type);
+        }
+    }
+
+    @NotNull
+    private static JournalRecordType readType(@NotNull ByteBuffer payload) throws IOException {
+        final JournalRecordType type = JournalRecordType.of(payload.get());
+        if (type == null)
+            throw new IOException("Unknown journal record type");
+
+        return type;
+    }
+
+    @NotNull
+    private static String readName(@NotNull ByteBuffer payload) {
+        final byte[] name = new byte[payload.getShort()];
+        payload.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+}
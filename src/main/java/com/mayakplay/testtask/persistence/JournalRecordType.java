@@ -0,0 +1,48 @@
+package com.mayakplay.testtask.persistence;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Тип изменяющей операции в журнале
+ */
+enum JournalRecordType {
+
+    NEW((byte) 1),
+    PURCHASE((byte) 2),
+    DEMAND((byte) 3),
+
+    /**
+     * Начало транзакции, количество ее операций записано в поле количества,
+     * сами операции идут следующими записями
+     */
+    TRANSACTION((byte) 4),
+
+    ;
+
+    private final byte code;
+
+    JournalRecordType(byte code) {
+        this.code = code;
+    }
+
+    byte getCode() {
+        return code;
+    }
+
+    /**
+     * @return true, если у записи есть количество, цена и дата
+     */
+    boolean hasBatchFields() {
+        return this != NEW;
+    }
+
+    @Nullable
+    static JournalRecordType of(byte code) {
+        for (JournalRecordType type : values()) {
+            if (type.code == code)
+                return type;
+        }
+        return null;
+    }
+
+}
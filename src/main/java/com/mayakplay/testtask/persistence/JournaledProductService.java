@@ -0,0 +1,226 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.SalesRanking;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * {@link ProductService}, записывающий каждую успешную изменяющую операцию в {@link Journal}.
+ * <p>
+ * Операция и ее запись в журнал выполняются под одной общей блокировкой, поэтому порядок
+ * операций в журнале совпадает с порядком их применения. Блокировка защищает и сам сервис:
+ * {@link com.mayakplay.testtask.service.impl.ProductServiceImpl} не потокобезопасен,
+ * его словарь продуктов и общие суммы продаж меняет любая операция, поэтому изменяющие
+ * операции разных продуктов тоже выполняются по очереди, а чтения ждут изменений.
+ */
+public final class JournaledProductService implements ProductService {
+
+    @NotNull
+    private final ProductService productService;
+
+    /**
+     * Заменяется только под блокировкой, см. {@link #replaceJournal(Journal)}
+     */
+    @NotNull
+    private volatile Journal journal;
+
+    private final Object lock = new Object();
+
+    public JournaledProductService(@NotNull ProductService productService, @NotNull Journal journal) {
+        this.productService = productService;
+        this.journal = journal;
+    }
+
+    @Override
+    public OperationStatus tryCreateProduct(String name) {
+        synchronized (lock) {
+            final OperationStatus status = productService.tryCreateProduct(name);
+            if (status.isSuccess())
+                journal.appendNew(name);
+
+            return status;
+        }
+    }
+
+    @Override
+    public OperationStatus tryPurchaseBatch(String productName, int amount, int price, LocalDate date) {
+        synchronized (lock) {
+            final OperationStatus status = productService.tryPurchaseBatch(productName, amount, price, date);
+            if (status.isSuccess())
+                journal.appendPurchase(productName, amount, price, (int) date.toEpochDay());
+
+            return status;
+        }
+    }
+
+    @Override
+    public OperationStatus tryDemandProduct(String productName, int amount, int price, LocalDate date) {
+        synchronized (lock) {
+            final OperationStatus status = productService.tryDemandProduct(productName, amount, price, date);
+            if (status.isSuccess())
+                journal.appendDemand(productName, amount, price, (int) date.toEpochDay());
+
+            return status;
+        }
+    }
+
+    @Override
+    public int getProfitFor(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getProfitFor(productName, date);
+        }
+    }
+
+    @Override
+    public List<Batch> getBatches(String productName) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getBatches(productName);
+        }
+    }
+
+    @Override
+    public List<Sale> getSales(String productName) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getSales(productName);
+        }
+    }
+
+    @Override
+    public int getProductId(String productName) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getProductId(productName);
+        }
+    }
+
+    @Override
+    public String getProductName(int productId) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getProductName(productId);
+        }
+    }
+
+    /**
+     * Журнал хранит имена продуктов, поэтому имя берется по идентификатору
+     */
+    @Override
+    public OperationStatus tryPurchaseBatch(int productId, int amount, int price, LocalDate date) {
+        synchronized (lock) {
+            final String productName;
+            try {
+                productName = productService.getProductName(productId);
+            } catch (ProductDoesNotExistsException e) {
+                return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+            }
+
+            final OperationStatus status = productService.tryPurchaseBatch(productId, amount, price, date);
+            if (status.isSuccess())
+                journal.appendPurchase(productName, amount, price, (int) date.toEpochDay());
+
+            return status;
+        }
+    }
+
+    @Override
+    public OperationStatus tryDemandProduct(int productId, int amount, int price, LocalDate date) {
+        synchronized (lock) {
+            final String productName;
+            try {
+                productName = productService.getProductName(productId);
+            } catch (ProductDoesNotExistsException e) {
+                return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+            }
+
+            final OperationStatus status = productService.tryDemandProduct(productId, amount, price, date);
+            if (status.isSuccess())
+                journal.appendDemand(productName, amount, price, (int) date.toEpochDay());
+
+            return status;
+        }
+    }
+
+    @Override
+    public int getProfitFor(int productId, LocalDate date) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getProfitFor(productId, date);
+        }
+    }
+
+    /**
+     * Транзакция записывается в журнал подряд только после успеха
+     */
+    @Override
+    public OperationStatus tryApplyOperations(List<ProductOperation> operations) {
+        synchronized (lock) {
+            final OperationStatus status = productService.tryApplyOperations(operations);
+            if (status.isSuccess())
+                journal.appendTransaction(operations);
+
+            return status;
+        }
+    }
+
+    @Override
+    public long getProfitBetween(String productName, LocalDate from, LocalDate to)
+            throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getProfitBetween(productName, from, to);
+        }
+    }
+
+    @Override
+    public SalesSummary getSalesSummary(LocalDate from, LocalDate to) {
+        synchronized (lock) {
+            return productService.getSalesSummary(from, to);
+        }
+    }
+
+    @Override
+    public List<ProductSales> getTopProducts(SalesRanking ranking, int limit, LocalDate from, LocalDate to) {
+        synchronized (lock) {
+            return productService.getTopProducts(ranking, limit, from, to);
+        }
+    }
+
+    @Override
+    public Stock getStock(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        synchronized (lock) {
+            return productService.getStock(productName, date);
+        }
+    }
+
+    /**
+     * Выполняет действие, когда ни одна изменяющая операция не выполняется
+     *
+     * @param action действие
+     */
+    void runExclusively(@NotNull Runnable action) {
+        synchronized (lock) {
+            action.run();
+        }
+    }
+
+    /**
+     * Переключает запись на новый журнал. Вызывается внутри {@link #runExclusively(Runnable)}.
+     *
+     * @param journal новый журнал
+     * @return предыдущий журнал
+     */
+    @NotNull
+    Journal replaceJournal(@NotNull Journal journal) {
+        final Journal previous = this.journal;
+        this.journal = journal;
+        return previous;
+    }
+
+}
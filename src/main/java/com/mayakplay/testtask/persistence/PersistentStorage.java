@@ -0,0 +1,217 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.service.SnapshotSupport;
+import com.mayakplay.testtask.storage.ProductLedger;
+import com.mayakplay.testtask.type.FsyncPolicy;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Каталог с данными сервиса: снимок состояния и журналы операций по поколениям.
+ * <p>
+ * Снимок с поколением G содержит все операции журналов с поколением меньше G.
+ * При запуске загружается снимок и применяются журналы с поколением не меньше G,
+ * старые журналы удаляются.
+ * <p>
+ * Снимок делается в два шага: под блокировкой {@link JournaledProductService}
+ * запоминаются неизменяемые части состояния, см. {@link SnapshotSupport#captureLedgers()},
+ * и запись переключается на уже открытый журнал следующего поколения. Затем состояние
+ * копируется и пишется на диск в фоне, не останавливая обработку команд.
+ */
+public final class PersistentStorage implements Closeable {
+
+    private static final String SNAPSHOT_FILE_NAME = "snapshot.bin";
+    private static final Pattern JOURNAL_FILE_PATTERN = Pattern.compile("journal-(\\d+)\\.log");
+
+    @NotNull
+    private final Path directory;
+
+    @NotNull
+    private final FsyncPolicy fsyncPolicy;
+
+    private final long flushIntervalMillis;
+
+    @NotNull
+    private final JournaledProductService productService;
+
+    @NotNull
+    private final SnapshotSupport snapshotSupport;
+
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Текущий журнал и его поколение, меняются внутри {@link JournaledProductService#runExclusively}
+     */
+    @NotNull
+    private Journal journal;
+    private long generation;
+
+    private PersistentStorage(
+            @NotNull Path directory,
+            @NotNull FsyncPolicy fsyncPolicy,
+            long flushIntervalMillis,
+            @NotNull JournaledProductService productService,
+            @NotNull SnapshotSupport snapshotSupport,
+            @NotNull Journal journal,
+            long generation
+    ) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.productService = productService;
+        this.snapshotSupport = snapshotSupport;
+        this.journal = journal;
+        this.generation = generation;
+    }
+
+    /**
+     * Восстанавливает состояние сервиса из каталога и подключает к нему журнал
+     *
+     * @param directory           каталог данных, создается при необходимости
+     * @param productService      пустой сервис, поддерживающий снимки
+     * @param fsyncPolicy         политика сброса журнала на диск
+     * @param flushIntervalMillis интервал фоновой записи журнала
+     * @return хранилище с восстановленным сервисом
+     */
+    @NotNull
+    public static <S extends ProductService & SnapshotSupport> PersistentStorage open(
+            @NotNull Path directory,
+            @NotNull S productService,
+            @NotNull FsyncPolicy fsyncPolicy,
+            long flushIntervalMillis
+    ) throws IOException {
+        Files.createDirectories(directory);
+
+        final Path snapshotPath = directory.resolve(SNAPSHOT_FILE_NAME);
+        long snapshotGeneration = 0;
+        if (Files.exists(snapshotPath)) {
+            final Snapshot snapshot = Snapshot.read(snapshotPath);
+
+            productService.restoreLedgers(snapshot.getLedgers());
+            snapshotGeneration = snapshot.getGeneration();
+        }
+
+        long generation = snapshotGeneration;
+        for (Map.Entry<Long, Path> entry : findJournals(directory).entrySet()) {
+            if (entry.getKey() < snapshotGeneration) {
+                Files.delete(entry.getValue());
+            } else {
+                JournalReader.replay(entry.getValue(), productService);
+                generation = entry.getKey();
+            }
+        }
+
+        final Journal journal = Journal.open(journalPath(directory, generation), fsyncPolicy, flushIntervalMillis);
+
+        return new PersistentStorage(directory, fsyncPolicy, flushIntervalMillis,
+                new JournaledProductService(productService, journal), productService, journal, generation);
+    }
+
+    /**
+     * @return сервис, записывающий операции в журнал
+     */
+    @NotNull
+    public ProductService getProductService() {
+        return productService;
+    }
+
+    /**
+     * Фиксирует текущее состояние и пишет его снимок в фоне.
+     * После записи снимка журналы предыдущих поколений удаляются.
+     *
+     * @return завершится, когда снимок будет записан
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> snapshot() throws IOException {
+        final long snapshotGeneration = generation + 1;
+        final Journal nextJournal = Journal.open(
+                journalPath(directory, snapshotGeneration), fsyncPolicy, flushIntervalMillis);
+
+        final AtomicReference<Supplier<Map<String, ProductLedger>>> capture = new AtomicReference<>();
+        final Journal[] previousJournal = new Journal[1];
+
+        try {
+            productService.runExclusively(() -> {
+                capture.set(snapshotSupport.captureLedgers());
+
+                generation = snapshotGeneration;
+                journal = nextJournal;
+                previousJournal[0] = productService.replaceJournal(nextJournal);
+            });
+        } catch (RuntimeException e) {
+            nextJournal.close();
+            throw e;
+        }
+
+        previousJournal[0].close();
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                new Snapshot(snapshotGeneration, capture.get().get()).write(directory.resolve(SNAPSHOT_FILE_NAME));
+
+                for (Map.Entry<Long, Path> entry : findJournals(directory).entrySet()) {
+                    if (entry.getKey() < snapshotGeneration) {
+                        Files.delete(entry.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, snapshotWriter);
+    }
+
+    /**
+     * Делает последний снимок, чтобы следующий запуск не применял журнал, и закрывает журнал
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            snapshot().join();
+        } finally {
+            snapshotWriter.shutdown();
+            journal.close();
+        }
+    }
+
+    /**
+     * @return журналы каталога, упорядоченные по поколению
+     */
+    @NotNull
+    private static SortedMap<Long, Path> findJournals(@NotNull Path directory) throws IOException {
+        final SortedMap<Long, Path> journals = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                final Matcher matcher = JOURNAL_FILE_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    journals.put(Long.parseLong(matcher.group(1)), path);
+                }
+            }
+        }
+        return journals;
+    }
+
+    @NotNull
+    private static Path journalPath(@NotNull Path directory, long generation) {
+        return directory.resolve(String.format("journal-%016d.log", generation));
+    }
+
+}
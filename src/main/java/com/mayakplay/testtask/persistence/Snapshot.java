@@ -0,0 +1,112 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.storage.ProductLedger;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Двоичный снимок состояния всех продуктов.
+ * <p>
+ * Формат: сигнатура, версия формата, поколение журнала, количество продуктов,
+ * для каждого продукта имя и {@link ProductLedger#writeTo}, в конце CRC32 всего содержимого.
+ * Снимок включает все операции журналов с поколением меньше записанного.
+ */
+@Getter
+@AllArgsConstructor
+public final class Snapshot {
+
+    private static final int MAGIC = 0x534E4150;
+    private static final int FORMAT_VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final long generation;
+
+    @NotNull
+    private final Map<String, ProductLedger> ledgers;
+
+    /**
+     * Записывает снимок во временный файл, сбрасывает его на диск
+     * и атомарно заменяет им файл снимка
+     *
+     * @param path путь к файлу снимка
+     */
+    public void write(@NotNull Path path) throws IOException {
+        final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryPath.toFile())) {
+            final CheckedOutputStream checkedOutput = new CheckedOutputStream(
+                    new BufferedOutputStream(fileOutput, BUFFER_SIZE), new CRC32());
+            final DataOutputStream output = new DataOutputStream(checkedOutput);
+
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(generation);
+            output.writeInt(ledgers.size());
+            for (Map.Entry<String, ProductLedger> entry : ledgers.entrySet()) {
+                output.writeUTF(entry.getKey());
+                entry.getValue().writeTo(output);
+            }
+            output.flush();
+
+            new DataOutputStream(fileOutput).writeInt((int) checkedOutput.getChecksum().getValue());
+            fileOutput.getFD().sync();
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Читает снимок
+     *
+     * @param path путь к файлу снимка
+     * @return снимок
+     *
+     * @throws IOException если снимок поврежден
+     */
+    @NotNull
+    public static Snapshot read(@NotNull Path path) throws IOException {
+        try (InputStream fileInput = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            final CheckedInputStream checkedInput = new CheckedInputStream(fileInput, new CRC32());
+            final DataInputStream input = new DataInputStream(checkedInput);
+
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION)
+                throw new IOException("Unknown snapshot format: " + path);
+
+            final long generation = input.readLong();
+            final int productCount = input.readInt();
+            final Map<String, ProductLedger> ledgers = new LinkedHashMap<>(productCount * 2);
+            for (int index = 0; index < productCount; index++) {
+                ledgers.put(input.readUTF(), ProductLedger.readFrom(input));
+            }
+
+            final int checksum = (int) checkedInput.getChecksum().getValue();
+            if (new DataInputStream(fileInput).readInt() != checksum)
+                throw new IOException("Snapshot checksum mismatch: " + path);
+
+            return new Snapshot(generation, ledgers);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // не все системы позволяют открыть каталог, переименование все равно атомарно
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.mayakplay.testtask.processor;
+
+import com.mayakplay.testtask.annotation.Argument;
+import com.mayakplay.testtask.annotation.CommandDescription;
+import com.mayakplay.testtask.annotation.CommandMethod;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Составляет при компиляции реестр команд каждого контроллера.
+ * <p>
+ * Для контроллера с методами {@link CommandMethod} создается класс {@code <Контроллер>_Commands}
+ * в том же пакете: описания команд и их аргументов из {@link CommandMethod}, {@link CommandDescription}
+ * и {@link Argument} и вызов методов через switch, без рефлексии. Аргументы типов int и long
+ * берутся из массива чисел, чтобы не упаковывать их.
+ * Обработчик команд находит реестр по имени класса контроллера.
+ * <p>
+ * Реестр не создается для вложенных и обобщенных классов и классов с приватными командами,
+ * такие контроллеры регистрируются через рефлексию.
+ */
+@SupportedAnnotationTypes("com.mayakplay.testtask.annotation.CommandMethod")
+public final class CommandRegistryProcessor extends AbstractProcessor {
+
+    /**
+     * Совпадает с CommandRegistry.CLASS_SUFFIX
+     */
+    private static final String CLASS_SUFFIX = "_Commands";
+
+    private static final String REGISTRY_INTERFACE = "com.mayakplay.testtask.infrastructure.CommandRegistry";
+    private static final String DECLARATION_CLASS = "com.mayakplay.testtask.infrastructure.CommandDeclaration";
+
+    private static final String CONSTRAINT_ANNOTATION = "javax.validation.Constraint";
+    private static final String VALID_ANNOTATION = "javax.validation.Valid";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        final Map<TypeElement, List<ExecutableElement>> controllers = new LinkedHashMap<>();
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(CommandMethod.class)) {
+            if (element.getKind() != ElementKind.METHOD)
+                continue;
+
+            controllers.computeIfAbsent((TypeElement) element.getEnclosingElement(), type -> new ArrayList<>())
+                    .add((ExecutableElement) element);
+        }
+
+        controllers.forEach((controller, methods) -> {
+            if (!isSupported(controller, methods))
+                return;
+
+            try {
+                writeRegistry(controller, methods);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Can not write command registry: " + e.getMessage(), controller);
+            }
+        });
+        return false;
+    }
+
+    private static boolean isSupported(TypeElement controller, List<ExecutableElement> methods) {
+        if (controller.getNestingKind() != NestingKind.TOP_LEVEL || !controller.getTypeParameters().isEmpty())
+            return false;
+
+        return methods.stream().noneMatch(method -> method.getModifiers().contains(Modifier.PRIVATE)
+                || method.getModifiers().contains(Modifier.STATIC));
+    }
+
+    //region GENERATION
+    private void writeRegistry(TypeElement controller, List<ExecutableElement> methods) throws IOException {
+        final String packageName = processingEnv.getElementUtils().getPackageOf(controller).getQualifiedName().toString();
+        final String controllerName = controller.getSimpleName().toString();
+        final String registryName = controllerName + CLASS_SUFFIX;
+
+        try (PrintWriter writer = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(packageName.isEmpty() ? registryName : packageName + "." + registryName, controller)
+                .openWriter())) {
+
+            if (!packageName.isEmpty())
+                writer.printf("package %s;%n%n", packageName);
+
+            writer.printf("@javax.annotation.Generated(\"%s\")%n", getClass().getName());
+            writer.printf("public final class %s implements %s<%s> {%n%n", registryName, REGISTRY_INTERFACE, controllerName);
+
+            writer.printf("    private static final %s[] DECLARATIONS = {%n", DECLARATION_CLASS);
+            for (ExecutableElement method : methods) {
+                writer.printf("            %s,%n", declaration(method));
+            }
+            writer.printf("    };%n%n");
+
+            writer.printf("    @Override%n");
+            writer.printf("    public %s[] getDeclarations() {%n", DECLARATION_CLASS);
+            writer.printf("        return DECLARATIONS.clone();%n");
+            writer.printf("    }%n%n");
+
+            writer.printf("    @Override%n");
+            writer.printf("    @SuppressWarnings(\"unchecked\")%n");
+            writer.printf("    public Object invoke(%s controller, int command, Object[] arguments, long[] numbers) throws Throwable {%n",
+                    controllerName);
+            writer.printf("        switch (command) {%n");
+            for (int index = 0; index < methods.size(); index++) {
+                final ExecutableElement method = methods.get(index);
+                final boolean returnsVoid = method.getReturnType().getKind() == TypeKind.VOID;
+
+                writer.printf("            case %d:%n", index);
+                writer.printf("                %scontroller.%s(%s);%n",
+                        returnsVoid ? "" : "return ", method.getSimpleName(), invocationArguments(method));
+                if (returnsVoid)
+                    writer.printf("                return null;%n");
+            }
+            writer.printf("            default:%n");
+            writer.printf("                throw new IllegalArgumentException(\"Unknown command: \" + command);%n");
+            writer.printf("        }%n");
+            writer.printf("    }%n%n");
+
+            writer.printf("}%n");
+        }
+    }
+
+    private String declaration(ExecutableElement method) {
+        final CommandDescription description = method.getAnnotation(CommandDescription.class);
+        final List<? extends VariableElement> parameters = method.getParameters();
+
+        return String.format("new %s(%s, %s, %s, new Class<?>[]{%s}, new String[]{%s}, new String[]{%s}, new String[]{%s}, %s)",
+                DECLARATION_CLASS,
+                literal(method.getAnnotation(CommandMethod.class).value()),
+                literal(description == null ? "" : description.value()),
+                literal(method.getSimpleName().toString()),
+                parameters.stream().map(parameter -> erasure(parameter.asType()) + ".class").collect(Collectors.joining(", ")),
+                parameters.stream().map(parameter -> literal(argumentName(parameter))).collect(Collectors.joining(", ")),
+                parameters.stream().map(parameter -> literal(parameter.getSimpleName().toString())).collect(Collectors.joining(", ")),
+                parameters.stream().map(this::errorDescription).collect(Collectors.joining(", ")),
+                isConstrained(method));
+    }
+
+    private String invocationArguments(ExecutableElement method) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final StringJoiner joiner = new StringJoiner(", ");
+
+        for (int index = 0; index < parameters.size(); index++) {
+            final TypeMirror type = parameters.get(index).asType();
+            final boolean numeric = type.getKind() == TypeKind.INT || type.getKind() == TypeKind.LONG;
+
+            joiner.add(String.format("(%s) %s[%d]", erasure(type), numeric ? "numbers" : "arguments", index));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * @return имя аргумента из {@link Argument} или простое имя его типа, как при регистрации через рефлексию
+     */
+    private String argumentName(VariableElement parameter) {
+        final Argument argument = parameter.getAnnotation(Argument.class);
+        return argument != null ? argument.value() : simpleName(processingEnv.getTypeUtils().erasure(parameter.asType()));
+    }
+
+    private String errorDescription(VariableElement parameter) {
+        final Argument argument = parameter.getAnnotation(Argument.class);
+        return argument != null ? literal(argument.onError()) : "null";
+    }
+
+    /**
+     * @return есть ли у метода или его параметров ограничения {@code javax.validation}
+     */
+    private static boolean isConstrained(ExecutableElement method) {
+        if (hasConstraints(method))
+            return true;
+
+        return method.getParameters().stream().anyMatch(CommandRegistryProcessor::hasConstraints);
+    }
+
+    private static boolean hasConstraints(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+
+            if (annotationType.getQualifiedName().contentEquals(VALID_ANNOTATION) || isConstraint(annotationType))
+                return true;
+
+            final Element enclosing = annotationType.getEnclosingElement();
+            if (annotationType.getSimpleName().contentEquals("List")
+                    && enclosing instanceof TypeElement && isConstraint((TypeElement) enclosing))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isConstraint(TypeElement annotationType) {
+        return annotationType.getAnnotationMirrors().stream()
+                .map(annotation -> (TypeElement) annotation.getAnnotationType().asElement())
+                .anyMatch(type -> type.getQualifiedName().contentEquals(CONSTRAINT_ANNOTATION));
+    }
+    //endregion
+
+    /**
+     * @return имя стертого типа для исходного кода. {@link TypeMirror#toString()} не подходит:
+     * в JDK 8 он включает аннотации типа параметра
+     */
+    private String erasure(TypeMirror type) {
+        return typeName(processingEnv.getTypeUtils().erasure(type), true);
+    }
+
+    private static String simpleName(TypeMirror type) {
+        return typeName(type, false);
+    }
+
+    private static String typeName(TypeMirror type, boolean qualified) {
+        if (type.getKind() == TypeKind.ARRAY)
+            return typeName(((ArrayType) type).getComponentType(), qualified) + "[]";
+
+        if (type.getKind() == TypeKind.DECLARED) {
+            final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            return (qualified ? element.getQualifiedName() : element.getSimpleName()).toString();
+        }
+
+        return type.getKind().name().toLowerCase(Locale.ROOT);
+    }
+
+    private String literal(String value) {
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+}
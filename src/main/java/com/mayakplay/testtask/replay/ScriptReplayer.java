@@ -0,0 +1,116 @@
+package com.mayakplay.testtask.replay;
+
+import com.mayakplay.testtask.infrastructure.CommandPipeline;
+import com.mayakplay.testtask.output.OutputSink;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Неинтерактивно выполняет файл команд.
+ * <p>
+ * Файл читается через {@link FileChannel} большими блоками, строки команд
+ * не повторяются в выводе, а результаты и сообщения команд пишутся в {@link OutputSink}.
+ */
+@AllArgsConstructor
+public final class ScriptReplayer {
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final CommandPipeline commandPipeline;
+    private final OutputSink output;
+
+    /**
+     * Выполняет все команды файла по порядку
+     *
+     * @param script путь к файлу команд в UTF-8
+     * @return статистику выполнения
+     */
+    @NotNull
+    public ReplayStatistics replay(@NotNull Path script) throws IOException {
+        final boolean echo = commandPipeline.isEcho();
+        commandPipeline.setEcho(false);
+
+        final long startTime = System.nanoTime();
+        long lines = 0;
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            final byte[] bytes = buffer.array();
+
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = channel.read(buffer) == -1;
+
+                final int limit = buffer.position();
+                int lineStart = 0;
+                for (int position = 0; position < limit; position++) {
+                    if (bytes[position] == '\n') {
+                        processLine(bytes, lineStart, position);
+                        lines++;
+                        lineStart = position + 1;
+                    }
+                }
+
+                if (endOfFile && lineStart < limit) {
+                    processLine(bytes, lineStart, limit);
+                    lines++;
+                } else if (lineStart == 0 && limit == bytes.length) {
+                    throw new IOException("Line is longer than " + READ_BUFFER_SIZE + " bytes");
+                }
+
+                System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                buffer.position(limit - lineStart);
+            }
+        } finally {
+            commandPipeline.flush();
+            output.flush();
+            commandPipeline.setEcho(echo);
+        }
+
+        return new ReplayStatistics(lines, System.nanoTime() - startTime);
+    }
+
+    private void processLine(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start)
+            return;
+
+        commandPipeline.submit(new String(bytes, start, end - start, StandardCharsets.UTF_8), output::println);
+    }
+
+    /**
+     * Статистика выполнения файла команд
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class ReplayStatistics {
+
+        private final long lines;
+        private final long elapsedNanos;
+
+        /**
+         * @return количество строк в секунду
+         */
+        public long getLinesPerSecond() {
+            return elapsedNanos == 0 ? lines : lines * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Replayed %d lines in %d ms (%d lines/sec)",
+                    lines, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getLinesPerSecond());
+        }
+
+    }
+
+}
@@ -3,17 +3,132 @@ package com.mayakplay.testtask.service;
 import com.mayakplay.testtask.exception.NotEnoughProductionException;
 import com.mayakplay.testtask.exception.ProductAlreadyExistsException;
 import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.SalesRanking;
 
 import java.time.LocalDate;
+import java.util.List;
 
+/**
+ * Операции с продуктами доступны по имени и по идентификатору.
+ * Идентификаторы плотные, выдаются при создании продукта в порядке создания
+ * и позволяют не искать продукт по имени в каждой операции.
+ * <p>
+ * Изменяющие операции реализуются методами try*, которые возвращают {@link OperationStatus}
+ * и не бросают исключений при отказе. Методы с исключениями - обертки над ними.
+ */
 public interface ProductService {
 
-    void createProduct(String name) throws ProductAlreadyExistsException;
+    //region OUTCOMES
+    OperationStatus tryCreateProduct(String name);
 
-    void purchaseBatch(String productName, int amount, int price, LocalDate date) throws ProductDoesNotExistsException;
+    OperationStatus tryPurchaseBatch(String productName, int amount, int price, LocalDate date);
 
-    void demandProduct(String productName, int amount, int price, LocalDate date)
-            throws ProductDoesNotExistsException, NotEnoughProductionException;
+    OperationStatus tryPurchaseBatch(int productId, int amount, int price, LocalDate date);
+
+    OperationStatus tryDemandProduct(String productName, int amount, int price, LocalDate date);
+
+    OperationStatus tryDemandProduct(int productId, int amount, int price, LocalDate date);
+
+    /**
+     * Выполняет закупки и продажи по порядку как одну операцию: если любая из них
+     * не может быть выполнена, состояние не меняется.
+     * Существование продуктов и аргументы проверяются до выполнения первой операции.
+     *
+     * @param operations операции в порядке выполнения
+     */
+    OperationStatus tryApplyOperations(List<ProductOperation> operations);
+    //endregion
+
+    /**
+     * @return идентификатор нового продукта
+     */
+    default int createProduct(String name) throws ProductAlreadyExistsException {
+        tryCreateProduct(name).throwIfFailed();
+        return getProductId(name);
+    }
+
+    default void purchaseBatch(String productName, int amount, int price, LocalDate date)
+            throws ProductDoesNotExistsException {
+        tryPurchaseBatch(productName, amount, price, date).throwIfFailed();
+    }
+
+    default void demandProduct(String productName, int amount, int price, LocalDate date)
+            throws ProductDoesNotExistsException, NotEnoughProductionException {
+        tryDemandProduct(productName, amount, price, date).throwIfFailed();
+    }
 
     int getProfitFor(String productName, LocalDate date) throws ProductDoesNotExistsException;
+
+    /**
+     * @return представление партий продукта в порядке списания
+     */
+    List<Batch> getBatches(String productName) throws ProductDoesNotExistsException;
+
+    /**
+     * @return представление продаж продукта в порядке регистрации
+     */
+    List<Sale> getSales(String productName) throws ProductDoesNotExistsException;
+
+    /**
+     * @return идентификатор продукта
+     */
+    int getProductId(String productName) throws ProductDoesNotExistsException;
+
+    /**
+     * @return имя продукта с идентификатором
+     */
+    String getProductName(int productId) throws ProductDoesNotExistsException;
+
+    default void purchaseBatch(int productId, int amount, int price, LocalDate date)
+            throws ProductDoesNotExistsException {
+        tryPurchaseBatch(productId, amount, price, date).throwIfFailed();
+    }
+
+    default void demandProduct(int productId, int amount, int price, LocalDate date)
+            throws ProductDoesNotExistsException, NotEnoughProductionException {
+        tryDemandProduct(productId, amount, price, date).throwIfFailed();
+    }
+
+    int getProfitFor(int productId, LocalDate date) throws ProductDoesNotExistsException;
+
+    /**
+     * @see #tryApplyOperations(List)
+     *
+     * @throws IllegalArgumentException     если количество или цена операции не положительны
+     * @throws NotEnoughProductionException если продукции для продажи недостаточно
+     */
+    default void applyOperations(List<ProductOperation> operations)
+            throws ProductDoesNotExistsException, NotEnoughProductionException {
+        tryApplyOperations(operations).throwIfFailed();
+    }
+
+    /**
+     * @return прибыль продукта за период включительно, 0 если продаж не было
+     */
+    long getProfitBetween(String productName, LocalDate from, LocalDate to) throws ProductDoesNotExistsException;
+
+    /**
+     * @return прибыль и количество проданного всех продуктов за период включительно
+     */
+    SalesSummary getSalesSummary(LocalDate from, LocalDate to);
+
+    /**
+     * @param ranking показатель, по которому выбираются продукты
+     * @param limit   максимальное количество продуктов
+     * @return продукты с продажами за период включительно, лучший первым
+     */
+    List<ProductSales> getTopProducts(SalesRanking ranking, int limit, LocalDate from, LocalDate to);
+
+    /**
+     * @return количество продукта, доступного для продажи в день, и его закупочную стоимость
+     */
+    Stock getStock(String productName, LocalDate date) throws ProductDoesNotExistsException;
+
 }
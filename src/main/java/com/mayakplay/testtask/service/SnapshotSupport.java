@@ -0,0 +1,33 @@
+package com.mayakplay.testtask.service;
+
+import com.mayakplay.testtask.storage.ProductLedger;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Сервис, состояние которого можно зафиксировать для снимка и восстановить из него
+ */
+public interface SnapshotSupport {
+
+    /**
+     * Фиксирует данные всех продуктов. Вызывающий гарантирует,
+     * что во время вызова нет изменяющих операций.
+     * <p>
+     * Вызов стоит O(количество продуктов): он запоминает неизменяемые части данных,
+     * а копирует и преобразует их возвращенный поставщик, которого можно
+     * вызвать позже из другого потока, параллельно с изменяющими операциями.
+     *
+     * @return поставщик независимых копий данных по имени продукта в порядке идентификаторов
+     */
+    Supplier<Map<String, ProductLedger>> captureLedgers();
+
+    /**
+     * Заменяет состояние сервиса данными продуктов.
+     * Идентификаторы выдаются в порядке обхода ledgers.
+     *
+     * @param ledgers данные по имени продукта
+     */
+    void restoreLedgers(Map<String, ProductLedger> ledgers);
+
+}
@@ -0,0 +1,421 @@
+package com.mayakplay.testtask.service.impl;
+
+import com.mayakplay.testtask.exception.ProductAlreadyExistsException;
+import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
+import com.mayakplay.testtask.exception.SalesDoesNotFoundException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.service.SnapshotSupport;
+import com.mayakplay.testtask.storage.LedgerVersion;
+import com.mayakplay.testtask.storage.ProductLedger;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.SalesRanking;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Потокобезопасная реализация {@link ProductService} с чтением по версиям.
+ * <p>
+ * Состояние продукта - неизменяемая {@link LedgerVersion}, опубликованная через volatile-ссылку.
+ * Изменяющая операция под блокировкой продукта строит следующую версию, делящую с прежней
+ * незатронутые части, и публикует ее одной записью ссылки. Чтения не берут блокировок
+ * и не ждут записи: отчет берет текущую версию и считает по ней, сколько бы он ни длился,
+ * а незаконченная продажа ему не видна. Номера версий выдаются общим счетчиком
+ * и растут с каждой изменяющей операцией.
+ * <p>
+ * Продукт находится по имени в {@link ConcurrentHashMap}, а по идентификатору -
+ * в массиве, который публикуется через volatile-ссылку при каждом создании продукта.
+ * <p>
+ * Общих сумм продаж нет, чтобы продажи разных продуктов не ждали друг друга:
+ * итоги за период складываются из версий каждого продукта, по O(log n) на продукт,
+ * поэтому каждый продукт в них согласован сам с собой, но не с другими продуктами.
+ */
+public final class ConcurrentProductServiceImpl implements ProductService, SnapshotSupport {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final ConcurrentMap<String, VersionedLedger> ledgerMap = new ConcurrentHashMap<>();
+
+    /**
+     * Продукты по идентификатору. Изменяется только под {@link #createLock},
+     * элемент записывается до публикации массива.
+     */
+    private volatile VersionedLedger[] ledgers = new VersionedLedger[DEFAULT_CAPACITY];
+    private int size;
+
+    private final Object createLock = new Object();
+
+    private final AtomicLong versions = new AtomicLong();
+
+    private final int salesHorizonDays;
+
+    public ConcurrentProductServiceImpl() {
+        this(ProductLedger.KEEP_ALL_SALES);
+    }
+
+    /**
+     * @param salesHorizonDays сколько дней до последней продажи продукта хранить его отдельные продажи,
+     *                         более старые остаются только в суммах по дням.
+     *                         {@link ProductLedger#KEEP_ALL_SALES} - хранить все
+     */
+    public ConcurrentProductServiceImpl(int salesHorizonDays) {
+        if (salesHorizonDays < 0 && salesHorizonDays != ProductLedger.KEEP_ALL_SALES)
+            throw new IllegalArgumentException("Sales horizon must not be negative: " + salesHorizonDays);
+
+        this.salesHorizonDays = salesHorizonDays;
+    }
+
+    @Override
+    public int createProduct(String name) throws ProductAlreadyExistsException {
+        final int id = createProduct(name, LedgerVersion.empty());
+        if (id < 0)
+            throw new ProductAlreadyExistsException();
+
+        return id;
+    }
+
+    //region WRITES
+    @Override
+    public OperationStatus tryCreateProduct(String name) {
+        return createProduct(name, LedgerVersion.empty()) < 0 ? OperationStatus.PRODUCT_ALREADY_EXISTS : OperationStatus.OK;
+    }
+
+    @Override
+    public OperationStatus tryPurchaseBatch(String productName, int amount, int price, LocalDate date) {
+        return purchase(ledgerMap.get(productName), amount, price, date);
+    }
+
+    @Override
+    public OperationStatus tryPurchaseBatch(int productId, int amount, int price, LocalDate date) {
+        return purchase(findLedger(productId), amount, price, date);
+    }
+
+    private OperationStatus purchase(VersionedLedger ledger, int amount, int price, LocalDate date) {
+        if (ledger == null)
+            return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+
+        final int epochDay = (int) date.toEpochDay();
+
+        ledger.writeLock.lock();
+        try {
+            ledger.current = ledger.current.purchase(versions.incrementAndGet(), amount, price, epochDay);
+        } finally {
+            ledger.writeLock.unlock();
+        }
+        return OperationStatus.OK;
+    }
+
+    @Override
+    public OperationStatus tryDemandProduct(String productName, int amount, int price, LocalDate date) {
+        return demand(ledgerMap.get(productName), amount, price, date);
+    }
+
+    @Override
+    public OperationStatus tryDemandProduct(int productId, int amount, int price, LocalDate date) {
+        return demand(findLedger(productId), amount, price, date);
+    }
+
+    /**
+     * Остаток проверяется под блокировкой до списания, поэтому отказ не создает исключения
+     */
+    private OperationStatus demand(VersionedLedger ledger, int amount, int price, LocalDate date) {
+        if (ledger == null)
+            return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+
+        final int epochDay = (int) date.toEpochDay();
+
+        ledger.writeLock.lock();
+        try {
+            if (ledger.current.getStockAt(epochDay) < amount)
+                return OperationStatus.NOT_ENOUGH_PRODUCTION;
+
+            ledger.current = ledger.current.demand(versions.incrementAndGet(), amount, price, epochDay)
+                    .archiveSales(salesHorizonDays);
+        } finally {
+            ledger.writeLock.unlock();
+        }
+        return OperationStatus.OK;
+    }
+
+    /**
+     * Блокировки записи затронутых продуктов захватываются в порядке идентификаторов,
+     * поэтому транзакции с пересекающимися продуктами не блокируют друг друга навсегда.
+     * Новые версии продуктов получают один номер и публикуются только после успеха всех операций.
+     */
+    @Override
+    public OperationStatus tryApplyOperations(List<ProductOperation> operations) {
+        final VersionedLedger[] targets = new VersionedLedger[operations.size()];
+        final SortedMap<Integer, VersionedLedger> locked = new TreeMap<>();
+        for (int index = 0; index < targets.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            if (!ProductServiceImpl.isValidOperation(operation))
+                return OperationStatus.INVALID_OPERATION;
+
+            targets[index] = ledgerMap.get(operation.getProductName());
+            if (targets[index] == null)
+                return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+
+            locked.put(targets[index].id, targets[index]);
+        }
+
+        final List<VersionedLedger> acquired = new ArrayList<>(locked.size());
+        try {
+            for (VersionedLedger ledger : locked.values()) {
+                ledger.writeLock.lock();
+                acquired.add(ledger);
+            }
+
+            final long version = versions.incrementAndGet();
+            final Map<VersionedLedger, LedgerVersion> next = new IdentityHashMap<>();
+            for (int index = 0; index < targets.length; index++) {
+                final ProductOperation operation = operations.get(index);
+                final LedgerVersion current = next.getOrDefault(targets[index], targets[index].current);
+                final int epochDay = (int) operation.getDate().toEpochDay();
+
+                switch (operation.getType()) {
+                    case PURCHASE:
+                        next.put(targets[index], current.purchase(version, operation.getAmount(), operation.getPrice(), epochDay));
+                        break;
+                    case DEMAND:
+                        if (current.getStockAt(epochDay) < operation.getAmount())
+                            return OperationStatus.NOT_ENOUGH_PRODUCTION;
+
+                        next.put(targets[index], current.demand(version, operation.getAmount(), operation.getPrice(), epochDay));
+                        break;
+                }
+            }
+
+            next.forEach((ledger, ledgerVersion) -> ledger.current = ledgerVersion.archiveSales(salesHorizonDays));
+            return OperationStatus.OK;
+        } finally {
+            for (VersionedLedger ledger : acquired) {
+                ledger.writeLock.unlock();
+            }
+        }
+    }
+    //endregion
+
+    //region READS
+    /**
+     * @return текущую версию продукта, которую можно читать из любого потока
+     */
+    public LedgerVersion getLedgerVersion(String productName) throws ProductDoesNotExistsException {
+        return getLedger(productName).current;
+    }
+
+    @Override
+    public int getProfitFor(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        final VersionedLedger ledger = ledgerMap.get(productName);
+        if (ledger == null)
+            throw new SalesDoesNotFoundException();
+
+        return getProfit(ledger.current, date);
+    }
+
+    @Override
+    public int getProfitFor(int productId, LocalDate date) throws ProductDoesNotExistsException {
+        return getProfit(getLedger(productId).current, date);
+    }
+
+    private static int getProfit(LedgerVersion ledger, LocalDate date) {
+        if (!ledger.hasSales())
+            throw new SalesDoesNotFoundException();
+
+        return (int) ledger.getProfitUpTo(date.toEpochDay());
+    }
+
+    /**
+     * @return партии текущей версии продукта
+     */
+    @Override
+    public List<Batch> getBatches(String productName) throws ProductDoesNotExistsException {
+        return getLedger(productName).current.getBatches();
+    }
+
+    /**
+     * @return продажи текущей версии продукта
+     */
+    @Override
+    public List<Sale> getSales(String productName) throws ProductDoesNotExistsException {
+        return getLedger(productName).current.getSales();
+    }
+
+    @Override
+    public int getProductId(String productName) throws ProductDoesNotExistsException {
+        return getLedger(productName).id;
+    }
+
+    @Override
+    public String getProductName(int productId) throws ProductDoesNotExistsException {
+        return getLedger(productId).name;
+    }
+
+    @Override
+    public long getProfitBetween(String productName, LocalDate from, LocalDate to)
+            throws ProductDoesNotExistsException {
+        return getLedger(productName).current.getProfitBetween(from.toEpochDay(), to.toEpochDay());
+    }
+
+    @Override
+    public SalesSummary getSalesSummary(LocalDate from, LocalDate to) {
+        final VersionedLedger[] ledgers = this.ledgers;
+
+        long profit = 0;
+        long volume = 0;
+        for (int id = 0; id < ledgers.length && ledgers[id] != null; id++) {
+            final LedgerVersion ledger = ledgers[id].current;
+
+            profit += ledger.getProfitBetween(from.toEpochDay(), to.toEpochDay());
+            volume += ledger.getVolumeBetween(from.toEpochDay(), to.toEpochDay());
+        }
+        return new SalesSummary(profit, volume);
+    }
+
+    @Override
+    public List<ProductSales> getTopProducts(SalesRanking ranking, int limit, LocalDate from, LocalDate to) {
+        final VersionedLedger[] ledgers = this.ledgers;
+
+        final TopProducts topProducts = new TopProducts(ranking, limit);
+        for (int id = 0; id < ledgers.length && ledgers[id] != null; id++) {
+            final LedgerVersion ledger = ledgers[id].current;
+
+            topProducts.offer(new ProductSales(
+                    ledgers[id].name,
+                    ledger.getProfitBetween(from.toEpochDay(), to.toEpochDay()),
+                    ledger.getVolumeBetween(from.toEpochDay(), to.toEpochDay())
+            ));
+        }
+        return topProducts.toList();
+    }
+
+    @Override
+    public Stock getStock(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        final LedgerVersion ledger = getLedger(productName).current;
+        final long epochDay = date.toEpochDay();
+
+        return new Stock(ledger.getStockAt(epochDay), ledger.getStockValueAt(epochDay));
+    }
+    //endregion
+
+    //region SNAPSHOT
+    /**
+     * Запоминает текущие версии продуктов, преобразует их поставщик
+     */
+    @Override
+    public Supplier<Map<String, ProductLedger>> captureLedgers() {
+        final VersionedLedger[] ledgers = this.ledgers;
+
+        int count = 0;
+        while (count < ledgers.length && ledgers[count] != null) {
+            count++;
+        }
+
+        final String[] names = new String[count];
+        final LedgerVersion[] versions = new LedgerVersion[count];
+        for (int id = 0; id < count; id++) {
+            names[id] = ledgers[id].name;
+            versions[id] = ledgers[id].current;
+        }
+
+        return () -> {
+            final Map<String, ProductLedger> copies = new LinkedHashMap<>(names.length * 2);
+            for (int id = 0; id < names.length; id++) {
+                copies.put(names[id], versions[id].toLedger());
+            }
+            return copies;
+        };
+    }
+
+    @Override
+    public void restoreLedgers(Map<String, ProductLedger> ledgers) {
+        if (!ledgerMap.isEmpty())
+            throw new IllegalStateException("Ledgers can be restored only into an empty service");
+
+        ledgers.forEach((name, ledger) -> {
+            if (createProduct(name, LedgerVersion.of(versions.incrementAndGet(), ledger)) < 0)
+                throw new ProductAlreadyExistsException();
+        });
+    }
+    //endregion
+
+    /**
+     * @return идентификатор нового продукта или -1, если продукт уже существует
+     */
+    private int createProduct(String name, LedgerVersion ledgerVersion) {
+        synchronized (createLock) {
+            if (ledgerMap.containsKey(name))
+                return -1;
+
+            final int id = size;
+            final VersionedLedger ledger = new VersionedLedger(id, name, ledgerVersion);
+
+            final VersionedLedger[] grown = id < ledgers.length ? ledgers : Arrays.copyOf(ledgers, id * 2);
+            grown[id] = ledger;
+            ledgers = grown;
+            size++;
+
+            ledgerMap.put(name, ledger);
+            return id;
+        }
+    }
+
+    private VersionedLedger getLedger(String productName) throws ProductDoesNotExistsException {
+        final VersionedLedger ledger = ledgerMap.get(productName);
+        if (ledger == null)
+            throw new ProductDoesNotExistsException();
+
+        return ledger;
+    }
+
+    private VersionedLedger getLedger(int productId) throws ProductDoesNotExistsException {
+        final VersionedLedger ledger = findLedger(productId);
+        if (ledger == null)
+            throw new ProductDoesNotExistsException();
+
+        return ledger;
+    }
+
+    private VersionedLedger findLedger(int productId) {
+        final VersionedLedger[] ledgers = this.ledgers;
+        if (productId < 0 || productId >= ledgers.length)
+            return null;
+
+        return ledgers[productId];
+    }
+
+    /**
+     * Текущая версия продукта и блокировка, упорядочивающая ее замену
+     */
+    private static final class VersionedLedger {
+
+        private final int id;
+        private final String name;
+
+        /**
+         * Заменяется только под {@link #writeLock}, читается без блокировок
+         */
+        private volatile LedgerVersion current;
+
+        private final Lock writeLock = new ReentrantLock();
+
+        private VersionedLedger(int id, String name, LedgerVersion current) {
+            this.id = id;
+            this.name = name;
+            this.current = current;
+        }
+
+    }
+
+}
@@ -0,0 +1,418 @@
+package com.mayakplay.testtask.service.impl;
+
+import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
+import com.mayakplay.testtask.exception.SalesDoesNotFoundException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.storage.MappedLedger;
+import com.mayakplay.testtask.storage.MappedOperationLog;
+import com.mayakplay.testtask.storage.MappedSegmentFile;
+import com.mayakplay.testtask.storage.ProductDictionary;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.ProductOperationType;
+import com.mayakplay.testtask.type.SalesRanking;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Реализация {@link ProductService}, хранящая партии и продажи вне кучи,
+ * в файле сегментов, отображенном в память, см. {@link MappedSegmentFile}.
+ * <p>
+ * У каждого продукта свои цепочки сегментов с записями фиксированной ширины, см. {@link MappedLedger}.
+ * В куче остаются только словарь имен и номера сегментов цепочек, поэтому история
+ * может быть больше кучи, а чтение и запись идут через страничный кеш.
+ * <p>
+ * Имена продуктов дописываются в отдельный файл в порядке создания. При открытии
+ * читаются имена и заголовки сегментов, записи не загружаются. Изменения попадают
+ * в файл через страничный кеш, {@link #close()} сбрасывает их на диск.
+ * Используется одним потоком.
+ * <p>
+ * Последняя закупка или продажа отмечается в заголовке файла, см. {@link MappedOperationLog}.
+ * Если процесс прервался посреди нее, при открытии она завершается, а производные записи
+ * продукта строятся заново. Транзакция выполняется по одной операции, поэтому после сбоя
+ * посреди транзакции остаются выполненными ее операции до прерванной включительно.
+ * Изменения, не сброшенные на диск до сбоя системы, могут быть потеряны.
+ */
+public final class MappedProductServiceImpl implements ProductService, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private static final String SEGMENTS_FILE = "segments.dat";
+    private static final String PRODUCTS_FILE = "products.dat";
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final ProductDictionary dictionary = new ProductDictionary();
+
+    private MappedLedger[] ledgers = new MappedLedger[DEFAULT_CAPACITY];
+
+    @NotNull
+    private final MappedSegmentFile segmentFile;
+
+    @NotNull
+    private final MappedOperationLog operationLog;
+
+    @NotNull
+    private final FileChannel productsChannel;
+
+    private MappedProductServiceImpl(@NotNull MappedSegmentFile segmentFile, @NotNull FileChannel productsChannel) {
+        this.segmentFile = segmentFile;
+        this.operationLog = new MappedOperationLog(segmentFile);
+        this.productsChannel = productsChannel;
+    }
+
+    /**
+     * Открывает или создает хранилище в каталоге с сегментами {@link #DEFAULT_SEGMENT_SIZE}
+     *
+     * @param directory каталог данных
+     */
+    @NotNull
+    public static MappedProductServiceImpl open(@NotNull Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Открывает или создает хранилище в каталоге
+     *
+     * @param directory   каталог данных
+     * @param segmentSize размер сегмента, должен совпадать с размером, с которым хранилище создано
+     * @throws IOException если файлы каталога повреждены
+     */
+    @NotNull
+    public static MappedProductServiceImpl open(@NotNull Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+
+        final MappedSegmentFile segmentFile = MappedSegmentFile.open(directory.resolve(SEGMENTS_FILE), segmentSize);
+        final FileChannel productsChannel;
+        try {
+            productsChannel = FileChannel.open(directory.resolve(PRODUCTS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            segmentFile.close();
+            throw e;
+        }
+
+        final MappedProductServiceImpl productService = new MappedProductServiceImpl(segmentFile, productsChannel);
+        try {
+            productService.readProducts(directory.resolve(PRODUCTS_FILE));
+            productService.restoreSegments();
+            productService.recoverOperation();
+        } catch (IOException | RuntimeException e) {
+            productService.close();
+            throw e;
+        }
+        return productService;
+    }
+
+    //region OUTCOMES
+    @Override
+    public OperationStatus tryCreateProduct(String name) {
+        if (dictionary.idOf(name) >= 0)
+            return OperationStatus.PRODUCT_ALREADY_EXISTS;
+
+        writeProduct(name);
+        register(name);
+        return OperationStatus.OK;
+    }
+
+    @Override
+    public OperationStatus tryPurchaseBatch(String productName, int amount, int price, LocalDate date) {
+        return tryPurchaseBatch(dictionary.idOf(productName), amount, price, date);
+    }
+
+    @Override
+    public OperationStatus tryPurchaseBatch(int productId, int amount, int price, LocalDate date) {
+        if (!dictionary.contains(productId))
+            return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+
+        ledgers[productId].purchase(amount, price, (int) date.toEpochDay());
+        return OperationStatus.OK;
+    }
+
+    @Override
+    public OperationStatus tryDemandProduct(String productName, int amount, int price, LocalDate date) {
+        return tryDemandProduct(dictionary.idOf(productName), amount, price, date);
+    }
+
+    @Override
+    public OperationStatus tryDemandProduct(int productId, int amount, int price, LocalDate date) {
+        if (!dictionary.contains(productId))
+            return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+
+        final int epochDay = (int) date.toEpochDay();
+        final MappedLedger ledger = ledgers[productId];
+        if (ledger.getStockAt(epochDay) < amount)
+            return OperationStatus.NOT_ENOUGH_PRODUCTION;
+
+        ledger.demand(amount, price, epochDay);
+        return OperationStatus.OK;
+    }
+
+    /**
+     * Записи в файле не копируются: перед выполнением остаток для каждой продажи считается
+     * по текущему остатку продукта и предыдущим операциям транзакции над ним
+     * через {@link TransactionStock}, за O(k^2) для k операций, и операции применяются,
+     * только если остатка хватает всем продажам.
+     */
+    @Override
+    public OperationStatus tryApplyOperations(List<ProductOperation> operations) {
+        final int[] ids = new int[operations.size()];
+        for (int index = 0; index < ids.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            if (!ProductServiceImpl.isValidOperation(operation))
+                return OperationStatus.INVALID_OPERATION;
+
+            ids[index] = dictionary.idOf(operation.getProductName());
+            if (ids[index] < 0)
+                return OperationStatus.PRODUCT_DOES_NOT_EXIST;
+        }
+
+        for (int index = 0; index < ids.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            if (operation.getType() == ProductOperationType.DEMAND
+                    && TransactionStock.before(operations, ids, index,
+                    ledgers[ids[index]].getStockAt(operation.getDate().toEpochDay())) < operation.getAmount())
+                return OperationStatus.NOT_ENOUGH_PRODUCTION;
+        }
+
+        for (int index = 0; index < ids.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            final int epochDay = (int) operation.getDate().toEpochDay();
+
+            switch (operation.getType()) {
+                case PURCHASE:
+                    ledgers[ids[index]].purchase(operation.getAmount(), operation.getPrice(), epochDay);
+                    break;
+                case DEMAND:
+                    ledgers[ids[index]].demand(operation.getAmount(), operation.getPrice(), epochDay);
+                    break;
+            }
+        }
+        return OperationStatus.OK;
+    }
+    //endregion
+
+    @Override
+    public int getProfitFor(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        final int id = dictionary.idOf(productName);
+        if (id < 0)
+            throw new SalesDoesNotFoundException();
+
+        return getProfitFor(id, date);
+    }
+
+    @Override
+    public int getProfitFor(int productId, LocalDate date) throws ProductDoesNotExistsException {
+        final MappedLedger ledger = getLedger(productId);
+        if (!ledger.hasSales())
+            throw new SalesDoesNotFoundException();
+
+        return (int) ledger.getProfitUpTo(date.toEpochDay());
+    }
+
+    /**
+     * @return представление непустых и более поздних партий, читающее их из файла
+     */
+    @Override
+    public List<Batch> getBatches(String productName) throws ProductDoesNotExistsException {
+        return getLedger(getProductId(productName)).getBatches();
+    }
+
+    /**
+     * @return представление продаж, читающее их из файла
+     */
+    @Override
+    public List<Sale> getSales(String productName) throws ProductDoesNotExistsException {
+        return getLedger(getProductId(productName)).getSales();
+    }
+
+    @Override
+    public int getProductId(String productName) throws ProductDoesNotExistsException {
+        final int id = dictionary.idOf(productName);
+        if (id < 0)
+            throw new ProductDoesNotExistsException();
+
+        return id;
+    }
+
+    @Override
+    public String getProductName(int productId) throws ProductDoesNotExistsException {
+        if (!dictionary.contains(productId))
+            throw new ProductDoesNotExistsException();
+
+        return dictionary.nameOf(productId);
+    }
+
+    @Override
+    public long getProfitBetween(String productName, LocalDate from, LocalDate to)
+            throws ProductDoesNotExistsException {
+        return getLedger(getProductId(productName)).getProfitBetween(from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Общих сумм нет: итоги складываются из сумм продуктов, по O(log n) на продукт
+     */
+    @Override
+    public SalesSummary getSalesSummary(LocalDate from, LocalDate to) {
+        final long fromEpochDay = from.toEpochDay();
+        final long toEpochDay = to.toEpochDay();
+
+        long profit = 0;
+        long volume = 0;
+        for (int id = 0; id < dictionary.size(); id++) {
+            profit += ledgers[id].getProfitBetween(fromEpochDay, toEpochDay);
+            volume += ledgers[id].getVolumeBetween(fromEpochDay, toEpochDay);
+        }
+        return new SalesSummary(profit, volume);
+    }
+
+    @Override
+    public List<ProductSales> getTopProducts(SalesRanking ranking, int limit, LocalDate from, LocalDate to) {
+        final long fromEpochDay = from.toEpochDay();
+        final long toEpochDay = to.toEpochDay();
+
+        final TopProducts topProducts = new TopProducts(ranking, limit);
+        for (int id = 0; id < dictionary.size(); id++) {
+            topProducts.offer(new ProductSales(
+                    dictionary.nameOf(id),
+                    ledgers[id].getProfitBetween(fromEpochDay, toEpochDay),
+                    ledgers[id].getVolumeBetween(fromEpochDay, toEpochDay)
+            ));
+        }
+        return topProducts.toList();
+    }
+
+    @Override
+    public Stock getStock(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        final MappedLedger ledger = getLedger(getProductId(productName));
+        final long epochDay = date.toEpochDay();
+
+        return new Stock(ledger.getStockAt(epochDay), ledger.getStockValueAt(epochDay));
+    }
+
+    /**
+     * Сбрасывает изменения на диск и закрывает файлы
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            segmentFile.close();
+        } finally {
+            productsChannel.close();
+        }
+    }
+
+    //region FILES
+    /**
+     * Читает имена продуктов. Недописанное последнее имя отбрасывается
+     */
+    private void readProducts(@NotNull Path file) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        int validLength = 0;
+        try {
+            while (validLength < bytes.length) {
+                final String name = input.readUTF();
+                if (register(name) < 0)
+                    throw new IOException("Duplicate product: " + name);
+
+                validLength = bytes.length - input.available();
+            }
+        } catch (EOFException ignored) {
+        }
+
+        productsChannel.truncate(validLength);
+        productsChannel.position(validLength);
+    }
+
+    /**
+     * Подключает сегменты файла к данным продуктов по их заголовкам
+     */
+    private void restoreSegments() throws IOException {
+        final int[] unknownOwner = {-1};
+        segmentFile.forEachSegment((segment, owner, kind, ordinal, count) -> {
+            if (!dictionary.contains(owner)) {
+                unknownOwner[0] = owner;
+                return;
+            }
+            ledgers[owner].restoreSegment(kind, ordinal, segment, count);
+        });
+
+        if (unknownOwner[0] >= 0)
+            throw new IOException("Segment of unknown product " + unknownOwner[0]);
+    }
+
+    /**
+     * Завершает операцию, прерванную сбоем, см. {@link MappedLedger#recover()}
+     */
+    private void recoverOperation() throws IOException {
+        if (!operationLog.isPending())
+            return;
+
+        final int owner = operationLog.getOwner();
+        if (!dictionary.contains(owner))
+            throw new IOException("Pending operation of unknown product " + owner);
+
+        ledgers[owner].recover();
+    }
+
+    private void writeProduct(@NotNull String name) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeUTF(name);
+
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                productsChannel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    //endregion
+
+    /**
+     * @return идентификатор нового продукта или отрицательное число, если продукт уже существует
+     */
+    private int register(@NotNull String name) {
+        final int id = dictionary.register(name);
+        if (id < 0)
+            return id;
+
+        if (id == ledgers.length) {
+            ledgers = Arrays.copyOf(ledgers, id * 2);
+        }
+        ledgers[id] = new MappedLedger(segmentFile, operationLog, id);
+        return id;
+    }
+
+    private MappedLedger getLedger(int productId) throws ProductDoesNotExistsException {
+        if (!dictionary.contains(productId))
+            throw new ProductDoesNotExistsException();
+
+        return ledgers[productId];
+    }
+
+}
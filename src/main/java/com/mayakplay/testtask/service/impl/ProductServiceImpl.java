@@ -1,84 +1,315 @@
 package com.mayakplay.testtask.service.impl;
 
-import com.mayakplay.testtask.exception.NotEnoughProductionException;
 import com.mayakplay.testtask.exception.ProductAlreadyExistsException;
 import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
 import com.mayakplay.testtask.exception.SalesDoesNotFoundException;
 import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
 import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
 import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.service.SnapshotSupport;
+import com.mayakplay.testtask.storage.ProductDictionary;
+import com.mayakplay.testtask.storage.ProductLedger;
+import com.mayakplay.testtask.storage.SalesTotals;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.ProductOperationType;
+import com.mayakplay.testtask.type.SalesRanking;
 
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
-public final class ProductServiceImpl implements ProductService {
+/**
+ * Данные продуктов лежат в массиве по идентификатору из {@link ProductDictionary},
+ * поэтому операция по имени - один поиск в словаре, а по идентификатору - ни одного.
+ * <p>
+ * Каждая продажа дополнительно учитывается в общих суммах по дням,
+ * поэтому итоги по всем продуктам за период не обходят продукты.
+ * <p>
+ * {@link #tryApplyOperations(List)} до первого изменения проверяет остаток для каждой
+ * продажи транзакции, см. {@link TransactionStock}, поэтому применяет операции сразу
+ * к данным продуктов, не копируя их.
+ */
+public final class ProductServiceImpl implements ProductService, SnapshotSupport {
 
-    private final Map<String, List<Batch>> batchMap = new HashMap<>();
-    private final Map<String, List<Sale>> salesMap = new HashMap<>();
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final ProductDictionary dictionary = new ProductDictionary();
+
+    private final int salesHorizonDays;
+
+    private ProductLedger[] ledgers = new ProductLedger[DEFAULT_CAPACITY];
+
+    /**
+     * Суммы продаж всех продуктов по дням
+     */
+    private final SalesTotals totals = new SalesTotals();
+
+    public ProductServiceImpl() {
+        this(ProductLedger.KEEP_ALL_SALES);
+    }
+
+    /**
+     * @param salesHorizonDays сколько дней до последней продажи продукта хранить его отдельные продажи,
+     *                         более старые остаются только в суммах по дням.
+     *                         {@link ProductLedger#KEEP_ALL_SALES} - хранить все
+     */
+    public ProductServiceImpl(int salesHorizonDays) {
+        if (salesHorizonDays < 0 && salesHorizonDays != ProductLedger.KEEP_ALL_SALES)
+            throw new IllegalArgumentException("Sales horizon must not be negative: " + salesHorizonDays);
+
+        this.salesHorizonDays = salesHorizonDays;
+    }
 
     @Override
-    public void createProduct(String name) throws ProductAlreadyExistsException {
-        if (batchMap.containsKey(name))
+    public int createProduct(String name) throws ProductAlreadyExistsException {
+        final int id = register(name);
+        if (id < 0)
             throw new ProductAlreadyExistsException();
 
-        batchMap.put(name, new ArrayList<>());
+        return id;
     }
 
+    //region OUTCOMES
     @Override
-    public void purchaseBatch(String productName, int amount, int price, LocalDate date) {
-        if (!batchMap.containsKey(productName))
-            throw new ProductDoesNotExistsException();
+    public OperationStatus tryCreateProduct(String name) {
+        return register(name) < 0 ? OperationStatus.PRODUCT_ALREADY_EXISTS : OperationStatus.OK;
+    }
 
-        batchMap.get(productName).add(new Batch(amount, price, date));
+    @Override
+    public OperationStatus tryPurchaseBatch(String productName, int amount, int price, LocalDate date) {
+        return tryPurchaseBatch(dictionary.idOf(productName), amount, price, date);
     }
 
     @Override
-    public void demandProduct(String productName, int amount, int price, LocalDate date) {
-        final List<Batch> batchList = batchMap.get(productName);
-        if (batchList == null)
-            throw new ProductDoesNotExistsException();
+    public OperationStatus tryDemandProduct(String productName, int amount, int price, LocalDate date) {
+        return tryDemandProduct(dictionary.idOf(productName), amount, price, date);
+    }
+
+    @Override
+    public OperationStatus tryPurchaseBatch(int productId, int amount, int price, LocalDate date) {
+        if (!dictionary.contains(productId))
+            return OperationStatus.PRODUCT_DOES_NOT_EXIST;
 
-        final List<Batch> collect = batchList.stream()
-                .filter(batch -> batch.getDate().compareTo(date) < 1)
-                .collect(Collectors.toList());
+        ledgers[productId].purchase(amount, price, (int) date.toEpochDay());
+        return OperationStatus.OK;
+    }
 
-        int stockAmount = collect.stream()
-                .mapToInt(Batch::getAmount)
-                .sum();
+    /**
+     * Остаток проверяется до списания, поэтому отказ не создает исключения
+     */
+    @Override
+    public OperationStatus tryDemandProduct(int productId, int amount, int price, LocalDate date) {
+        if (!dictionary.contains(productId))
+            return OperationStatus.PRODUCT_DOES_NOT_EXIST;
 
-        if (amount > stockAmount)
-            throw new NotEnoughProductionException();
+        final int epochDay = (int) date.toEpochDay();
+        final ProductLedger ledger = ledgers[productId];
+        if (ledger.getStockAt(epochDay) < amount)
+            return OperationStatus.NOT_ENOUGH_PRODUCTION;
 
-        int calculatedAmount = amount;
-        int finalPrice = 0;
-        for (final Batch batch : collect) {
-            final int pullAmount = Math.min(calculatedAmount, batch.getAmount());
-            calculatedAmount -= pullAmount;
+        final int profit = ledger.demand(amount, price, epochDay);
 
-            finalPrice += batch.pullProduction(pullAmount);
+        totals.add(epochDay, amount, profit);
+        ledger.archiveSales(salesHorizonDays);
+        return OperationStatus.OK;
+    }
+
+    @Override
+    public OperationStatus tryApplyOperations(List<ProductOperation> operations) {
+        final int[] ids = new int[operations.size()];
+        for (int index = 0; index < ids.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            if (!isValidOperation(operation))
+                return OperationStatus.INVALID_OPERATION;
 
-            if (calculatedAmount == 0)
-                break;
+            ids[index] = dictionary.idOf(operation.getProductName());
+            if (ids[index] < 0)
+                return OperationStatus.PRODUCT_DOES_NOT_EXIST;
         }
 
-        final List<Sale> sales = salesMap.computeIfAbsent(productName, s -> new ArrayList<>());
+        for (int index = 0; index < ids.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            if (operation.getType() == ProductOperationType.DEMAND
+                    && TransactionStock.before(operations, ids, index,
+                    ledgers[ids[index]].getStockAt(operation.getDate().toEpochDay())) < operation.getAmount())
+                return OperationStatus.NOT_ENOUGH_PRODUCTION;
+        }
+
+        for (int index = 0; index < ids.length; index++) {
+            final ProductOperation operation = operations.get(index);
+            final ProductLedger ledger = ledgers[ids[index]];
+            final int epochDay = (int) operation.getDate().toEpochDay();
+
+            switch (operation.getType()) {
+                case PURCHASE:
+                    ledger.purchase(operation.getAmount(), operation.getPrice(), epochDay);
+                    break;
+                case DEMAND:
+                    final int profit = ledger.demand(operation.getAmount(), operation.getPrice(), epochDay);
 
-        final int profit = amount * price - finalPrice;
+                    totals.add(epochDay, operation.getAmount(), profit);
+                    ledger.archiveSales(salesHorizonDays);
+                    break;
+            }
+        }
+        return OperationStatus.OK;
+    }
 
-        sales.add(new Sale(finalPrice, profit, date));
+    /**
+     * @return true, если количество и цена операции положительны
+     */
+    static boolean isValidOperation(ProductOperation operation) {
+        return operation.getAmount() > 0 && operation.getPrice() > 0;
     }
+    //endregion
 
     @Override
     public int getProfitFor(String productName, LocalDate date) throws ProductDoesNotExistsException {
-        final List<Sale> sales = salesMap.get(productName);
-        if (sales == null)
+        final int id = dictionary.idOf(productName);
+        if (id < 0)
             throw new SalesDoesNotFoundException();
 
-        return sales.stream()
-                .filter(sale -> sale.getDate().compareTo(date) < 1)
-                .mapToInt(Sale::getProfit)
-                .sum();
+        return getProfitFor(id, date);
+    }
+
+    @Override
+    public List<Batch> getBatches(String productName) throws ProductDoesNotExistsException {
+        return getLedger(getProductId(productName)).getBatches();
+    }
+
+    @Override
+    public List<Sale> getSales(String productName) throws ProductDoesNotExistsException {
+        return getLedger(getProductId(productName)).getSales();
+    }
+
+    @Override
+    public int getProductId(String productName) throws ProductDoesNotExistsException {
+        final int id = dictionary.idOf(productName);
+        if (id < 0)
+            throw new ProductDoesNotExistsException();
+
+        return id;
+    }
+
+    @Override
+    public String getProductName(int productId) throws ProductDoesNotExistsException {
+        if (!dictionary.contains(productId))
+            throw new ProductDoesNotExistsException();
+
+        return dictionary.nameOf(productId);
+    }
+
+    @Override
+    public int getProfitFor(int productId, LocalDate date) throws ProductDoesNotExistsException {
+        final ProductLedger ledger = getLedger(productId);
+        if (!ledger.hasSales())
+            throw new SalesDoesNotFoundException();
+
+        return (int) ledger.getProfitUpTo(date.toEpochDay());
+    }
+
+    @Override
+    public long getProfitBetween(String productName, LocalDate from, LocalDate to)
+            throws ProductDoesNotExistsException {
+        return getLedger(getProductId(productName)).getSalesTotals()
+                .getProfitBetween(from.toEpochDay(), to.toEpochDay());
+    }
+
+    @Override
+    public SalesSummary getSalesSummary(LocalDate from, LocalDate to) {
+        final long fromEpochDay = from.toEpochDay();
+        final long toEpochDay = to.toEpochDay();
+
+        return new SalesSummary(
+                totals.getProfitBetween(fromEpochDay, toEpochDay),
+                totals.getVolumeBetween(fromEpochDay, toEpochDay)
+        );
+    }
+
+    @Override
+    public List<ProductSales> getTopProducts(SalesRanking ranking, int limit, LocalDate from, LocalDate to) {
+        final long fromEpochDay = from.toEpochDay();
+        final long toEpochDay = to.toEpochDay();
+
+        final TopProducts topProducts = new TopProducts(ranking, limit);
+        for (int id = 0; id < dictionary.size(); id++) {
+            final SalesTotals productTotals = ledgers[id].getSalesTotals();
+
+            topProducts.offer(new ProductSales(
+                    dictionary.nameOf(id),
+                    productTotals.getProfitBetween(fromEpochDay, toEpochDay),
+                    productTotals.getVolumeBetween(fromEpochDay, toEpochDay)
+            ));
+        }
+        return topProducts.toList();
+    }
+
+    @Override
+    public Stock getStock(String productName, LocalDate date) throws ProductDoesNotExistsException {
+        final ProductLedger ledger = getLedger(getProductId(productName));
+        final long epochDay = date.toEpochDay();
+
+        return new Stock(ledger.getStockAt(epochDay), ledger.getStockValueAt(epochDay));
+    }
+
+    /**
+     * Копия данных продукта не копирует партии и продажи поштучно, см. {@link ProductLedger#copy()},
+     * поэтому копии создаются сразу, а собираются по именам в поставщике
+     */
+    @Override
+    public Supplier<Map<String, ProductLedger>> captureLedgers() {
+        final String[] names = new String[dictionary.size()];
+        final ProductLedger[] copies = new ProductLedger[names.length];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = dictionary.nameOf(id);
+            copies[id] = ledgers[id].copy();
+        }
+
+        return () -> {
+            final Map<String, ProductLedger> captured = new LinkedHashMap<>(names.length * 2);
+            for (int id = 0; id < names.length; id++) {
+                captured.put(names[id], copies[id]);
+            }
+            return captured;
+        };
+    }
+
+    @Override
+    public void restoreLedgers(Map<String, ProductLedger> ledgers) {
+        if (dictionary.size() > 0)
+            throw new IllegalStateException("Ledgers can be restored only into an empty service");
+
+        ledgers.forEach((name, ledger) -> {
+            final int id = createProduct(name);
+            this.ledgers[id] = ledger;
+            totals.addAll(ledger.getSalesTotals());
+        });
+    }
+
+    /**
+     * @return идентификатор нового продукта или отрицательное число, если продукт уже существует
+     */
+    private int register(String name) {
+        final int id = dictionary.register(name);
+        if (id < 0)
+            return id;
+
+        if (id == ledgers.length) {
+            ledgers = Arrays.copyOf(ledgers, id * 2);
+        }
+        ledgers[id] = new ProductLedger();
+        return id;
+    }
+
+    private ProductLedger getLedger(int productId) throws ProductDoesNotExistsException {
+        if (!dictionary.contains(productId))
+            throw new ProductDoesNotExistsException();
+
+        return ledgers[productId];
     }
 
-}
\ No newline at end of file
+}
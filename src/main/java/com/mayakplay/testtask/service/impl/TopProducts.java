@@ -0,0 +1,65 @@
+package com.mayakplay.testtask.service.impl;
+
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.type.SalesRanking;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Отбирает лучшие продукты по показателю, храня не больше limit кандидатов.
+ * Продукты с равным показателем упорядочиваются по имени.
+ */
+final class TopProducts {
+
+    private final int limit;
+
+    @NotNull
+    private final Comparator<ProductSales> order;
+
+    /**
+     * Худший из отобранных продуктов в голове очереди
+     */
+    @NotNull
+    private final PriorityQueue<ProductSales> selected;
+
+    TopProducts(@NotNull SalesRanking ranking, int limit) {
+        if (limit < 1)
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+
+        this.limit = limit;
+        this.order = Comparator.comparingLong((ProductSales sales) -> -ranking.valueOf(sales))
+                .thenComparing(ProductSales::getProductName);
+        this.selected = new PriorityQueue<>(Math.min(limit, 1024), order.reversed());
+    }
+
+    /**
+     * Предлагает продукт. Продукты без продаж за период не отбираются.
+     */
+    void offer(@NotNull ProductSales sales) {
+        if (sales.getVolume() == 0)
+            return;
+
+        if (selected.size() < limit) {
+            selected.add(sales);
+        } else if (order.compare(sales, selected.peek()) < 0) {
+            selected.poll();
+            selected.add(sales);
+        }
+    }
+
+    /**
+     * @return отобранные продукты, лучший первым
+     */
+    @NotNull
+    List<ProductSales> toList() {
+        final List<ProductSales> result = new ArrayList<>(selected);
+        Collections.sort(result, order);
+        return result;
+    }
+
+}
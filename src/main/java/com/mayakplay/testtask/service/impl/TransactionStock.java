@@ -0,0 +1,53 @@
+package com.mayakplay.testtask.service.impl;
+
+import com.mayakplay.testtask.model.ProductOperation;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Остатки для продаж транзакции, посчитанные до ее применения.
+ * <p>
+ * Позволяет проверить все продажи транзакции по текущим данным продуктов
+ * и предыдущим операциям транзакции, ничего не копируя и не откатывая.
+ */
+final class TransactionStock {
+
+    private TransactionStock() {
+    }
+
+    /**
+     * Продажа списывает самые старые партии, поэтому из остатка на день, раньше дня продажи,
+     * она забирает не больше этого остатка
+     *
+     * @param operations операции транзакции
+     * @param ids        идентификаторы продуктов операций
+     * @param count      номер операции в транзакции
+     * @param stockAt    остаток продукта операции count на ее день до транзакции
+     * @return остаток продукта операции count на ее день после предыдущих операций транзакции
+     */
+    static long before(@NotNull List<ProductOperation> operations, @NotNull int[] ids, int count, long stockAt) {
+        final int id = ids[count];
+        final long epochDay = operations.get(count).getDate().toEpochDay();
+
+        long stock = stockAt;
+        for (int index = 0; index < count; index++) {
+            if (ids[index] != id)
+                continue;
+
+            final ProductOperation operation = operations.get(index);
+            final boolean notLater = operation.getDate().toEpochDay() <= epochDay;
+            switch (operation.getType()) {
+                case PURCHASE:
+                    if (notLater)
+                        stock += operation.getAmount();
+                    break;
+                case DEMAND:
+                    stock = notLater ? stock - operation.getAmount() : Math.max(0, stock - operation.getAmount());
+                    break;
+            }
+        }
+        return stock;
+    }
+
+}
@@ -0,0 +1,444 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.model.Batch;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Партии одного продукта, упорядоченные по дате закупки.
+ * <p>
+ * Партии с одинаковой датой идут в порядке добавления.
+ * Партии разбиты на блоки не длиннее {@code 2 * BLOCK_SIZE}, каждое поле партии
+ * хранится в отдельном {@link IntColumn} блока, объекты {@link Batch} создаются
+ * только по запросу. Количество партий, остатки и их закупочная стоимость по блокам
+ * хранятся в {@link FenwickTree}, поэтому закупка, в том числе задним числом,
+ * сдвигает не больше одного блока, а остаток и его стоимость на дату
+ * считаются за O(log n + BLOCK_SIZE).
+ * <p>
+ * Копия делит блоки с исходными партиями, а изменение блока сначала копирует его,
+ * поэтому копия партий стоит O(n / BLOCK_SIZE).
+ * <p>
+ * Израсходованные партии удаляются, когда их становится не меньше,
+ * чем остальных: порядок списания от этого не меняется, а удаление
+ * за O(n) выполняется не чаще чем раз в n списанных партий.
+ */
+public final class BatchIndex {
+
+    private static final int MIN_EXHAUSTED_TO_COMPACT = 64;
+
+    /**
+     * Длина половины заполненного блока: блок из {@code 2 * BLOCK_SIZE} партий делится пополам
+     */
+    private static final int BLOCK_SIZE = 256;
+
+    private Block[] blocks;
+    private int blockCount;
+
+    private final FenwickTree counts;
+    private final FenwickTree remaining;
+    private final FenwickTree remainingCost;
+
+    /**
+     * Количество партий, включая израсходованные
+     */
+    private int size;
+
+    /**
+     * Количество израсходованных партий
+     */
+    private int exhausted;
+
+    public BatchIndex() {
+        this(new Block[4], 0, new FenwickTree(), new FenwickTree(), new FenwickTree(), 0, 0);
+    }
+
+    private BatchIndex(
+            Block[] blocks,
+            int blockCount,
+            FenwickTree counts,
+            FenwickTree remaining,
+            FenwickTree remainingCost,
+            int size,
+            int exhausted
+    ) {
+        this.blocks = blocks;
+        this.blockCount = blockCount;
+        this.counts = counts;
+        this.remaining = remaining;
+        this.remainingCost = remainingCost;
+        this.size = size;
+        this.exhausted = exhausted;
+    }
+
+    /**
+     * Добавляет партию на место, соответствующее ее дате
+     *
+     * @param amount   количество продукта
+     * @param price    цена за единицу
+     * @param epochDay день закупки
+     */
+    public void add(int amount, int price, int epochDay) {
+        if (amount == 0)
+            exhausted++;
+
+        if (blockCount == 0) {
+            append(amount, price, epochDay);
+            rebuildSums();
+            return;
+        }
+
+        final int blockIndex = Math.min(findBlock(epochDay), blockCount - 1);
+        final Block block = writableBlock(blockIndex);
+        block.insert(block.days.upperBound(epochDay), amount, price, epochDay);
+        size++;
+
+        counts.add(blockIndex, 1);
+        remaining.add(blockIndex, amount);
+        remainingCost.add(blockIndex, (long) amount * price);
+
+        if (block.size() >= 2 * BLOCK_SIZE) {
+            split(blockIndex);
+        }
+    }
+
+    /**
+     * @param epochDay день
+     * @return количество продукта в партиях, закупленных не позже дня
+     */
+    public long getStockAt(long epochDay) {
+        final int blockIndex = findBlock(epochDay);
+        long stock = remaining.prefixSum(blockIndex);
+
+        if (blockIndex < blockCount) {
+            final Block block = blocks[blockIndex];
+            final int end = block.days.upperBound(epochDay);
+            for (int index = 0; index < end; index++) {
+                stock += block.amounts.get(index);
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * @param epochDay день
+     * @return закупочную стоимость продукта в партиях, закупленных не позже дня
+     */
+    public long getStockValueAt(long epochDay) {
+        final int blockIndex = findBlock(epochDay);
+        long value = remainingCost.prefixSum(blockIndex);
+
+        if (blockIndex < blockCount) {
+            final Block block = blocks[blockIndex];
+            final int end = block.days.upperBound(epochDay);
+            for (int index = 0; index < end; index++) {
+                value += (long) block.amounts.get(index) * block.prices.get(index);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Метод списывает продукт из партий, закупленных не позже дня,
+     * начиная с самых старых
+     *
+     * @param amount   количество продукта
+     * @param epochDay день списания
+     * @return общую закупочную цену списанного продукта
+     *
+     * @throws NotEnoughProductionException если продукции на дату недостаточно
+     */
+    public int pullProduction(int amount, int epochDay) throws NotEnoughProductionException {
+        if (amount > getStockAt(epochDay))
+            throw new NotEnoughProductionException();
+
+        int calculatedAmount = amount;
+        int finalPrice = 0;
+        while (calculatedAmount > 0) {
+            final int blockIndex = remaining.lowerBound(1);
+            final Block block = writableBlock(blockIndex);
+
+            for (int index = 0; calculatedAmount > 0 && index < block.size(); index++) {
+                final int batchAmount = block.amounts.get(index);
+                if (batchAmount == 0)
+                    continue;
+
+                final int pullAmount = Math.min(calculatedAmount, batchAmount);
+                final int price = block.prices.get(index);
+
+                finalPrice += pullAmount * price;
+                block.amounts.set(index, batchAmount - pullAmount);
+                block.remaining -= pullAmount;
+                block.remainingCost -= (long) pullAmount * price;
+                remaining.add(blockIndex, -pullAmount);
+                remainingCost.add(blockIndex, -(long) pullAmount * price);
+                calculatedAmount -= pullAmount;
+
+                if (pullAmount == batchAmount)
+                    exhausted++;
+            }
+        }
+
+        if (exhausted >= MIN_EXHAUSTED_TO_COMPACT && exhausted * 2 >= size) {
+            compact();
+        }
+        return finalPrice;
+    }
+
+    /**
+     * @return количество партий, включая еще не удаленные израсходованные
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return независимую копию партий
+     */
+    @NotNull
+    public BatchIndex copy() {
+        for (int index = 0; index < blockCount; index++) {
+            blocks[index].shared = true;
+        }
+        return new BatchIndex(
+                Arrays.copyOf(blocks, blocks.length),
+                blockCount,
+                counts.copy(),
+                remaining.copy(),
+                remainingCost.copy(),
+                size,
+                exhausted
+        );
+    }
+
+    /**
+     * Записывает остатки, цены и дни партий в формате трех {@link IntColumn}
+     */
+    public void writeTo(@NotNull DataOutput output) throws IOException {
+        output.writeInt(size);
+        for (int index = 0; index < blockCount; index++) {
+            writeValues(output, blocks[index].amounts);
+        }
+        output.writeInt(size);
+        for (int index = 0; index < blockCount; index++) {
+            writeValues(output, blocks[index].prices);
+        }
+        output.writeInt(size);
+        for (int index = 0; index < blockCount; index++) {
+            writeValues(output, blocks[index].days);
+        }
+    }
+
+    /**
+     * Читает партии, записанные {@link #writeTo(DataOutput)}
+     */
+    @NotNull
+    public static BatchIndex readFrom(@NotNull DataInput input) throws IOException {
+        final IntColumn amounts = IntColumn.readFrom(input);
+        final IntColumn prices = IntColumn.readFrom(input);
+        final IntColumn days = IntColumn.readFrom(input);
+        if (prices.size() != amounts.size() || days.size() != amounts.size())
+            throw new IOException("Batch columns have different sizes");
+
+        final BatchIndex batchIndex = new BatchIndex();
+        for (int index = 0; index < amounts.size(); index++) {
+            if (amounts.get(index) == 0)
+                batchIndex.exhausted++;
+
+            batchIndex.append(amounts.get(index), prices.get(index), days.get(index));
+        }
+        batchIndex.rebuildSums();
+        return batchIndex;
+    }
+
+    /**
+     * @param index индекс партии
+     * @return представление партии с текущим остатком
+     */
+    @NotNull
+    public Batch getBatch(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        final int blockIndex = counts.lowerBound(index + 1);
+        final int position = index - (int) counts.prefixSum(blockIndex);
+        final Block block = blocks[blockIndex];
+        return new Batch(
+                block.amounts.get(position),
+                block.prices.get(position),
+                LocalDate.ofEpochDay(block.days.get(position))
+        );
+    }
+
+    /**
+     * @param epochDay день
+     * @return индекс первого блока, последняя партия которого закуплена позже дня,
+     * или количество блоков
+     */
+    private int findBlock(long epochDay) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (blocks[middle].lastDay() <= epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return блок, который можно менять, не затрагивая копии партий
+     */
+    private Block writableBlock(int blockIndex) {
+        if (blocks[blockIndex].shared) {
+            blocks[blockIndex] = blocks[blockIndex].copy();
+        }
+        return blocks[blockIndex];
+    }
+
+    /**
+     * Делит заполненный блок пополам
+     */
+    private void split(int blockIndex) {
+        final Block tail = blocks[blockIndex].cut(BLOCK_SIZE);
+
+        ensureBlockCapacity(blockCount + 1);
+        System.arraycopy(blocks, blockIndex + 1, blocks, blockIndex + 2, blockCount - blockIndex - 1);
+        blocks[blockIndex + 1] = tail;
+        blockCount++;
+        rebuildSums();
+    }
+
+    /**
+     * Добавляет партию в конец, не обновляя суммы по блокам
+     */
+    private void append(int amount, int price, int epochDay) {
+        if (blockCount == 0 || blocks[blockCount - 1].size() >= BLOCK_SIZE) {
+            ensureBlockCapacity(blockCount + 1);
+            blocks[blockCount++] = new Block();
+        }
+
+        final Block block = writableBlock(blockCount - 1);
+        block.insert(block.size(), amount, price, epochDay);
+        size++;
+    }
+
+    /**
+     * Удаляет израсходованные партии
+     */
+    private void compact() {
+        final Block[] previous = blocks;
+        final int previousCount = blockCount;
+
+        blocks = new Block[Math.max(4, previousCount)];
+        blockCount = 0;
+        size = 0;
+        for (int blockIndex = 0; blockIndex < previousCount; blockIndex++) {
+            final Block block = previous[blockIndex];
+            for (int index = 0; index < block.size(); index++) {
+                if (block.amounts.get(index) > 0)
+                    append(block.amounts.get(index), block.prices.get(index), block.days.get(index));
+            }
+        }
+        exhausted = 0;
+        rebuildSums();
+    }
+
+    private void rebuildSums() {
+        counts.rebuild(blockCount, index -> blocks[index].size());
+        remaining.rebuild(blockCount, index -> blocks[index].remaining);
+        remainingCost.rebuild(blockCount, index -> blocks[index].remainingCost);
+    }
+
+    private void ensureBlockCapacity(int capacity) {
+        if (capacity > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(capacity, blocks.length * 2));
+        }
+    }
+
+    /**
+     * Записывает значения столбца без их количества
+     */
+    private static void writeValues(@NotNull DataOutput output, @NotNull IntColumn column) throws IOException {
+        for (int index = 0; index < column.size(); index++) {
+            output.writeInt(column.get(index));
+        }
+    }
+
+    /**
+     * Подряд идущие партии с общим остатком и его стоимостью
+     */
+    private static final class Block {
+
+        private final IntColumn amounts;
+        private final IntColumn prices;
+        private final IntColumn days;
+
+        private long remaining;
+        private long remainingCost;
+
+        /**
+         * Блок доступен копии партий и не должен меняться
+         */
+        private boolean shared;
+
+        private Block() {
+            this(new IntColumn(), new IntColumn(), new IntColumn(), 0, 0);
+        }
+
+        private Block(IntColumn amounts, IntColumn prices, IntColumn days, long remaining, long remainingCost) {
+            this.amounts = amounts;
+            this.prices = prices;
+            this.days = days;
+            this.remaining = remaining;
+            this.remainingCost = remainingCost;
+        }
+
+        private int size() {
+            return days.size();
+        }
+
+        private int lastDay() {
+            return days.get(days.size() - 1);
+        }
+
+        private void insert(int position, int amount, int price, int epochDay) {
+            amounts.insert(position, amount);
+            prices.insert(position, price);
+            days.insert(position, epochDay);
+            remaining += amount;
+            remainingCost += (long) amount * price;
+        }
+
+        /**
+         * Переносит партии, начиная с позиции, в новый блок
+         */
+        private Block cut(int position) {
+            final Block tail = new Block(amounts.cut(position), prices.cut(position), days.cut(position), 0, 0);
+            for (int index = 0; index < tail.size(); index++) {
+                final long cost = (long) tail.amounts.get(index) * tail.prices.get(index);
+
+                tail.remaining += tail.amounts.get(index);
+                tail.remainingCost += cost;
+                remaining -= tail.amounts.get(index);
+                remainingCost -= cost;
+            }
+            return tail;
+        }
+
+        private Block copy() {
+            return new Block(amounts.copy(), prices.copy(), days.copy(), remaining, remainingCost);
+        }
+
+    }
+
+}
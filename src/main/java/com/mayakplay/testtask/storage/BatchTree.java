@@ -0,0 +1,365 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.model.Batch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Неизменяемые партии одного продукта, упорядоченные по дате закупки,
+ * партии с одинаковой датой - в порядке добавления.
+ * <p>
+ * Хранятся в декартовом дереве с суммами остатков и их стоимости в поддеревьях.
+ * Закупка и списание возвращают новый экземпляр, копируя только затронутые пути,
+ * поэтому прежний экземпляр можно читать из любых потоков без блокировок.
+ * Остаток и его стоимость на дату считаются за O(log n), списание k партий - за O(k + log n).
+ * <p>
+ * Израсходованные партии удаляются, когда их становится не меньше,
+ * чем остальных: порядок списания от этого не меняется, а перестройка
+ * за O(n log n) выполняется не чаще чем раз в n списанных партий.
+ */
+public final class BatchTree {
+
+    private static final int MIN_EXHAUSTED_TO_COMPACT = 64;
+
+    private static final BatchTree EMPTY = new BatchTree(null, 0, 0);
+
+    @Nullable
+    private final Node root;
+
+    /**
+     * Порядковый номер следующей партии, упорядочивает партии одного дня
+     */
+    private final long nextSequence;
+
+    /**
+     * Количество израсходованных партий
+     */
+    private final int exhausted;
+
+    private BatchTree(@Nullable Node root, long nextSequence, int exhausted) {
+        this.root = root;
+        this.nextSequence = nextSequence;
+        this.exhausted = exhausted;
+    }
+
+    @NotNull
+    public static BatchTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param amount   количество продукта
+     * @param price    цена за единицу
+     * @param epochDay день закупки
+     * @return партии с добавленной партией
+     */
+    @NotNull
+    public BatchTree add(int amount, int price, int epochDay) {
+        final Node node = new Node(epochDay, nextSequence, amount, price, TreapPriority.of(nextSequence), null, null);
+        return new BatchTree(insert(root, node), nextSequence + 1, amount == 0 ? exhausted + 1 : exhausted);
+    }
+
+    /**
+     * @param epochDay день
+     * @return количество продукта в партиях, закупленных не позже дня
+     */
+    public long getStockAt(long epochDay) {
+        long sum = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.day <= epochDay) {
+                sum += amountOf(node.left) + node.amount;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param epochDay день
+     * @return закупочную стоимость продукта в партиях, закупленных не позже дня
+     */
+    public long getStockValueAt(long epochDay) {
+        long sum = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.day <= epochDay) {
+                sum += costOf(node.left) + (long) node.amount * node.price;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Списывает продукт из партий, закупленных не позже дня, начиная с самых старых
+     *
+     * @param amount   количество продукта
+     * @param epochDay день списания
+     * @return партии после списания и закупочную цену списанного
+     *
+     * @throws NotEnoughProductionException если продукции на дату недостаточно
+     */
+    @NotNull
+    public Pull pullProduction(int amount, int epochDay) throws NotEnoughProductionException {
+        if (amount > getStockAt(epochDay))
+            throw new NotEnoughProductionException();
+
+        final PullState state = new PullState(amount);
+        final BatchTree pulled = new BatchTree(pull(root, state), nextSequence, exhausted + state.exhausted);
+
+        return new Pull(pulled.compactIfNeeded(), state.price);
+    }
+
+    /**
+     * @return количество партий, включая еще не удаленные израсходованные
+     */
+    public int size() {
+        return root == null ? 0 : root.count;
+    }
+
+    /**
+     * @param index индекс партии в порядке списания, включая израсходованные
+     * @return партию с текущим остатком
+     */
+    @NotNull
+    public Batch get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        Node node = root;
+        int position = index;
+        while (true) {
+            final int leftCount = countOf(node.left);
+
+            if (position < leftCount) {
+                node = node.left;
+            } else if (position == leftCount) {
+                return new Batch(node.amount, node.price, LocalDate.ofEpochDay(node.day));
+            } else {
+                position -= leftCount + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return партии в порядке списания
+     */
+    @NotNull
+    public List<Batch> toList() {
+        final List<Batch> batches = new ArrayList<>(size());
+        forEachNode(node -> batches.add(new Batch(node.amount, node.price, LocalDate.ofEpochDay(node.day))));
+        return batches;
+    }
+
+    /**
+     * Передает партии в порядке списания, не создавая {@link Batch}
+     */
+    public void forEach(@NotNull BatchConsumer consumer) {
+        forEachNode(node -> consumer.accept(node.amount, node.price, node.day));
+    }
+
+    @NotNull
+    private BatchTree compactIfNeeded() {
+        if (exhausted < MIN_EXHAUSTED_TO_COMPACT || exhausted * 2 < size())
+            return this;
+
+        final Node[] compacted = {null};
+        forEachNode(node -> {
+            if (node.amount > 0) {
+                compacted[0] = insert(compacted[0], node.with(node.amount, null, null));
+            }
+        });
+        return new BatchTree(compacted[0], nextSequence, 0);
+    }
+
+    private void forEachNode(@NotNull Consumer<Node> consumer) {
+        final ArrayDeque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !path.isEmpty()) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+
+            node = path.pop();
+            consumer.accept(node);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Вставляет узел, ключ которого (день, порядковый номер) отличается от ключей дерева
+     */
+    @NotNull
+    private static Node insert(@Nullable Node node, @NotNull Node inserted) {
+        if (node == null)
+            return inserted;
+
+        if (inserted.isBefore(node)) {
+            final Node left = insert(node.left, inserted);
+            if (left.priority > node.priority)
+                return left.with(left.amount, left.left, node.with(node.amount, left.right, node.right));
+
+            return node.with(node.amount, left, node.right);
+        }
+
+        final Node right = insert(node.right, inserted);
+        if (right.priority > node.priority)
+            return right.with(right.amount, node.with(node.amount, node.left, right.left), right.right);
+
+        return node.with(node.amount, node.left, right);
+    }
+
+    /**
+     * Списывает state.remaining из самых левых непустых партий, не заходя в пустые поддеревья
+     */
+    @Nullable
+    private static Node pull(@Nullable Node node, @NotNull PullState state) {
+        if (node == null || state.remaining == 0 || node.amountSum == 0)
+            return node;
+
+        final Node left = pull(node.left, state);
+
+        int amount = node.amount;
+        if (state.remaining > 0 && amount > 0) {
+            final int pullAmount = Math.min(state.remaining, amount);
+
+            amount -= pullAmount;
+            state.remaining -= pullAmount;
+            state.price += pullAmount * node.price;
+            if (amount == 0)
+                state.exhausted++;
+        }
+
+        final Node right = pull(node.right, state);
+        if (left == node.left && right == node.right && amount == node.amount)
+            return node;
+
+        return node.with(amount, left, right);
+    }
+
+    private static long amountOf(@Nullable Node node) {
+        return node == null ? 0 : node.amountSum;
+    }
+
+    private static long costOf(@Nullable Node node) {
+        return node == null ? 0 : node.costSum;
+    }
+
+    private static int countOf(@Nullable Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    @FunctionalInterface
+    public interface BatchConsumer {
+
+        void accept(int amount, int price, int epochDay);
+
+    }
+
+    /**
+     * Результат списания
+     */
+    public static final class Pull {
+
+        @NotNull
+        private final BatchTree batches;
+        private final int price;
+
+        private Pull(@NotNull BatchTree batches, int price) {
+            this.batches = batches;
+            this.price = price;
+        }
+
+        /**
+         * @return партии после списания
+         */
+        @NotNull
+        public BatchTree getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return общую закупочную цену списанного продукта
+         */
+        public int getPrice() {
+            return price;
+        }
+
+    }
+
+    private static final class PullState {
+
+        private int remaining;
+        private int price;
+        private int exhausted;
+
+        private PullState(int remaining) {
+            this.remaining = remaining;
+        }
+
+    }
+
+    private static final class Node {
+
+        private final int day;
+        private final long sequence;
+        private final int amount;
+        private final int price;
+        private final int priority;
+
+        @Nullable
+        private final Node left;
+        @Nullable
+        private final Node right;
+
+        private final long amountSum;
+        private final long costSum;
+        private final int count;
+
+        private Node(
+                int day,
+                long sequence,
+                int amount,
+                int price,
+                int priority,
+                @Nullable Node left,
+                @Nullable Node right
+        ) {
+            this.day = day;
+            this.sequence = sequence;
+            this.amount = amount;
+            this.price = price;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.amountSum = amount + amountOf(left) + amountOf(right);
+            this.costSum = (long) amount * price + costOf(left) + costOf(right);
+            this.count = 1 + countOf(left) + countOf(right);
+        }
+
+        @NotNull
+        private Node with(int amount, @Nullable Node left, @Nullable Node right) {
+            return new Node(day, sequence, amount, price, priority, left, right);
+        }
+
+        private boolean isBefore(@NotNull Node other) {
+            return day < other.day || day == other.day && sequence < other.sequence;
+        }
+
+    }
+
+}
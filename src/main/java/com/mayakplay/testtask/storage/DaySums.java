@@ -0,0 +1,167 @@
+package com.mayakplay.testtask.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Неизменяемые суммы значений по дням.
+ * <p>
+ * Хранятся в декартовом дереве с суммами поддеревьев. Добавление возвращает
+ * новый экземпляр, копируя только путь от корня до дня, за O(log n),
+ * поэтому прежний экземпляр остается целым и его можно читать из любых потоков.
+ */
+public final class DaySums {
+
+    private static final DaySums EMPTY = new DaySums(null);
+
+    @Nullable
+    private final Node root;
+
+    private DaySums(@Nullable Node root) {
+        this.root = root;
+    }
+
+    @NotNull
+    public static DaySums empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param epochDay день
+     * @param value    значение
+     * @return суммы, в которых к сумме за день добавлено значение
+     */
+    @NotNull
+    public DaySums add(int epochDay, long value) {
+        return new DaySums(add(root, epochDay, value));
+    }
+
+    /**
+     * @param epochDay день
+     * @return сумму значений по день включительно
+     */
+    public long sumUpTo(long epochDay) {
+        long sum = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.day <= epochDay) {
+                sum += sumOf(node.left) + node.value;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return сумму значений за дни между включительно, 0 если первый день позже последнего
+     */
+    public long sumBetween(long fromEpochDay, long toEpochDay) {
+        if (fromEpochDay > toEpochDay)
+            return 0;
+
+        return sumUpTo(toEpochDay) - sumUpTo(fromEpochDay - 1);
+    }
+
+    /**
+     * @return количество различных дней
+     */
+    public int size() {
+        return root == null ? 0 : root.count;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Передает суммы за каждый день по возрастанию дней
+     */
+    public void forEach(@NotNull DayValueConsumer consumer) {
+        final ArrayDeque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !path.isEmpty()) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+
+            node = path.pop();
+            consumer.accept(node.day, node.value);
+            node = node.right;
+        }
+    }
+
+    @NotNull
+    private static Node add(@Nullable Node node, int day, long value) {
+        if (node == null)
+            return new Node(day, value, TreapPriority.of(day), null, null);
+
+        if (day == node.day)
+            return node.with(node.value + value, node.left, node.right);
+
+        if (day < node.day) {
+            final Node left = add(node.left, day, value);
+            if (left.priority > node.priority)
+                return left.with(left.value, left.left, node.with(node.value, left.right, node.right));
+
+            return node.with(node.value, left, node.right);
+        }
+
+        final Node right = add(node.right, day, value);
+        if (right.priority > node.priority)
+            return right.with(right.value, node.with(node.value, node.left, right.left), right.right);
+
+        return node.with(node.value, node.left, right);
+    }
+
+    private static long sumOf(@Nullable Node node) {
+        return node == null ? 0 : node.sum;
+    }
+
+    private static int countOf(@Nullable Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    @FunctionalInterface
+    public interface DayValueConsumer {
+
+        void accept(int epochDay, long value);
+
+    }
+
+    private static final class Node {
+
+        private final int day;
+        private final long value;
+        private final int priority;
+
+        @Nullable
+        private final Node left;
+        @Nullable
+        private final Node right;
+
+        private final long sum;
+        private final int count;
+
+        private Node(int day, long value, int priority, @Nullable Node left, @Nullable Node right) {
+            this.day = day;
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.sum = value + sumOf(left) + sumOf(right);
+            this.count = 1 + countOf(left) + countOf(right);
+        }
+
+        @NotNull
+        private Node with(long value, @Nullable Node left, @Nullable Node right) {
+            return new Node(day, value, priority, left, right);
+        }
+
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.mayakplay.testtask.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Накопительные суммы значений по дням.
+ * <p>
+ * Дни (epoch day) и суммы за каждый день хранятся в {@link IntColumn} и {@link LongColumn},
+ * разбитых на блоки не длиннее {@code 2 * BLOCK_SIZE} дней, а суммы блоков -
+ * в {@link FenwickTree}. Поэтому сумма по дату включительно считается
+ * за O(log n + BLOCK_SIZE) без обхода отдельных записей, а новый день,
+ * в том числе раньше уже учтенных, сдвигает не больше одного блока.
+ * <p>
+ * Копия делит блоки с исходным индексом, а изменение блока сначала копирует его,
+ * поэтому копия стоит O(n / BLOCK_SIZE).
+ */
+public final class DayTotalsIndex {
+
+    /**
+     * Длина половины заполненного блока: блок из {@code 2 * BLOCK_SIZE} дней делится пополам
+     */
+    private static final int BLOCK_SIZE = 256;
+
+    private Block[] blocks;
+    private int blockCount;
+
+    private final FenwickTree totals;
+
+    /**
+     * Количество различных дней
+     */
+    private int size;
+
+    public DayTotalsIndex() {
+        this(new Block[4], 0, new FenwickTree(), 0);
+    }
+
+    private DayTotalsIndex(Block[] blocks, int blockCount, FenwickTree totals, int size) {
+        this.blocks = blocks;
+        this.blockCount = blockCount;
+        this.totals = totals;
+        this.size = size;
+    }
+
+    /**
+     * Добавляет значение к сумме за день
+     *
+     * @param epochDay день
+     * @param value    значение
+     */
+    public void add(int epochDay, long value) {
+        if (blockCount == 0) {
+            append(epochDay, value);
+            rebuildSums();
+            return;
+        }
+
+        final int blockIndex = Math.min(findBlock(epochDay), blockCount - 1);
+        final Block block = writableBlock(blockIndex);
+        final int position = block.days.upperBound(epochDay);
+
+        totals.add(blockIndex, value);
+        if (position > 0 && block.days.get(position - 1) == epochDay) {
+            block.values.set(position - 1, block.values.get(position - 1) + value);
+            block.total += value;
+            return;
+        }
+
+        block.insert(position, epochDay, value);
+        size++;
+        if (block.size() >= 2 * BLOCK_SIZE) {
+            split(blockIndex);
+        }
+    }
+
+    /**
+     * @param epochDay день
+     * @return сумму значений по день включительно
+     */
+    public long sumUpTo(long epochDay) {
+        final int blockIndex = findBlock(epochDay + 1);
+        long sum = totals.prefixSum(blockIndex);
+
+        if (blockIndex < blockCount) {
+            final Block block = blocks[blockIndex];
+            final int end = block.days.upperBound(epochDay);
+            for (int index = 0; index < end; index++) {
+                sum += block.values.get(index);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param fromEpochDay первый день
+     * @param toEpochDay   последний день
+     * @return сумму значений за дни между включительно, 0 если первый день позже последнего
+     */
+    public long sumBetween(long fromEpochDay, long toEpochDay) {
+        if (fromEpochDay > toEpochDay)
+            return 0;
+
+        return sumUpTo(toEpochDay) - sumUpTo(fromEpochDay - 1);
+    }
+
+    /**
+     * Добавляет суммы другого индекса по дням
+     *
+     * @param other добавляемый индекс
+     */
+    public void addAll(DayTotalsIndex other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Передает суммы за каждый день по возрастанию дней
+     */
+    public void forEach(DaySums.DayValueConsumer consumer) {
+        for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+            final Block block = blocks[blockIndex];
+            for (int index = 0; index < block.size(); index++) {
+                consumer.accept(block.days.get(index), block.values.get(index));
+            }
+        }
+    }
+
+    /**
+     * @return количество различных дней
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return независимую копию индекса
+     */
+    public DayTotalsIndex copy() {
+        for (int index = 0; index < blockCount; index++) {
+            blocks[index].shared = true;
+        }
+        return new DayTotalsIndex(Arrays.copyOf(blocks, blocks.length), blockCount, totals.copy(), size);
+    }
+
+    /**
+     * Записывает дни и суммы за каждый день
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(size);
+        for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+            final IntColumn days = blocks[blockIndex].days;
+            for (int index = 0; index < days.size(); index++) {
+                output.writeInt(days.get(index));
+            }
+        }
+        for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+            final LongColumn values = blocks[blockIndex].values;
+            for (int index = 0; index < values.size(); index++) {
+                output.writeLong(values.get(index));
+            }
+        }
+    }
+
+    /**
+     * Читает индекс, записанный {@link #writeTo(DataOutput)}
+     */
+    public static DayTotalsIndex readFrom(DataInput input) throws IOException {
+        final IntColumn days = IntColumn.readFrom(input);
+
+        final DayTotalsIndex index = new DayTotalsIndex();
+        for (int position = 0; position < days.size(); position++) {
+            index.append(days.get(position), input.readLong());
+        }
+        index.rebuildSums();
+        return index;
+    }
+
+    /**
+     * @param epochDay день
+     * @return индекс первого блока, последний день которого не раньше указанного,
+     * или количество блоков
+     */
+    private int findBlock(long epochDay) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (blocks[middle].lastDay() < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return блок, который можно менять, не затрагивая копии индекса
+     */
+    private Block writableBlock(int blockIndex) {
+        if (blocks[blockIndex].shared) {
+            blocks[blockIndex] = blocks[blockIndex].copy();
+        }
+        return blocks[blockIndex];
+    }
+
+    /**
+     * Делит заполненный блок пополам
+     */
+    private void split(int blockIndex) {
+        final Block tail = blocks[blockIndex].cut(BLOCK_SIZE);
+
+        ensureBlockCapacity(blockCount + 1);
+        System.arraycopy(blocks, blockIndex + 1, blocks, blockIndex + 2, blockCount - blockIndex - 1);
+        blocks[blockIndex + 1] = tail;
+        blockCount++;
+        rebuildSums();
+    }
+
+    /**
+     * Добавляет день в конец, не обновляя суммы по блокам
+     */
+    private void append(int epochDay, long value) {
+        if (blockCount == 0 || blocks[blockCount - 1].size() >= BLOCK_SIZE) {
+            ensureBlockCapacity(blockCount + 1);
+            blocks[blockCount++] = new Block();
+        }
+
+        final Block block = writableBlock(blockCount - 1);
+        block.insert(block.size(), epochDay, value);
+        size++;
+    }
+
+    private void rebuildSums() {
+        totals.rebuild(blockCount, index -> blocks[index].total);
+    }
+
+    private void ensureBlockCapacity(int capacity) {
+        if (capacity > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(capacity, blocks.length * 2));
+        }
+    }
+
+    /**
+     * Подряд идущие дни с общей суммой
+     */
+    private static final class Block {
+
+        private final IntColumn days;
+        private final LongColumn values;
+
+        private long total;
+
+        /**
+         * Блок доступен копии индекса и не должен меняться
+         */
+        private boolean shared;
+
+        private Block() {
+            this(new IntColumn(), new LongColumn(), 0);
+        }
+
+        private Block(IntColumn days, LongColumn values, long total) {
+            this.days = days;
+            this.values = values;
+            this.total = total;
+        }
+
+        private int size() {
+            return days.size();
+        }
+
+        private int lastDay() {
+            return days.get(days.size() - 1);
+        }
+
+        private void insert(int position, int epochDay, long value) {
+            days.insert(position, epochDay);
+            values.insert(position, value);
+            total += value;
+        }
+
+        /**
+         * Переносит дни, начиная с позиции, в новый блок
+         */
+        private Block cut(int position) {
+            final Block tail = new Block(days.cut(position), values.cut(position), 0);
+            for (int index = 0; index < tail.size(); index++) {
+                tail.total += tail.values.get(index);
+            }
+            total -= tail.total;
+            return tail;
+        }
+
+        private Block copy() {
+            return new Block(days.copy(), values.copy(), total);
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.mayakplay.testtask.storage;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Дерево Фенвика над растущим массивом неотрицательных значений.
+ * <p>
+ * Добавление в конец, изменение элемента и префиксная сумма - за O(log n),
+ * вставка в середину требует полной перестройки за O(n).
+ */
+public final class FenwickTree {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Дерево хранится с 1-й позиции, нулевой элемент не используется
+     */
+    private long[] tree;
+    private int size;
+
+    public FenwickTree() {
+        this.tree = new long[DEFAULT_CAPACITY + 1];
+    }
+
+    private FenwickTree(long[] tree, int size) {
+        this.tree = tree;
+        this.size = size;
+    }
+
+    /**
+     * @return количество элементов
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет элемент в конец
+     *
+     * @param value значение элемента
+     */
+    public void append(long value) {
+        ensureCapacity(size + 1);
+        final int position = ++size;
+
+        tree[position] = value + prefixSum(position - 1) - prefixSum(position - (position & -position));
+    }
+
+    /**
+     * Изменяет элемент на величину
+     *
+     * @param index индекс элемента, начиная с 0
+     * @param delta величина изменения
+     */
+    public void add(int index, long delta) {
+        for (int position = index + 1; position <= size; position += position & -position) {
+            tree[position] += delta;
+        }
+    }
+
+    /**
+     * @param count количество первых элементов
+     * @return сумму первых count элементов
+     */
+    public long prefixSum(int count) {
+        long sum = 0;
+        for (int position = count; position > 0; position -= position & -position) {
+            sum += tree[position];
+        }
+        return sum;
+    }
+
+    /**
+     * @param index индекс элемента, начиная с 0
+     * @return значение элемента
+     */
+    public long get(int index) {
+        return prefixSum(index + 1) - prefixSum(index);
+    }
+
+    /**
+     * Ищет первый элемент, на котором префиксная сумма достигает значения
+     *
+     * @param target искомая префиксная сумма, больше 0
+     * @return индекс элемента, начиная с 0, или {@link #size()}, если общая сумма меньше target
+     */
+    public int lowerBound(long target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(Math.max(size, 1)); step > 0; step >>= 1) {
+            final int next = position + step;
+
+            if (next <= size && tree[next] < target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Перестраивает дерево заново за O(n)
+     *
+     * @param size   новое количество элементов
+     * @param values функция, возвращающая значение элемента по индексу
+     */
+    public void rebuild(int size, IntToLongFunction values) {
+        ensureCapacity(size);
+        Arrays.fill(tree, 0);
+        this.size = size;
+
+        for (int position = 1; position <= size; position++) {
+            tree[position] += values.applyAsLong(position - 1);
+
+            final int parent = position + (position & -position);
+            if (parent <= size) {
+                tree[parent] += tree[position];
+            }
+        }
+    }
+
+    /**
+     * @return независимую копию дерева
+     */
+    public FenwickTree copy() {
+        return new FenwickTree(Arrays.copyOf(tree, Math.max(size, DEFAULT_CAPACITY) + 1), size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity + 1 > tree.length) {
+            tree = Arrays.copyOf(tree, Math.max(capacity + 1, tree.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.mayakplay.testtask.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Растущий столбец примитивных int значений
+ */
+public final class IntColumn {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] values;
+    private int size;
+
+    public IntColumn() {
+        this.values = new int[DEFAULT_CAPACITY];
+    }
+
+    private IntColumn(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * @return количество значений
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index индекс значения
+     * @return значение
+     */
+    public int get(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Заменяет значение
+     *
+     * @param index индекс значения
+     * @param value новое значение
+     */
+    public void set(int index, int value) {
+        checkIndex(index);
+        values[index] = value;
+    }
+
+    /**
+     * Добавляет значение в конец
+     *
+     * @param value значение
+     */
+    public void add(int value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    /**
+     * Вставляет значение, сдвигая последующие
+     *
+     * @param index индекс вставки, от 0 до {@link #size()}
+     * @param value значение
+     */
+    public void insert(int index, int value) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        ensureCapacity(size + 1);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Ищет первое значение, большее указанного.
+     * Столбец должен быть отсортирован по возрастанию.
+     *
+     * @param value значение
+     * @return индекс первого большего значения или {@link #size()}
+     */
+    public int upperBound(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (values[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Оставляет только значения с указанными индексами, сохраняя их порядок
+     *
+     * @param indices возрастающие индексы оставляемых значений
+     * @param count   количество индексов
+     */
+    public void retain(int[] indices, int count) {
+        for (int index = 0; index < count; index++) {
+            values[index] = values[indices[index]];
+        }
+        size = count;
+    }
+
+    /**
+     * Переносит значения, начиная с индекса, в новый столбец
+     *
+     * @param index индекс первого переносимого значения, от 0 до {@link #size()}
+     * @return столбец с перенесенными значениями
+     */
+    public IntColumn cut(int index) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        final int count = size - index;
+        final int[] tail = new int[Math.max(count, DEFAULT_CAPACITY)];
+        System.arraycopy(values, index, tail, 0, count);
+        size = index;
+        return new IntColumn(tail, count);
+    }
+
+    /**
+     * @return независимую копию столбца
+     */
+    public IntColumn copy() {
+        return new IntColumn(Arrays.copyOf(values, Math.max(size, DEFAULT_CAPACITY)), size);
+    }
+
+    /**
+     * Записывает количество значений и сами значения
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(size);
+        for (int index = 0; index < size; index++) {
+            output.writeInt(values[index]);
+        }
+    }
+
+    /**
+     * Читает столбец, записанный {@link #writeTo(DataOutput)}
+     */
+    public static IntColumn readFrom(DataInput input) throws IOException {
+        final int size = input.readInt();
+        final int[] values = new int[Math.max(size, DEFAULT_CAPACITY)];
+        for (int index = 0; index < size; index++) {
+            values[index] = input.readInt();
+        }
+        return new IntColumn(values, size);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.Sale;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Неизменяемое состояние одного продукта на номер версии.
+ * <p>
+ * Закупка и продажа не меняют экземпляр, а возвращают следующую версию,
+ * которая делит с прежней все незатронутые части {@link BatchTree}, {@link SalesSeries}
+ * и {@link DaySums}. Поэтому версию можно публиковать через volatile-ссылку
+ * и читать из любого количества потоков без блокировок: читатель всегда видит
+ * либо состояние до операции, либо после нее целиком.
+ */
+public final class LedgerVersion {
+
+    private static final LedgerVersion EMPTY = new LedgerVersion(
+            0, BatchTree.empty(), SalesSeries.empty(), DaySums.empty(), DaySums.empty());
+
+    private final long version;
+
+    @NotNull
+    private final BatchTree batches;
+
+    @NotNull
+    private final SalesSeries sales;
+
+    @NotNull
+    private final DaySums profits;
+
+    @NotNull
+    private final DaySums volumes;
+
+    private LedgerVersion(
+            long version,
+            @NotNull BatchTree batches,
+            @NotNull SalesSeries sales,
+            @NotNull DaySums profits,
+            @NotNull DaySums volumes
+    ) {
+        this.version = version;
+        this.batches = batches;
+        this.sales = sales;
+        this.profits = profits;
+        this.volumes = volumes;
+    }
+
+    /**
+     * @return состояние продукта без партий и продаж с версией 0
+     */
+    @NotNull
+    public static LedgerVersion empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param version  номер новой версии
+     * @param amount   количество продукта
+     * @param price    цена за единицу
+     * @param epochDay день закупки
+     * @return версию с закупленной партией
+     */
+    @NotNull
+    public LedgerVersion purchase(long version, int amount, int price, int epochDay) {
+        return new LedgerVersion(version, batches.add(amount, price, epochDay), sales, profits, volumes);
+    }
+
+    /**
+     * @param version  номер новой версии
+     * @param amount   количество продукта
+     * @param price    цена продажи за единицу
+     * @param epochDay день продажи
+     * @return версию со списанным продуктом и продажей
+     *
+     * @throws NotEnoughProductionException если продукции на дату недостаточно
+     */
+    @NotNull
+    public LedgerVersion demand(long version, int amount, int price, int epochDay) throws NotEnoughProductionException {
+        final BatchTree.Pull pull = batches.pullProduction(amount, epochDay);
+        final int profit = amount * price - pull.getPrice();
+
+        return new LedgerVersion(
+                version,
+                pull.getBatches(),
+                sales.add(pull.getPrice(), profit, epochDay),
+                profits.add(epochDay, profit),
+                volumes.add(epochDay, amount)
+        );
+    }
+
+    /**
+     * @param horizonDays горизонт в днях от последней продажи или {@link ProductLedger#KEEP_ALL_SALES}
+     * @return ту же версию без продаж старше горизонта, см. {@link SalesSeries#archive(int)}
+     */
+    @NotNull
+    public LedgerVersion archiveSales(int horizonDays) {
+        if (horizonDays == ProductLedger.KEEP_ALL_SALES)
+            return this;
+
+        final SalesSeries archived = sales.archive(horizonDays);
+        return archived == sales ? this : new LedgerVersion(version, batches, archived, profits, volumes);
+    }
+
+    /**
+     * @return номер версии
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true, если у продукта есть продажи, в том числе убранные в архив
+     */
+    public boolean hasSales() {
+        return !profits.isEmpty();
+    }
+
+    /**
+     * @return прибыль по день включительно
+     */
+    public long getProfitUpTo(long epochDay) {
+        return profits.sumUpTo(epochDay);
+    }
+
+    /**
+     * @return прибыль за период включительно
+     */
+    public long getProfitBetween(long fromEpochDay, long toEpochDay) {
+        return profits.sumBetween(fromEpochDay, toEpochDay);
+    }
+
+    /**
+     * @return количество проданного продукта за период включительно
+     */
+    public long getVolumeBetween(long fromEpochDay, long toEpochDay) {
+        return volumes.sumBetween(fromEpochDay, toEpochDay);
+    }
+
+    /**
+     * @return количество продукта, доступного для продажи в день
+     */
+    public long getStockAt(long epochDay) {
+        return batches.getStockAt(epochDay);
+    }
+
+    /**
+     * @return закупочную стоимость продукта, доступного для продажи в день
+     */
+    public long getStockValueAt(long epochDay) {
+        return batches.getStockValueAt(epochDay);
+    }
+
+    /**
+     * @return партии в порядке списания
+     */
+    @NotNull
+    public List<Batch> getBatches() {
+        return batches.toList();
+    }
+
+    /**
+     * @return не убранные в архив продажи в порядке регистрации
+     */
+    @NotNull
+    public List<Sale> getSales() {
+        return sales.toList();
+    }
+
+    /**
+     * @return изменяемую копию состояния для снимка
+     */
+    @NotNull
+    public ProductLedger toLedger() {
+        final long[] dayProfits = new long[profits.size()];
+        final int[] index = {0};
+        profits.forEach((epochDay, profit) -> dayProfits[index[0]++] = profit);
+
+        final SalesTotals totals = new SalesTotals();
+        index[0] = 0;
+        volumes.forEach((epochDay, volume) -> totals.add(epochDay, volume, dayProfits[index[0]++]));
+
+        return ProductLedger.of(getBatches(), getSales(), totals);
+    }
+
+    /**
+     * @param version номер версии
+     * @param ledger  данные продукта
+     * @return версию с теми же партиями, продажами и суммами по дням
+     */
+    @NotNull
+    public static LedgerVersion of(long version, @NotNull ProductLedger ledger) {
+        BatchTree batches = BatchTree.empty();
+        for (Batch batch : ledger.getBatches()) {
+            batches = batches.add(batch.getAmount(), batch.getPrice(), (int) batch.getDate().toEpochDay());
+        }
+
+        SalesSeries sales = SalesSeries.empty();
+        for (Sale sale : ledger.getSales()) {
+            sales = sales.add(sale.getPrice(), sale.getProfit(), (int) sale.getDate().toEpochDay());
+        }
+
+        final DaySums[] sums = {DaySums.empty(), DaySums.empty()};
+        ledger.getSalesTotals().forEachDay((epochDay, volume, profit) -> {
+            sums[0] = sums[0].add(epochDay, profit);
+            sums[1] = sums[1].add(epochDay, volume);
+        });
+
+        return new LedgerVersion(version, batches, sales, sums[0], sums[1]);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.mayakplay.testtask.storage;
+
+import java.util.Arrays;
+
+/**
+ * Растущий столбец примитивных long значений
+ */
+public final class LongColumn {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] values;
+    private int size;
+
+    public LongColumn() {
+        this.values = new long[DEFAULT_CAPACITY];
+    }
+
+    private LongColumn(long[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * @return количество значений
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index индекс значения
+     * @return значение
+     */
+    public long get(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Заменяет значение
+     *
+     * @param index индекс значения
+     * @param value новое значение
+     */
+    public void set(int index, long value) {
+        checkIndex(index);
+        values[index] = value;
+    }
+
+    /**
+     * Вставляет значение, сдвигая последующие
+     *
+     * @param index индекс вставки, от 0 до {@link #size()}
+     * @param value значение
+     */
+    public void insert(int index, long value) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        ensureCapacity(size + 1);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Переносит значения, начиная с индекса, в новый столбец
+     *
+     * @param index индекс первого переносимого значения, от 0 до {@link #size()}
+     * @return столбец с перенесенными значениями
+     */
+    public LongColumn cut(int index) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        final int count = size - index;
+        final long[] tail = new long[Math.max(count, DEFAULT_CAPACITY)];
+        System.arraycopy(values, index, tail, 0, count);
+        size = index;
+        return new LongColumn(tail, count);
+    }
+
+    /**
+     * @return независимую копию столбца
+     */
+    public LongColumn copy() {
+        return new LongColumn(Arrays.copyOf(values, Math.max(size, DEFAULT_CAPACITY)), size);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+
+}
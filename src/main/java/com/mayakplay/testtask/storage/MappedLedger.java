@@ -0,0 +1,563 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.Sale;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Партии и продажи одного продукта в записях фиксированной ширины {@link MappedRecords}.
+ * <p>
+ * Партии и продажи только дописываются в порядке регистрации, поэтому операция задним числом
+ * не сдвигает более поздних записей. Порядок по датам дают записи дней: по записи на каждый день
+ * с партиями или продажами, связанные в декартово дерево по дню. Узел хранит суммы остатков,
+ * их закупочной стоимости, количества проданного и прибыли в своем поддереве, поэтому закупка
+ * и продажа в любой день меняют O(log n) записей дней, а суммы по дату считаются за O(log n).
+ * <p>
+ * Партии одного дня связаны в список в порядке регистрации. Списание идет с первого дня
+ * с остатком, внутри дня - с партии, на которой остановилось прошлое списание.
+ * <p>
+ * Записи меняются на месте. Закупка и продажа отмечаются в {@link MappedOperationLog}
+ * до первого изменения и после последнего, поэтому операцию, прерванную сбоем процесса,
+ * {@link #recover()} завершает по сохраненным параметрам, а записи дней, производные
+ * от партий и продаж, строит заново.
+ */
+public final class MappedLedger {
+
+    public static final int BATCH_KIND = 1;
+    public static final int SALE_KIND = 2;
+    public static final int DAY_KIND = 3;
+
+    /**
+     * Отсутствующая запись: пустое поддерево, конец списка партий
+     */
+    private static final int NONE = -1;
+
+    //region RECORDS
+    private static final int BATCH_AMOUNT = 0;
+    private static final int BATCH_PRICE = 4;
+    private static final int BATCH_DAY = 8;
+    private static final int BATCH_NEXT = 12;
+    private static final int BATCH_SIZE = 16;
+
+    private static final int SALE_PRICE = 0;
+    private static final int SALE_PROFIT = 4;
+    private static final int SALE_DAY = 8;
+    private static final int SALE_AMOUNT = 12;
+    private static final int SALE_SIZE = 16;
+
+    private static final int DAY_DAY = 0;
+    private static final int DAY_LEFT = 4;
+    private static final int DAY_RIGHT = 8;
+    private static final int DAY_FIRST_BATCH = 12;
+    private static final int DAY_LAST_BATCH = 16;
+    private static final int DAY_NEXT_BATCH = 20;
+    private static final int DAY_STOCK = 24;
+    private static final int DAY_STOCK_VALUE = 32;
+    private static final int DAY_VOLUME = 40;
+    private static final int DAY_PROFIT = 48;
+    private static final int DAY_SIZE = 56;
+
+    private static final int[] DAY_SUMS = {DAY_STOCK, DAY_STOCK_VALUE, DAY_VOLUME, DAY_PROFIT};
+    //endregion
+
+    @NotNull
+    private final MappedOperationLog log;
+
+    private final int owner;
+
+    private final MappedRecords batches;
+    private final MappedRecords sales;
+
+    /**
+     * Узлы дерева дней, корень хранится в заголовке первого сегмента
+     */
+    private final MappedRecords days;
+
+    private int root = NONE;
+
+    /**
+     * @param file  файл сегментов
+     * @param log   последняя операция файла
+     * @param owner идентификатор продукта
+     */
+    public MappedLedger(@NotNull MappedSegmentFile file, @NotNull MappedOperationLog log, int owner) {
+        this.log = log;
+        this.owner = owner;
+        this.batches = new MappedRecords(file, owner, BATCH_KIND, BATCH_SIZE);
+        this.sales = new MappedRecords(file, owner, SALE_KIND, SALE_SIZE);
+        this.days = new MappedRecords(file, owner, DAY_KIND, DAY_SIZE);
+    }
+
+    /**
+     * Подключает существующий сегмент продукта при открытии файла,
+     * см. {@link MappedRecords#restoreSegment(int, int, int)}
+     */
+    public void restoreSegment(int kind, int ordinal, int segment, int count) {
+        records(kind).restoreSegment(ordinal, segment, count);
+
+        if (kind == DAY_KIND && ordinal == 0)
+            root = days.getMark();
+    }
+
+    /**
+     * Регистрирует закупку партии за O(log n) в любой день
+     *
+     * @param amount   количество продукта
+     * @param price    цена за единицу
+     * @param epochDay день закупки
+     */
+    public void purchase(int amount, int price, int epochDay) {
+        log.begin(owner, MappedOperationLog.PURCHASE, amount, price, epochDay, batches.size(), 0, 0);
+
+        final int batch = batches.append();
+        writeBatch(batch, amount, price, epochDay);
+        linkBatch(batch);
+        log.commit();
+    }
+
+    /**
+     * Добавляет партию в конец списка партий ее дня и ее остаток к суммам
+     */
+    private void linkBatch(int batch) {
+        final int amount = batches.getInt(batch, BATCH_AMOUNT);
+        final int price = batches.getInt(batch, BATCH_PRICE);
+        final int epochDay = batches.getInt(batch, BATCH_DAY);
+
+        batches.putInt(batch, BATCH_NEXT, NONE);
+        final int day = findOrInsertDay(epochDay);
+        final int last = days.getInt(day, DAY_LAST_BATCH);
+        if (last == NONE) {
+            days.putInt(day, DAY_FIRST_BATCH, batch);
+        } else {
+            batches.putInt(last, BATCH_NEXT, batch);
+        }
+        days.putInt(day, DAY_LAST_BATCH, batch);
+
+        if (amount > 0 && days.getInt(day, DAY_NEXT_BATCH) == NONE)
+            days.putInt(day, DAY_NEXT_BATCH, batch);
+
+        addDayTotals(epochDay, amount, (long) amount * price, 0, 0);
+    }
+
+    /**
+     * Списывает продукт из партий, начиная с первой непустой, и регистрирует продажу.
+     * Вызывающий проверяет остаток через {@link #getStockAt(long)}.
+     * Списание k партий из d дней стоит O(k + d log n)
+     *
+     * @param amount   количество продукта, не больше остатка на дату
+     * @param price    цена продажи за единицу
+     * @param epochDay день продажи
+     * @return прибыль от продажи
+     */
+    public int demand(int amount, int price, int epochDay) {
+        final int finalPrice = getPullPrice(amount);
+        final int profit = amount * price - finalPrice;
+        log.begin(owner, MappedOperationLog.DEMAND, amount, price, epochDay, sales.size(), finalPrice,
+                sum(root, DAY_STOCK));
+
+        writeSale(sales.append(), amount, finalPrice, profit, epochDay);
+        pullProduction(amount);
+        findOrInsertDay(epochDay);
+        addDayTotals(epochDay, 0, 0, amount, profit);
+        log.commit();
+        return profit;
+    }
+
+    /**
+     * Считает закупочную цену списания, не меняя партий
+     *
+     * @param amount количество продукта, не больше общего остатка
+     * @return общую закупочную цену продукта, который спишет {@link #pullProduction(int)}
+     */
+    private int getPullPrice(int amount) {
+        int calculatedAmount = amount;
+        int finalPrice = 0;
+        for (int day = findStockDay(root, Long.MIN_VALUE); calculatedAmount > 0;
+             day = findStockDay(root, days.getInt(day, DAY_DAY))) {
+            for (int batch = days.getInt(day, DAY_NEXT_BATCH); calculatedAmount > 0 && batch != NONE;
+                 batch = batches.getInt(batch, BATCH_NEXT)) {
+                final int pullAmount = Math.min(calculatedAmount, batches.getInt(batch, BATCH_AMOUNT));
+
+                finalPrice += pullAmount * batches.getInt(batch, BATCH_PRICE);
+                calculatedAmount -= pullAmount;
+            }
+        }
+        return finalPrice;
+    }
+
+    /**
+     * Списывает продукт из партий, начиная с первой непустой
+     *
+     * @param amount количество продукта, не больше общего остатка
+     */
+    private void pullProduction(int amount) {
+        int calculatedAmount = amount;
+        while (calculatedAmount > 0) {
+            final int day = findStockDay(root, Long.MIN_VALUE);
+
+            long pulledAmount = 0;
+            long pulledValue = 0;
+            int batch = days.getInt(day, DAY_NEXT_BATCH);
+            while (calculatedAmount > 0 && batch != NONE) {
+                final int batchAmount = batches.getInt(batch, BATCH_AMOUNT);
+                final int batchPrice = batches.getInt(batch, BATCH_PRICE);
+                final int pullAmount = Math.min(calculatedAmount, batchAmount);
+
+                batches.putInt(batch, BATCH_AMOUNT, batchAmount - pullAmount);
+                pulledAmount += pullAmount;
+                pulledValue += (long) pullAmount * batchPrice;
+                calculatedAmount -= pullAmount;
+
+                if (pullAmount == batchAmount)
+                    batch = batches.getInt(batch, BATCH_NEXT);
+            }
+
+            while (batch != NONE && batches.getInt(batch, BATCH_AMOUNT) == 0) {
+                batch = batches.getInt(batch, BATCH_NEXT);
+            }
+            days.putInt(day, DAY_NEXT_BATCH, batch);
+            addDayTotals(days.getInt(day, DAY_DAY), -pulledAmount, -pulledValue, 0, 0);
+        }
+    }
+
+    /**
+     * Завершает операцию, прерванную сбоем, и строит записи дней заново по партиям и продажам.
+     * Закупка дописывает партию, если та не дописана. Продажа дописывает продажу и списывает
+     * остаток, который не успела списать: он равен количеству продажи за вычетом разницы
+     * между общим остатком до операции и суммой остатков партий
+     */
+    public void recover() {
+        final int record = log.getRecords();
+        if (log.getType() == MappedOperationLog.PURCHASE) {
+            if (batches.size() == record)
+                batches.append();
+
+            writeBatch(record, log.getAmount(), log.getPrice(), log.getEpochDay());
+            rebuildDays();
+        } else {
+            if (sales.size() == record)
+                sales.append();
+
+            writeSale(record, log.getAmount(), log.getCost(),
+                    log.getAmount() * log.getPrice() - log.getCost(), log.getEpochDay());
+
+            long stock = 0;
+            for (int batch = 0; batch < batches.size(); batch++) {
+                stock += batches.getInt(batch, BATCH_AMOUNT);
+            }
+            rebuildDays();
+            pullProduction((int) (log.getAmount() - (log.getStock() - stock)));
+        }
+        log.commit();
+    }
+
+    /**
+     * Строит дерево дней заново: списки партий по дням, суммы остатков и итоги продаж
+     */
+    private void rebuildDays() {
+        days.clear();
+        root = NONE;
+
+        for (int batch = 0; batch < batches.size(); batch++) {
+            linkBatch(batch);
+        }
+        for (int sale = 0; sale < sales.size(); sale++) {
+            final int epochDay = sales.getInt(sale, SALE_DAY);
+
+            findOrInsertDay(epochDay);
+            addDayTotals(epochDay, 0, 0, sales.getInt(sale, SALE_AMOUNT), sales.getInt(sale, SALE_PROFIT));
+        }
+    }
+
+    private void writeBatch(int batch, int amount, int price, int epochDay) {
+        batches.putInt(batch, BATCH_AMOUNT, amount);
+        batches.putInt(batch, BATCH_PRICE, price);
+        batches.putInt(batch, BATCH_DAY, epochDay);
+    }
+
+    private void writeSale(int sale, int amount, int finalPrice, int profit, int epochDay) {
+        sales.putInt(sale, SALE_PRICE, finalPrice);
+        sales.putInt(sale, SALE_PROFIT, profit);
+        sales.putInt(sale, SALE_DAY, epochDay);
+        sales.putInt(sale, SALE_AMOUNT, amount);
+    }
+
+    /**
+     * @param epochDay день
+     * @return количество продукта, доступного для продажи в день
+     */
+    public long getStockAt(long epochDay) {
+        return sumUpTo(DAY_STOCK, epochDay);
+    }
+
+    /**
+     * @param epochDay день
+     * @return закупочную стоимость продукта, доступного для продажи в день
+     */
+    public long getStockValueAt(long epochDay) {
+        return sumUpTo(DAY_STOCK_VALUE, epochDay);
+    }
+
+    //region TOTALS
+    /**
+     * @return true, если у продукта есть продажи
+     */
+    public boolean hasSales() {
+        return sales.size() > 0;
+    }
+
+    /**
+     * @param epochDay день
+     * @return прибыль по день включительно
+     */
+    public long getProfitUpTo(long epochDay) {
+        return sumUpTo(DAY_PROFIT, epochDay);
+    }
+
+    /**
+     * @return прибыль за период включительно, 0 если период пуст
+     */
+    public long getProfitBetween(long fromEpochDay, long toEpochDay) {
+        return sumBetween(DAY_PROFIT, fromEpochDay, toEpochDay);
+    }
+
+    /**
+     * @return количество проданного за период включительно, 0 если период пуст
+     */
+    public long getVolumeBetween(long fromEpochDay, long toEpochDay) {
+        return sumBetween(DAY_VOLUME, fromEpochDay, toEpochDay);
+    }
+
+    private long sumBetween(int field, long fromEpochDay, long toEpochDay) {
+        if (fromEpochDay > toEpochDay)
+            return 0;
+
+        return sumUpTo(field, toEpochDay) - sumUpTo(field, fromEpochDay - 1);
+    }
+
+    /**
+     * @return сумму поля по дням до указанного включительно
+     */
+    private long sumUpTo(int field, long epochDay) {
+        long sum = 0;
+        int node = root;
+        while (node != NONE) {
+            final int right = days.getInt(node, DAY_RIGHT);
+
+            if (days.getInt(node, DAY_DAY) <= epochDay) {
+                sum += days.getLong(node, field) - sum(right, field);
+                node = right;
+            } else {
+                node = days.getInt(node, DAY_LEFT);
+            }
+        }
+        return sum;
+    }
+    //endregion
+
+    //region DAYS
+    /**
+     * @return запись дня, добавленную при необходимости в дерево с нулевыми суммами
+     */
+    private int findOrInsertDay(int epochDay) {
+        int node = root;
+        while (node != NONE) {
+            final int day = days.getInt(node, DAY_DAY);
+            if (day == epochDay)
+                return node;
+
+            node = days.getInt(node, epochDay < day ? DAY_LEFT : DAY_RIGHT);
+        }
+
+        final int created = days.append();
+        days.putInt(created, DAY_DAY, epochDay);
+        days.putInt(created, DAY_LEFT, NONE);
+        days.putInt(created, DAY_RIGHT, NONE);
+        days.putInt(created, DAY_FIRST_BATCH, NONE);
+        days.putInt(created, DAY_LAST_BATCH, NONE);
+        days.putInt(created, DAY_NEXT_BATCH, NONE);
+        for (int field : DAY_SUMS) {
+            days.putLong(created, field, 0);
+        }
+
+        root = insertDay(root, created, epochDay);
+        days.setMark(root);
+        return created;
+    }
+
+    /**
+     * Вставляет пустой узел в поддерево, поворотами поднимая его по приоритету
+     *
+     * @return новый корень поддерева
+     */
+    private int insertDay(int node, int created, int epochDay) {
+        if (node == NONE)
+            return created;
+
+        if (epochDay < days.getInt(node, DAY_DAY)) {
+            final int left = insertDay(days.getInt(node, DAY_LEFT), created, epochDay);
+            days.putInt(node, DAY_LEFT, left);
+            return priority(left) > priority(node) ? rotateRight(node) : node;
+        }
+
+        final int right = insertDay(days.getInt(node, DAY_RIGHT), created, epochDay);
+        days.putInt(node, DAY_RIGHT, right);
+        return priority(right) > priority(node) ? rotateLeft(node) : node;
+    }
+
+    private int rotateRight(int node) {
+        final int left = days.getInt(node, DAY_LEFT);
+        final int middle = days.getInt(left, DAY_RIGHT);
+
+        for (int field : DAY_SUMS) {
+            final long total = days.getLong(node, field);
+            days.putLong(node, field, total - days.getLong(left, field) + sum(middle, field));
+            days.putLong(left, field, total);
+        }
+        days.putInt(node, DAY_LEFT, middle);
+        days.putInt(left, DAY_RIGHT, node);
+        return left;
+    }
+
+    private int rotateLeft(int node) {
+        final int right = days.getInt(node, DAY_RIGHT);
+        final int middle = days.getInt(right, DAY_LEFT);
+
+        for (int field : DAY_SUMS) {
+            final long total = days.getLong(node, field);
+            days.putLong(node, field, total - days.getLong(right, field) + sum(middle, field));
+            days.putLong(right, field, total);
+        }
+        days.putInt(node, DAY_RIGHT, middle);
+        days.putInt(right, DAY_LEFT, node);
+        return right;
+    }
+
+    /**
+     * Добавляет значения к суммам узлов на пути от корня до дня, день должен быть в дереве
+     */
+    private void addDayTotals(int epochDay, long stock, long stockValue, long volume, long profit) {
+        int node = root;
+        while (true) {
+            days.putLong(node, DAY_STOCK, days.getLong(node, DAY_STOCK) + stock);
+            days.putLong(node, DAY_STOCK_VALUE, days.getLong(node, DAY_STOCK_VALUE) + stockValue);
+            days.putLong(node, DAY_VOLUME, days.getLong(node, DAY_VOLUME) + volume);
+            days.putLong(node, DAY_PROFIT, days.getLong(node, DAY_PROFIT) + profit);
+
+            final int day = days.getInt(node, DAY_DAY);
+            if (day == epochDay)
+                return;
+
+            node = days.getInt(node, epochDay < day ? DAY_LEFT : DAY_RIGHT);
+        }
+    }
+
+    /**
+     * @param node          корень поддерева
+     * @param afterEpochDay день, после которого ищется остаток
+     * @return первый после указанного день поддерева с остатком или {@link #NONE}
+     */
+    private int findStockDay(int node, long afterEpochDay) {
+        if (node == NONE || days.getLong(node, DAY_STOCK) == 0)
+            return NONE;
+
+        final int left = days.getInt(node, DAY_LEFT);
+        final int right = days.getInt(node, DAY_RIGHT);
+        if (days.getInt(node, DAY_DAY) > afterEpochDay) {
+            final int found = findStockDay(left, afterEpochDay);
+            if (found != NONE)
+                return found;
+
+            if (days.getLong(node, DAY_STOCK) - sum(left, DAY_STOCK) - sum(right, DAY_STOCK) > 0)
+                return node;
+        }
+        return findStockDay(right, afterEpochDay);
+    }
+
+    private long sum(int node, int field) {
+        return node == NONE ? 0 : days.getLong(node, field);
+    }
+
+    private int priority(int node) {
+        return TreapPriority.of(days.getInt(node, DAY_DAY));
+    }
+    //endregion
+
+    /**
+     * Читает партии из файла в список, поэтому стоит O(n) памяти кучи
+     *
+     * @return партии в порядке списания, начиная с первой непустой
+     */
+    @NotNull
+    public List<Batch> getBatches() {
+        final List<Batch> result = new ArrayList<>();
+        final int first = findStockDay(root, Long.MIN_VALUE);
+        if (first != NONE) {
+            collectBatches(root, days.getInt(first, DAY_DAY), result);
+        }
+        return result;
+    }
+
+    /**
+     * Добавляет партии дней поддерева по возрастанию дней: в первом дне - начиная
+     * с партии, на которой остановилось списание, в следующих - все
+     */
+    private void collectBatches(int node, int fromEpochDay, @NotNull List<Batch> result) {
+        if (node == NONE)
+            return;
+
+        final int epochDay = days.getInt(node, DAY_DAY);
+        if (epochDay > fromEpochDay)
+            collectBatches(days.getInt(node, DAY_LEFT), fromEpochDay, result);
+
+        if (epochDay >= fromEpochDay) {
+            int batch = days.getInt(node, epochDay == fromEpochDay ? DAY_NEXT_BATCH : DAY_FIRST_BATCH);
+            while (batch != NONE) {
+                result.add(new Batch(batches.getInt(batch, BATCH_AMOUNT), batches.getInt(batch, BATCH_PRICE),
+                        LocalDate.ofEpochDay(epochDay)));
+                batch = batches.getInt(batch, BATCH_NEXT);
+            }
+        }
+
+        collectBatches(days.getInt(node, DAY_RIGHT), fromEpochDay, result);
+    }
+
+    /**
+     * @return представление продаж в порядке регистрации
+     */
+    @NotNull
+    public List<Sale> getSales() {
+        return new AbstractList<Sale>() {
+            @Override
+            public Sale get(int index) {
+                return new Sale(sales.getInt(index, SALE_PRICE), sales.getInt(index, SALE_PROFIT),
+                        LocalDate.ofEpochDay(sales.getInt(index, SALE_DAY)));
+            }
+
+            @Override
+            public int size() {
+                return sales.size();
+            }
+        };
+    }
+
+    @NotNull
+    private MappedRecords records(int kind) {
+        switch (kind) {
+            case BATCH_KIND:
+                return batches;
+            case SALE_KIND:
+                return sales;
+            case DAY_KIND:
+                return days;
+            default:
+                throw new IllegalArgumentException("Unknown record kind: " + kind);
+        }
+    }
+
+}
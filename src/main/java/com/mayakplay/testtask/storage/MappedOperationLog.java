@@ -0,0 +1,116 @@
+package com.mayakplay.testtask.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Последняя изменяющая операция над записями {@link MappedLedger}, хранимая в заголовке файла сегментов.
+ * <p>
+ * Перед изменением записей операция записывает свои параметры и номер, следующий за номером
+ * последней завершенной, а после всех изменений - свой номер как завершенный. Номера пишутся
+ * последними, поэтому при открытии файла несовпадение номеров означает, что процесс прервался
+ * посреди записанной операции, и ее можно завершить по сохраненным параметрам,
+ * см. {@link MappedLedger#recover()}.
+ */
+public final class MappedOperationLog {
+
+    public static final int PURCHASE = 1;
+    public static final int DEMAND = 2;
+
+    //region HEADER
+    private static final int COMMITTED = MappedSegmentFile.FILE_HEADER_SIZE;
+    private static final int PENDING = COMMITTED + 4;
+    private static final int OWNER = PENDING + 4;
+    private static final int TYPE = OWNER + 4;
+    private static final int AMOUNT = TYPE + 4;
+    private static final int PRICE = AMOUNT + 4;
+    private static final int DAY = PRICE + 4;
+    private static final int RECORDS = DAY + 4;
+    private static final int COST = RECORDS + 4;
+    private static final int STOCK = COST + 8;
+    //endregion
+
+    /**
+     * Сегмент заголовка файла
+     */
+    private static final int SEGMENT = 0;
+
+    @NotNull
+    private final MappedSegmentFile file;
+
+    public MappedOperationLog(@NotNull MappedSegmentFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Записывает параметры операции и отмечает ее начатой
+     *
+     * @param owner    продукт
+     * @param type     {@link #PURCHASE} или {@link #DEMAND}
+     * @param amount   количество продукта
+     * @param price    цена за единицу
+     * @param epochDay день операции
+     * @param records  количество партий для закупки или продаж для продажи до операции
+     * @param cost     закупочная цена списываемого продукта, 0 для закупки
+     * @param stock    общий остаток продукта до операции
+     */
+    public void begin(int owner, int type, int amount, int price, int epochDay, int records, int cost, long stock) {
+        file.putInt(SEGMENT, OWNER, owner);
+        file.putInt(SEGMENT, TYPE, type);
+        file.putInt(SEGMENT, AMOUNT, amount);
+        file.putInt(SEGMENT, PRICE, price);
+        file.putInt(SEGMENT, DAY, epochDay);
+        file.putInt(SEGMENT, RECORDS, records);
+        file.putInt(SEGMENT, COST, cost);
+        file.putLong(SEGMENT, STOCK, stock);
+        file.putInt(SEGMENT, PENDING, file.getInt(SEGMENT, COMMITTED) + 1);
+    }
+
+    /**
+     * Отмечает начатую операцию завершенной
+     */
+    public void commit() {
+        file.putInt(SEGMENT, COMMITTED, file.getInt(SEGMENT, PENDING));
+    }
+
+    /**
+     * @return true, если последняя начатая операция не завершена
+     */
+    public boolean isPending() {
+        return file.getInt(SEGMENT, PENDING) != file.getInt(SEGMENT, COMMITTED);
+    }
+
+    //region OPERATION
+    public int getOwner() {
+        return file.getInt(SEGMENT, OWNER);
+    }
+
+    public int getType() {
+        return file.getInt(SEGMENT, TYPE);
+    }
+
+    public int getAmount() {
+        return file.getInt(SEGMENT, AMOUNT);
+    }
+
+    public int getPrice() {
+        return file.getInt(SEGMENT, PRICE);
+    }
+
+    public int getEpochDay() {
+        return file.getInt(SEGMENT, DAY);
+    }
+
+    public int getRecords() {
+        return file.getInt(SEGMENT, RECORDS);
+    }
+
+    public int getCost() {
+        return file.getInt(SEGMENT, COST);
+    }
+
+    public long getStock() {
+        return file.getLong(SEGMENT, STOCK);
+    }
+    //endregion
+
+}
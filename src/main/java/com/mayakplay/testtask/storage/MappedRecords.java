@@ -0,0 +1,144 @@
+package com.mayakplay.testtask.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Записи одинаковой ширины одного владельца в цепочке сегментов {@link MappedSegmentFile}.
+ * <p>
+ * Все сегменты цепочки, кроме последнего, заполнены, поэтому запись находится
+ * по индексу за O(1): номер сегмента берется из массива цепочки, смещение - из индекса.
+ * В куче лежит только этот массив, сами записи остаются в отображенном файле.
+ */
+public final class MappedRecords {
+
+    @NotNull
+    private final MappedSegmentFile file;
+
+    private final int owner;
+    private final int kind;
+    private final int recordSize;
+
+    /**
+     * Записей в одном сегменте
+     */
+    private final int capacity;
+
+    private int[] segments = new int[1];
+    private int segmentCount;
+    private int size;
+
+    /**
+     * @param file       файл сегментов
+     * @param owner      владелец цепочки
+     * @param kind       вид записей
+     * @param recordSize размер записи в байтах, кратный 4
+     */
+    public MappedRecords(@NotNull MappedSegmentFile file, int owner, int kind, int recordSize) {
+        if (recordSize <= 0 || recordSize % 4 != 0)
+            throw new IllegalArgumentException("Record size must be a positive multiple of 4: " + recordSize);
+
+        this.file = file;
+        this.owner = owner;
+        this.kind = kind;
+        this.recordSize = recordSize;
+        this.capacity = (file.getSegmentSize() - MappedSegmentFile.HEADER_SIZE) / recordSize;
+        if (capacity == 0)
+            throw new IllegalArgumentException("Record size " + recordSize + " does not fit into a segment");
+    }
+
+    /**
+     * Подключает существующий сегмент цепочки при открытии файла
+     *
+     * @param ordinal номер сегмента в цепочке
+     * @param segment номер сегмента в файле
+     * @param count   количество записей в сегменте
+     */
+    public void restoreSegment(int ordinal, int segment, int count) {
+        if (ordinal >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(ordinal + 1, segments.length * 2));
+        }
+        segments[ordinal] = segment;
+        segmentCount = Math.max(segmentCount, ordinal + 1);
+        size += count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет запись в конец
+     *
+     * @return индекс новой записи, поля которой нужно заполнить
+     */
+    public int append() {
+        if (size == segmentCount * capacity) {
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            segments[segmentCount] = file.allocate(owner, kind, segmentCount);
+            segmentCount++;
+        }
+
+        final int index = size++;
+        final int segment = segments[index / capacity];
+        file.setCount(segment, file.getCount(segment) + 1);
+        return index;
+    }
+
+    /**
+     * Удаляет все записи, оставляя сегменты цепочки для новых записей
+     */
+    public void clear() {
+        for (int ordinal = 0; ordinal < segmentCount; ordinal++) {
+            file.setCount(segments[ordinal], 0);
+        }
+        size = 0;
+    }
+
+    //region FIELDS
+    public int getInt(int index, int field) {
+        return file.getInt(segment(index), position(index) + field);
+    }
+
+    public void putInt(int index, int field, int value) {
+        file.putInt(segment(index), position(index) + field, value);
+    }
+
+    public long getLong(int index, int field) {
+        return file.getLong(segment(index), position(index) + field);
+    }
+
+    public void putLong(int index, int field, long value) {
+        file.putLong(segment(index), position(index) + field, value);
+    }
+    //endregion
+
+    /**
+     * @return значение, хранимое в заголовке первого сегмента, 0 если сегментов нет
+     */
+    public int getMark() {
+        return segmentCount == 0 ? 0 : file.getMark(segments[0]);
+    }
+
+    /**
+     * Сохраняет значение в заголовке первого сегмента, цепочка не должна быть пустой
+     */
+    public void setMark(int mark) {
+        file.setMark(segments[0], mark);
+    }
+
+    private int segment(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+
+        return segments[index / capacity];
+    }
+
+    private int position(int index) {
+        return MappedSegmentFile.HEADER_SIZE + (index % capacity) * recordSize;
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.mayakplay.testtask.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Файл из сегментов одинакового размера, отображенный в память через {@link FileChannel#map}.
+ * <p>
+ * Файл отображается областями по {@link #SEGMENTS_PER_REGION} сегментов, поэтому его размер
+ * не ограничен размером одного {@link MappedByteBuffer}, а данные читаются и пишутся
+ * через страничный кеш без копирования в кучу.
+ * <p>
+ * Сегмент 0 - заголовок файла с его описанием и последней операцией, остальные выдаются
+ * по порядку. В начале каждого сегмента лежат владелец (продукт), вид записей, номер сегмента
+ * в цепочке владельца, количество записей и одно свободное значение, поэтому при открытии
+ * цепочки восстанавливаются по заголовкам сегментов, не читая записей. Используется одним потоком.
+ */
+public final class MappedSegmentFile implements Closeable {
+
+    public static final int SEGMENTS_PER_REGION = 1024;
+
+    /**
+     * Размер заголовка сегмента, записи начинаются после него
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Размер описания файла в сегменте 0, остаток сегмента занимает {@link MappedOperationLog}
+     */
+    public static final int FILE_HEADER_SIZE = 16;
+
+    /**
+     * Область должна помещаться в один {@link MappedByteBuffer}
+     */
+    private static final int MAX_SEGMENT_SIZE = 1 << 20;
+
+    private static final int MAGIC = 0x4d534547;
+    private static final int VERSION = 4;
+
+    private static final int OWNER_OFFSET = 0;
+    private static final int KIND_OFFSET = 4;
+    private static final int ORDINAL_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int MARK_OFFSET = 16;
+
+    /**
+     * Вид свободного сегмента, файл растет нулями
+     */
+    private static final int FREE = 0;
+
+    @NotNull
+    private final FileChannel channel;
+
+    private final int segmentSize;
+    private final long regionSize;
+
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+    /**
+     * Количество выданных сегментов, включая заголовок файла
+     */
+    private int segments;
+
+    private MappedSegmentFile(@NotNull FileChannel channel, int segmentSize) {
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        this.regionSize = (long) segmentSize * SEGMENTS_PER_REGION;
+    }
+
+    /**
+     * Открывает или создает файл сегментов
+     *
+     * @param file        путь к файлу
+     * @param segmentSize размер сегмента в байтах, степень двойки. Должен совпадать с размером, с которым файл создан
+     * @throws IOException если файл не является файлом сегментов такого размера
+     */
+    @NotNull
+    public static MappedSegmentFile open(@NotNull Path file, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE * 2 || segmentSize > MAX_SEGMENT_SIZE || Integer.bitCount(segmentSize) != 1)
+            throw new IllegalArgumentException("Segment size must be a power of two between "
+                    + HEADER_SIZE * 2 + " and " + MAX_SEGMENT_SIZE + ": " + segmentSize);
+
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final MappedSegmentFile segmentFile = new MappedSegmentFile(channel, segmentSize);
+        try {
+            segmentFile.mapExisting();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return segmentFile;
+    }
+
+    private void mapExisting() throws IOException {
+        final long size = channel.size();
+        if (size % regionSize != 0)
+            throw new IOException("File size " + size + " is not a multiple of region size " + regionSize);
+
+        for (long position = 0; position < size; position += regionSize) {
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize));
+        }
+
+        if (regions.isEmpty()) {
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize));
+            putInt(0, 0, MAGIC);
+            putInt(0, 4, VERSION);
+            putInt(0, 8, segmentSize);
+            segments = 1;
+            return;
+        }
+
+        if (getInt(0, 0) != MAGIC)
+            throw new IOException("Not a segment file");
+        if (getInt(0, 4) != VERSION)
+            throw new IOException("Segment file version " + getInt(0, 4) + " differs from " + VERSION);
+        if (getInt(0, 8) != segmentSize)
+            throw new IOException("File segment size " + getInt(0, 8) + " differs from " + segmentSize);
+
+        final int capacity = regions.size() * SEGMENTS_PER_REGION;
+        segments = 1;
+        while (segments < capacity && getKind(segments) != FREE) {
+            segments++;
+        }
+    }
+
+    /**
+     * Выдает следующий свободный сегмент, при необходимости увеличивая файл на одну область
+     *
+     * @param owner   владелец сегмента
+     * @param kind    вид записей, больше 0
+     * @param ordinal номер сегмента в цепочке владельца
+     * @return номер сегмента
+     */
+    public int allocate(int owner, int kind, int ordinal) {
+        if (kind == FREE)
+            throw new IllegalArgumentException("Kind must not be " + FREE);
+
+        if (segments == regions.size() * SEGMENTS_PER_REGION) {
+            try {
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, regions.size() * regionSize, regionSize));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        final int segment = segments++;
+        putInt(segment, OWNER_OFFSET, owner);
+        putInt(segment, ORDINAL_OFFSET, ordinal);
+        putInt(segment, COUNT_OFFSET, 0);
+        putInt(segment, MARK_OFFSET, 0);
+        putInt(segment, KIND_OFFSET, kind);
+        return segment;
+    }
+
+    /**
+     * Передает заголовки выданных сегментов по порядку
+     */
+    public void forEachSegment(@NotNull SegmentConsumer consumer) {
+        for (int segment = 1; segment < segments; segment++) {
+            consumer.accept(segment, getInt(segment, OWNER_OFFSET), getKind(segment),
+                    getInt(segment, ORDINAL_OFFSET), getCount(segment));
+        }
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    //region HEADER
+    public int getKind(int segment) {
+        return getInt(segment, KIND_OFFSET);
+    }
+
+    public int getCount(int segment) {
+        return getInt(segment, COUNT_OFFSET);
+    }
+
+    public void setCount(int segment, int count) {
+        putInt(segment, COUNT_OFFSET, count);
+    }
+
+    /**
+     * @return значение, которое владелец хранит в заголовке сегмента
+     */
+    public int getMark(int segment) {
+        return getInt(segment, MARK_OFFSET);
+    }
+
+    public void setMark(int segment, int mark) {
+        putInt(segment, MARK_OFFSET, mark);
+    }
+    //endregion
+
+    //region ACCESS
+    /**
+     * @param segment  номер сегмента
+     * @param position смещение от начала сегмента
+     */
+    public int getInt(int segment, int position) {
+        return region(segment).getInt(offset(segment) + position);
+    }
+
+    public void putInt(int segment, int position, int value) {
+        region(segment).putInt(offset(segment) + position, value);
+    }
+
+    public long getLong(int segment, int position) {
+        return region(segment).getLong(offset(segment) + position);
+    }
+
+    public void putLong(int segment, int position, long value) {
+        region(segment).putLong(offset(segment) + position, value);
+    }
+    //endregion
+
+    /**
+     * Сбрасывает измененные страницы на диск
+     */
+    public void force() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    /**
+     * Сбрасывает изменения и закрывает файл. Отображение освобождается сборщиком мусора
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    @NotNull
+    private MappedByteBuffer region(int segment) {
+        return regions.get(segment / SEGMENTS_PER_REGION);
+    }
+
+    private int offset(int segment) {
+        return (segment % SEGMENTS_PER_REGION) * segmentSize;
+    }
+
+    @FunctionalInterface
+    public interface SegmentConsumer {
+
+        void accept(int segment, int owner, int kind, int ordinal, int count);
+
+    }
+
+}
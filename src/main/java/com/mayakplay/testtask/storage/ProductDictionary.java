@@ -0,0 +1,114 @@
+package com.mayakplay.testtask.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Словарь имен продуктов с плотными идентификаторами 0, 1, 2...
+ * в порядке регистрации.
+ * <p>
+ * Хеш-таблица с открытой адресацией хранит идентификаторы в int[],
+ * поэтому поиск не создает объектов и не распаковывает Integer.
+ * Имя по идентификатору берется из массива.
+ */
+public final class ProductDictionary {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private String[] names = new String[DEFAULT_CAPACITY];
+    private int size;
+
+    /**
+     * Идентификатор + 1 в ячейке, 0 - пустая ячейка. Размер - степень двойки,
+     * заполненность не больше половины.
+     */
+    private int[] table = new int[DEFAULT_CAPACITY * 2];
+
+    /**
+     * @param name имя продукта
+     * @return идентификатор продукта или -1, если продукт не зарегистрирован
+     */
+    public int idOf(@NotNull String name) {
+        final int mask = table.length - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            final int id = table[slot] - 1;
+
+            if (id < 0 || names[id].equals(name))
+                return id;
+        }
+    }
+
+    /**
+     * Регистрирует продукт
+     *
+     * @param name имя продукта
+     * @return новый идентификатор или -1, если продукт уже зарегистрирован
+     */
+    public int register(@NotNull String name) {
+        if (idOf(name) >= 0)
+            return -1;
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        final int id = size++;
+        names[id] = name;
+        insert(table, name, id);
+        return id;
+    }
+
+    /**
+     * @param id идентификатор продукта
+     * @return имя продукта
+     */
+    @NotNull
+    public String nameOf(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("Unknown product id: " + id);
+
+        return names[id];
+    }
+
+    /**
+     * @param id идентификатор
+     * @return выдан ли идентификатор
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < size;
+    }
+
+    /**
+     * @return количество продуктов, оно же следующий идентификатор
+     */
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        final int[] rehashed = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            insert(rehashed, names[id], id);
+        }
+        table = rehashed;
+    }
+
+    private static void insert(int[] table, String name, int id) {
+        final int mask = table.length - 1;
+        int slot = hash(name) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int hash(String name) {
+        final int hash = name.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.Sale;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Все данные одного продукта: партии и продажи
+ */
+public final class ProductLedger {
+
+    /**
+     * Горизонт, при котором продажи не убираются в архив
+     */
+    public static final int KEEP_ALL_SALES = -1;
+
+    private final BatchIndex batches;
+    private final SalesLog sales;
+
+    public ProductLedger() {
+        this(new BatchIndex(), new SalesLog());
+    }
+
+    private ProductLedger(BatchIndex batches, SalesLog sales) {
+        this.batches = batches;
+        this.sales = sales;
+    }
+
+    /**
+     * Собирает данные продукта из готовых партий, продаж и сумм по дням
+     *
+     * @param batches партии в порядке списания
+     * @param sales   продажи в порядке регистрации
+     * @param totals  суммы по дням, в том числе убранных в архив продаж
+     */
+    @NotNull
+    public static ProductLedger of(@NotNull List<Batch> batches, @NotNull List<Sale> sales, @NotNull SalesTotals totals) {
+        final BatchIndex batchIndex = new BatchIndex();
+        for (Batch batch : batches) {
+            batchIndex.add(batch.getAmount(), batch.getPrice(), (int) batch.getDate().toEpochDay());
+        }
+        return new ProductLedger(batchIndex, SalesLog.of(sales, totals));
+    }
+
+    /**
+     * Регистрирует закупку партии
+     *
+     * @param amount   количество продукта
+     * @param price    цена за единицу
+     * @param epochDay день закупки
+     */
+    public void purchase(int amount, int price, int epochDay) {
+        batches.add(amount, price, epochDay);
+    }
+
+    /**
+     * Списывает продукт из партий и регистрирует продажу
+     *
+     * @param amount   количество продукта
+     * @param price    цена продажи за единицу
+     * @param epochDay день продажи
+     *
+     * @return прибыль от продажи
+     *
+     * @throws NotEnoughProductionException если продукции на дату недостаточно
+     */
+    public int demand(int amount, int price, int epochDay) throws NotEnoughProductionException {
+        final int finalPrice = batches.pullProduction(amount, epochDay);
+        final int profit = amount * price - finalPrice;
+
+        sales.add(amount, finalPrice, profit, epochDay);
+        return profit;
+    }
+
+    /**
+     * Убирает продажи старше горизонта, оставляя их суммы по дням, см. {@link SalesLog#archive(int)}
+     *
+     * @param horizonDays горизонт в днях от последней продажи или {@link #KEEP_ALL_SALES}
+     */
+    public void archiveSales(int horizonDays) {
+        if (horizonDays != KEEP_ALL_SALES) {
+            sales.archive(horizonDays);
+        }
+    }
+
+    /**
+     * @return true, если у продукта есть продажи, в том числе убранные в архив
+     */
+    public boolean hasSales() {
+        return !sales.getTotals().isEmpty();
+    }
+
+    /**
+     * @param epochDay день
+     * @return прибыль по день включительно
+     */
+    public long getProfitUpTo(long epochDay) {
+        return sales.getTotals().getProfitUpTo(epochDay);
+    }
+
+    /**
+     * @return суммы прибыли и количества проданного по дням.
+     * Изменяются вместе с продажами, вызывающий не должен их менять
+     */
+    @NotNull
+    public SalesTotals getSalesTotals() {
+        return sales.getTotals();
+    }
+
+    /**
+     * @param epochDay день
+     * @return количество продукта, доступного для продажи в день
+     */
+    public long getStockAt(long epochDay) {
+        return batches.getStockAt(epochDay);
+    }
+
+    /**
+     * @param epochDay день
+     * @return закупочную стоимость продукта, доступного для продажи в день
+     */
+    public long getStockValueAt(long epochDay) {
+        return batches.getStockValueAt(epochDay);
+    }
+
+    /**
+     * Копия делит с исходными данными неизменяемые части: продажи и суммы по дням
+     * заменяются при изменении, а блоки партий копируются перед изменением,
+     * поэтому копия не меняется вместе с исходными данными
+     *
+     * @return независимую копию данных продукта
+     */
+    @NotNull
+    public ProductLedger copy() {
+        return new ProductLedger(batches.copy(), sales.copy());
+    }
+
+    /**
+     * Записывает партии и продажи в двоичном виде
+     */
+    public void writeTo(@NotNull DataOutput output) throws IOException {
+        batches.writeTo(output);
+        sales.writeTo(output);
+    }
+
+    /**
+     * Читает данные продукта, записанные {@link #writeTo(DataOutput)}
+     */
+    @NotNull
+    public static ProductLedger readFrom(@NotNull DataInput input) throws IOException {
+        return new ProductLedger(BatchIndex.readFrom(input), SalesLog.readFrom(input));
+    }
+
+    /**
+     * @return представление партий в порядке списания
+     */
+    @NotNull
+    public List<Batch> getBatches() {
+        return new AbstractList<Batch>() {
+            @Override
+            public Batch get(int index) {
+                return batches.getBatch(index);
+            }
+
+            @Override
+            public int size() {
+                return batches.size();
+            }
+        };
+    }
+
+    /**
+     * @return представление не убранных в архив продаж в порядке регистрации
+     */
+    @NotNull
+    public List<Sale> getSales() {
+        return new AbstractList<Sale>() {
+            @Override
+            public Sale get(int index) {
+                return sales.getSale(index);
+            }
+
+            @Override
+            public int size() {
+                return sales.size();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.model.Sale;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Продажи одного продукта в порядке регистрации.
+ * <p>
+ * Продажи хранятся в {@link SalesSeries} по столбцам, объекты {@link Sale}
+ * создаются только по запросу. Прибыль и количество проданного
+ * дополнительно накапливаются по дням в {@link SalesTotals}.
+ * Экземпляры обоих заменяются при изменении, не трогая прежние,
+ * поэтому копия продаж стоит O(1).
+ * <p>
+ * Старые продажи можно убрать через {@link #archive(int)}: суммы по дням
+ * при этом остаются, поэтому прибыль на любую дату считается точно.
+ */
+public final class SalesLog {
+
+    @NotNull
+    private SalesSeries series;
+
+    @NotNull
+    private final SalesTotals totals;
+
+    public SalesLog() {
+        this(SalesSeries.empty(), new SalesTotals());
+    }
+
+    private SalesLog(@NotNull SalesSeries series, @NotNull SalesTotals totals) {
+        this.series = series;
+        this.totals = totals;
+    }
+
+    /**
+     * @param sales  продажи в порядке регистрации
+     * @param totals суммы по дням, в том числе убранных в архив продаж
+     * @return продажи с готовыми суммами
+     */
+    @NotNull
+    static SalesLog of(@NotNull List<Sale> sales, @NotNull SalesTotals totals) {
+        SalesSeries series = SalesSeries.empty();
+        for (Sale sale : sales) {
+            series = series.add(sale.getPrice(), sale.getProfit(), (int) sale.getDate().toEpochDay());
+        }
+        return new SalesLog(series, totals);
+    }
+
+    /**
+     * Регистрирует продажу
+     *
+     * @param amount   количество проданного продукта
+     * @param price    закупочная цена проданного продукта
+     * @param profit   прибыль
+     * @param epochDay день продажи
+     */
+    public void add(int amount, int price, int profit, int epochDay) {
+        series = series.add(price, profit, epochDay);
+        totals.add(epochDay, amount, profit);
+    }
+
+    /**
+     * @return суммы прибыли и количества по дням, изменяются вместе с продажами
+     */
+    @NotNull
+    public SalesTotals getTotals() {
+        return totals;
+    }
+
+    /**
+     * Убирает продажи, которые старше последней по дате продажи больше чем на horizonDays дней,
+     * см. {@link SalesSeries#archive(int)}
+     *
+     * @param horizonDays горизонт в днях
+     */
+    public void archive(int horizonDays) {
+        series = series.archive(horizonDays);
+    }
+
+    /**
+     * @return количество продаж, не убранных в архив
+     */
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * @return независимую копию продаж
+     */
+    @NotNull
+    public SalesLog copy() {
+        return new SalesLog(series, totals.copy());
+    }
+
+    /**
+     * Записывает продажи и суммы по дням
+     */
+    public void writeTo(@NotNull DataOutput output) throws IOException {
+        final IntColumn prices = new IntColumn();
+        final IntColumn profits = new IntColumn();
+        final IntColumn days = new IntColumn();
+        series.forEach((price, profit, epochDay) -> {
+            prices.add(price);
+            profits.add(profit);
+            days.add(epochDay);
+        });
+
+        prices.writeTo(output);
+        profits.writeTo(output);
+        days.writeTo(output);
+        totals.writeTo(output);
+    }
+
+    /**
+     * Читает продажи, записанные {@link #writeTo(DataOutput)}
+     */
+    @NotNull
+    public static SalesLog readFrom(@NotNull DataInput input) throws IOException {
+        final IntColumn prices = IntColumn.readFrom(input);
+        final IntColumn profits = IntColumn.readFrom(input);
+        final IntColumn days = IntColumn.readFrom(input);
+        if (profits.size() != prices.size() || days.size() != prices.size())
+            throw new IOException("Sale columns have different sizes");
+
+        SalesSeries series = SalesSeries.empty();
+        for (int index = 0; index < prices.size(); index++) {
+            series = series.add(prices.get(index), profits.get(index), days.get(index));
+        }
+        return new SalesLog(series, SalesTotals.readFrom(input));
+    }
+
+    /**
+     * @param index индекс продажи
+     * @return представление продажи
+     */
+    @NotNull
+    public Sale getSale(int index) {
+        return series.get(index);
+    }
+
+}
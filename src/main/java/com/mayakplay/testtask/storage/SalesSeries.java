@@ -0,0 +1,193 @@
+package com.mayakplay.testtask.storage;
+
+import com.mayakplay.testtask.model.Sale;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый список продаж одного продукта в порядке регистрации.
+ * <p>
+ * Экземпляры одной истории делят столбцы: добавление пишет продажу за концом
+ * текущего экземпляра и возвращает новый экземпляр большей длины, а прежний
+ * продолжает видеть только свои продажи. Если за концом уже записана продажа
+ * другого экземпляра (например, отмененной транзакции), столбцы копируются.
+ * Добавления в одну историю должны выполняться последовательно.
+ * <p>
+ * Старые продажи убираются в новые столбцы, чтобы не менять продажи прежних экземпляров.
+ * Продажи перебираются, только когда их стало вдвое больше, чем осталось после
+ * предыдущего перебора, поэтому вызов после каждой продажи в среднем стоит O(1).
+ */
+public final class SalesSeries {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MIN_SALES_TO_ARCHIVE = 1024;
+
+    private static final SalesSeries EMPTY = new SalesSeries(new Columns(0), 0, MIN_SALES_TO_ARCHIVE);
+
+    @NotNull
+    private final Columns columns;
+    private final int size;
+
+    /**
+     * Количество продаж, при котором {@link #archive(int)} перебирает продажи
+     */
+    private final int archiveAtSize;
+
+    private SalesSeries(@NotNull Columns columns, int size, int archiveAtSize) {
+        this.columns = columns;
+        this.size = size;
+        this.archiveAtSize = archiveAtSize;
+    }
+
+    @NotNull
+    public static SalesSeries empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param price    закупочная цена проданного продукта
+     * @param profit   прибыль
+     * @param epochDay день продажи
+     * @return продажи с добавленной продажей
+     */
+    @NotNull
+    public SalesSeries add(int price, int profit, int epochDay) {
+        Columns target = columns;
+        if (target.length != size || size == target.prices.length) {
+            target = columns.copy(size, Math.max(DEFAULT_CAPACITY, size * 2));
+        }
+
+        target.prices[size] = price;
+        target.profits[size] = profit;
+        target.days[size] = epochDay;
+        target.length = size + 1;
+
+        return new SalesSeries(target, size + 1, archiveAtSize);
+    }
+
+    /**
+     * @param horizonDays горизонт в днях от последней по дате продажи
+     * @return продажи без тех, что старше горизонта, или этот же экземпляр,
+     * если продаж меньше чем вдвое больше, чем после предыдущего перебора
+     */
+    @NotNull
+    public SalesSeries archive(int horizonDays) {
+        if (size < archiveAtSize)
+            return this;
+
+        int lastDay = Integer.MIN_VALUE;
+        for (int index = 0; index < size; index++) {
+            lastDay = Math.max(lastDay, columns.days[index]);
+        }
+
+        final long oldestKeptDay = (long) lastDay - horizonDays;
+        final Columns kept = new Columns(Math.max(DEFAULT_CAPACITY, size));
+        int count = 0;
+        for (int index = 0; index < size; index++) {
+            if (columns.days[index] >= oldestKeptDay) {
+                kept.prices[count] = columns.prices[index];
+                kept.profits[count] = columns.profits[index];
+                kept.days[count] = columns.days[index];
+                count++;
+            }
+        }
+        kept.length = count;
+
+        return new SalesSeries(kept, count, Math.max(MIN_SALES_TO_ARCHIVE, count * 2));
+    }
+
+    /**
+     * @return количество продаж, не убранных в архив
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index индекс продажи
+     * @return представление продажи
+     */
+    @NotNull
+    public Sale get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+
+        return new Sale(columns.prices[index], columns.profits[index], LocalDate.ofEpochDay(columns.days[index]));
+    }
+
+    /**
+     * Передает продажи в порядке регистрации, не создавая {@link Sale}
+     */
+    public void forEach(@NotNull SaleConsumer consumer) {
+        for (int index = 0; index < size; index++) {
+            consumer.accept(columns.prices[index], columns.profits[index], columns.days[index]);
+        }
+    }
+
+    /**
+     * @return представление продаж в порядке регистрации
+     */
+    @NotNull
+    public List<Sale> toList() {
+        return new AbstractList<Sale>() {
+            @Override
+            public Sale get(int index) {
+                return SalesSeries.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface SaleConsumer {
+
+        void accept(int price, int profit, int epochDay);
+
+    }
+
+    /**
+     * Общие столбцы экземпляров одной истории
+     */
+    private static final class Columns {
+
+        private final int[] prices;
+        private final int[] profits;
+        private final int[] days;
+
+        /**
+         * Количество записанных продаж, меняется только добавляющим потоком
+         */
+        private int length;
+
+        private Columns(int capacity) {
+            this(new int[capacity], new int[capacity], new int[capacity]);
+        }
+
+        private Columns(int[] prices, int[] profits, int[] days) {
+            this.prices = prices;
+            this.profits = profits;
+            this.days = days;
+        }
+
+        @NotNull
+        private Columns copy(int size, int capacity) {
+            final Columns copy = new Columns(
+                    Arrays.copyOf(prices, capacity),
+                    Arrays.copyOf(profits, capacity),
+                    Arrays.copyOf(days, capacity)
+            );
+            copy.length = size;
+            return copy;
+        }
+
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.mayakplay.testtask.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Прибыль и количество проданного продукта по дням.
+ * <p>
+ * Пополняется при каждой продаже, поэтому суммы за любой период
+ * считаются по двум {@link DayTotalsIndex} за O(log n) без обхода продаж.
+ */
+public final class SalesTotals {
+
+    private final DayTotalsIndex profits;
+    private final DayTotalsIndex volumes;
+
+    public SalesTotals() {
+        this(new DayTotalsIndex(), new DayTotalsIndex());
+    }
+
+    private SalesTotals(DayTotalsIndex profits, DayTotalsIndex volumes) {
+        this.profits = profits;
+        this.volumes = volumes;
+    }
+
+    /**
+     * Учитывает продажу
+     *
+     * @param epochDay день продажи
+     * @param amount   количество проданного продукта
+     * @param profit   прибыль
+     */
+    public void add(int epochDay, long amount, long profit) {
+        profits.add(epochDay, profit);
+        volumes.add(epochDay, amount);
+    }
+
+    /**
+     * Добавляет суммы другого набора по дням
+     *
+     * @param other добавляемые суммы
+     */
+    public void addAll(@NotNull SalesTotals other) {
+        profits.addAll(other.profits);
+        volumes.addAll(other.volumes);
+    }
+
+    /**
+     * @return true, если не учтено ни одной продажи
+     */
+    public boolean isEmpty() {
+        return profits.size() == 0;
+    }
+
+    /**
+     * @param epochDay день
+     * @return прибыль по день включительно
+     */
+    public long getProfitUpTo(long epochDay) {
+        return profits.sumUpTo(epochDay);
+    }
+
+    /**
+     * @param fromEpochDay первый день периода
+     * @param toEpochDay   последний день периода
+     * @return прибыль за период, 0 если период пуст
+     */
+    public long getProfitBetween(long fromEpochDay, long toEpochDay) {
+        return profits.sumBetween(fromEpochDay, toEpochDay);
+    }
+
+    /**
+     * @param fromEpochDay первый день периода
+     * @param toEpochDay   последний день периода
+     * @return количество проданного продукта за период, 0 если период пуст
+     */
+    public long getVolumeBetween(long fromEpochDay, long toEpochDay) {
+        return volumes.sumBetween(fromEpochDay, toEpochDay);
+    }
+
+    /**
+     * Передает суммы за каждый день по возрастанию дней
+     */
+    public void forEachDay(@NotNull DayTotalsConsumer consumer) {
+        profits.forEach((epochDay, profit) ->
+                consumer.accept(epochDay, volumes.sumBetween(epochDay, epochDay), profit));
+    }
+
+    /**
+     * @return независимую копию сумм
+     */
+    @NotNull
+    public SalesTotals copy() {
+        return new SalesTotals(profits.copy(), volumes.copy());
+    }
+
+    /**
+     * Записывает суммы прибыли и количества
+     */
+    public void writeTo(@NotNull DataOutput output) throws IOException {
+        profits.writeTo(output);
+        volumes.writeTo(output);
+    }
+
+    /**
+     * Читает суммы, записанные {@link #writeTo(DataOutput)}
+     */
+    @NotNull
+    public static SalesTotals readFrom(@NotNull DataInput input) throws IOException {
+        return new SalesTotals(DayTotalsIndex.readFrom(input), DayTotalsIndex.readFrom(input));
+    }
+
+    @FunctionalInterface
+    public interface DayTotalsConsumer {
+
+        void accept(int epochDay, long volume, long profit);
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.mayakplay.testtask.storage;
+
+/**
+ * Приоритеты узлов декартовых деревьев, вычисляемые по ключу.
+ * Одинаковые ключи всегда дают одинаковую форму дерева, а перемешивание
+ * битов держит глубину около O(log n) и для последовательных ключей.
+ */
+final class TreapPriority {
+
+    private TreapPriority() {
+    }
+
+    static int of(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+}
@@ -1,9 +0,0 @@
-package com.mayakplay.testtask.type;
-
-public enum ArgumentMistakeType {
-
-    OK,
-    ERROR,
-    NOT_SPECIFIED,
-
-}
@@ -0,0 +1,23 @@
+package com.mayakplay.testtask.type;
+
+/**
+ * Этап обработки команды, время которого измеряется отдельно
+ */
+public enum CommandPhase {
+
+    /**
+     * Разбор строк аргументов
+     */
+    PARSE,
+
+    /**
+     * Проверка ограничений аргументов
+     */
+    VALIDATE,
+
+    /**
+     * Вызов метода контроллера
+     */
+    INVOKE,
+
+}
@@ -0,0 +1,25 @@
+package com.mayakplay.testtask.type;
+
+/**
+ * Политика сброса журнала на диск
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Каждая запись пишется и сбрасывается на диск до возврата из операции
+     */
+    ALWAYS,
+
+    /**
+     * Записи накапливаются и сбрасываются на диск одной группой
+     * раз в заданный интервал
+     */
+    GROUP_COMMIT,
+
+    /**
+     * Записи передаются ОС раз в заданный интервал,
+     * момент записи на диск выбирает ОС
+     */
+    OS,
+
+}
@@ -0,0 +1,64 @@
+package com.mayakplay.testtask.type;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.exception.ProductAlreadyExistsException;
+import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
+
+/**
+ * Результат изменяющей операции с продуктами.
+ * Отказ возвращается значением, а не исключением, и не создает объектов.
+ */
+public enum OperationStatus {
+
+    OK,
+
+    /**
+     * Операция принята в открытую транзакцию и будет выполнена при ее завершении
+     */
+    QUEUED,
+    PRODUCT_ALREADY_EXISTS,
+    PRODUCT_DOES_NOT_EXIST,
+    NOT_ENOUGH_PRODUCTION,
+
+    /**
+     * Количество или цена операции не положительны
+     */
+    INVALID_OPERATION,
+
+    /**
+     * Транзакция открывается, когда уже открыта, или завершается, когда не открыта
+     */
+    TRANSACTION_STATE_MISMATCH;
+
+    public boolean isSuccess() {
+        return this == OK || this == QUEUED;
+    }
+
+    /**
+     * Переводит отказ в исключение прежнего API
+     *
+     * @throws ProductAlreadyExistsException если продукт уже существует
+     * @throws ProductDoesNotExistsException если продукта нет
+     * @throws NotEnoughProductionException  если продукции для продажи недостаточно
+     * @throws IllegalArgumentException      если количество или цена операции не положительны
+     * @throws IllegalStateException         если транзакция уже открыта или не открыта
+     */
+    public void throwIfFailed() {
+        switch (this) {
+            case OK:
+            case QUEUED:
+                return;
+            case PRODUCT_ALREADY_EXISTS:
+                throw new ProductAlreadyExistsException();
+            case PRODUCT_DOES_NOT_EXIST:
+                throw new ProductDoesNotExistsException();
+            case NOT_ENOUGH_PRODUCTION:
+                throw new NotEnoughProductionException();
+            case INVALID_OPERATION:
+                throw new IllegalArgumentException("Amount and price must be positive");
+            case TRANSACTION_STATE_MISMATCH:
+                throw new IllegalStateException("Transaction is already started or is not started");
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.mayakplay.testtask.type;
+
+/**
+ * Тип изменяющей операции, которую можно выполнить в транзакции
+ */
+public enum ProductOperationType {
+
+    /**
+     * Закупка партии
+     */
+    PURCHASE,
+
+    /**
+     * Продажа
+     */
+    DEMAND,
+
+}
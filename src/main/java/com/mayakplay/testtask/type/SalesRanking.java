@@ -0,0 +1,37 @@
+package com.mayakplay.testtask.type;
+
+import com.mayakplay.testtask.model.ProductSales;
+
+/**
+ * Показатель, по которому выбираются лучшие продукты
+ */
+public enum SalesRanking {
+
+    /**
+     * Прибыль за период
+     */
+    PROFIT {
+        @Override
+        public long valueOf(ProductSales sales) {
+            return sales.getProfit();
+        }
+    },
+
+    /**
+     * Количество проданного за период
+     */
+    VOLUME {
+        @Override
+        public long valueOf(ProductSales sales) {
+            return sales.getVolume();
+        }
+    },
+
+    ;
+
+    /**
+     * @return значение показателя для продукта
+     */
+    public abstract long valueOf(ProductSales sales);
+
+}
@@ -0,0 +1,20 @@
+package com.mayakplay.testtask.controller;
+
+import com.mayakplay.testtask.annotation.Argument;
+import com.mayakplay.testtask.annotation.CommandMethod;
+import lombok.Getter;
+
+import javax.validation.constraints.Positive;
+import java.util.concurrent.TimeUnit;
+
+@Getter
+public class TestCounterController {
+
+    private long total;
+
+    @CommandMethod("ADD")
+    public void add(@Positive @Argument("amount") int amount, @Argument("unit") TimeUnit unit) {
+        total += unit.toSeconds(amount);
+    }
+
+}
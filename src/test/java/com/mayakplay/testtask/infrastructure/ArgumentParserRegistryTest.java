@@ -0,0 +1,59 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.junit.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ArgumentParserRegistryTest {
+
+    @Test
+    public void shouldParseIntegers() {
+        assertEquals(0, ArgumentParserRegistry.parseInt("0"));
+        assertEquals(-42, ArgumentParserRegistry.parseInt("-42"));
+        assertEquals(Integer.MAX_VALUE, ArgumentParserRegistry.parseInt("2147483647"));
+        assertEquals(Integer.MIN_VALUE, ArgumentParserRegistry.parseInt("-2147483648"));
+        assertEquals(Long.MIN_VALUE, ArgumentParserRegistry.parseLong("-9223372036854775808"));
+
+        for (String text : new String[]{"", "-", "1a", "2147483648", "9223372036854775808", "1.5"}) {
+            try {
+                ArgumentParserRegistry.parseInt(text);
+                fail(text);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void shouldParseDatesLikeFormatter() {
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(ArgumentParserRegistry.DATE_PATTERN);
+
+        for (String text : new String[]{"01.01.2017", "29.02.2016", "31.12.1999", "30.02.2017", "01.01.17"}) {
+            assertEquals(LocalDate.parse(text, formatter), ArgumentParserRegistry.parseDate(text));
+        }
+
+        for (String text : new String[]{"32.01.2017", "01.13.2017", "1.1.2017", "aa.bb.cccc"}) {
+            try {
+                ArgumentParserRegistry.parseDate(text);
+                fail(text);
+            } catch (DateTimeException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void shouldUseRegisteredAndFallbackParsers() {
+        final ArgumentParserRegistry registry = new ArgumentParserRegistry();
+
+        assertEquals(TimeUnit.SECONDS, registry.getParser(TimeUnit.class).parse("seconds"));
+        assertEquals(1.5, registry.getParser(double.class).parse("1.5"));
+
+        registry.register(StringBuilder.class, StringBuilder::new);
+        assertEquals("test", registry.getParser(StringBuilder.class).parse("test").toString());
+    }
+
+}
@@ -1,11 +1,22 @@
 package com.mayakplay.testtask.infrastructure;
 
+import com.mayakplay.testtask.annotation.Argument;
+import com.mayakplay.testtask.annotation.CommandMethod;
+import com.mayakplay.testtask.controller.ProductController;
 import com.mayakplay.testtask.controller.TestController;
+import com.mayakplay.testtask.controller.TestCounterController;
 import com.mayakplay.testtask.controller.TestControllerUppercase;
 import com.mayakplay.testtask.exception.CommandAlreadyExistsException;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import com.mayakplay.testtask.type.CommandPhase;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.validation.constraints.Positive;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Consumer;
+
 import static org.junit.Assert.*;
 
 public class CommandProcessorTest {
@@ -37,4 +48,136 @@ public class CommandProcessorTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldInvokeControllerCommands() {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.setEcho(false);
+        processor.registerProcessedController(new ProductController(new ProductServiceImpl()));
+
+        assertEquals("OK", processor.processCommand("NEW iphone"));
+        assertEquals("ERROR", processor.processCommand("NEW iphone"));
+        assertEquals("OK", processor.processCommand("purchase iphone 1 1000 01.01.2017"));
+        assertEquals("OK", processor.processCommand("PURCHASE iphone 2 2000 01.02.2017"));
+        assertEquals("ERROR", processor.processCommand("DEMAND iphone 4 5000 01.03.2017"));
+        assertEquals("ERROR", processor.processCommand("DEMAND iphone 0 5000 01.03.2017"));
+        assertEquals("ERROR", processor.processCommand("DEMAND iphone 2"));
+        assertEquals("OK", processor.processCommand("DEMAND iphone 2 5000 01.03.2017"));
+        assertEquals("7000", processor.processCommand("SALESREPORT iphone 02.03.2017"));
+    }
+
+    @Test
+    public void shouldApplyTransactionsAtomically() {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.setEcho(false);
+        processor.registerProcessedController(new ProductController(new ProductServiceImpl()));
+
+        assertEquals("OK", processor.processCommand("NEW iphone"));
+        assertEquals("OK", processor.processCommand("NEW ipad"));
+        assertEquals("OK", processor.processCommand("PURCHASES 01.01.2017 iphone:2:1000,ipad:1:500"));
+        assertEquals("ERROR", processor.processCommand("DEMANDS 01.02.2017 iphone:1:3000,ipad:2:3000"));
+        assertEquals("ERROR", processor.processCommand("DEMANDS 01.02.2017 iphone:1:3000,imac:1:3000"));
+        assertEquals("ERROR", processor.processCommand("DEMANDS 01.02.2017 iphone:1"));
+        assertEquals("amount=2 value=2000", processor.processCommand("STOCK iphone 01.02.2017"));
+
+        assertEquals("OK", processor.processCommand("BEGIN"));
+        assertEquals("ERROR", processor.processCommand("BEGIN"));
+        assertEquals("QUEUED", processor.processCommand("DEMAND iphone 1 3000 01.02.2017"));
+        assertEquals("QUEUED", processor.processCommand("DEMAND ipad 2 3000 01.02.2017"));
+        assertEquals("ERROR", processor.processCommand("COMMIT"));
+        assertEquals("amount=2 value=2000", processor.processCommand("STOCK iphone 01.02.2017"));
+
+        assertEquals("OK", processor.processCommand("BEGIN"));
+        assertEquals("QUEUED", processor.processCommand("PURCHASE ipad 1 700 01.01.2017"));
+        assertEquals("QUEUED", processor.processCommand("DEMAND ipad 2 3000 01.02.2017"));
+        assertEquals("QUEUED", processor.processCommand("DEMAND iphone 1 3000 01.02.2017"));
+        assertEquals("OK", processor.processCommand("COMMIT"));
+        assertEquals("ERROR", processor.processCommand("COMMIT"));
+        assertEquals("ERROR", processor.processCommand("ROLLBACK"));
+        assertEquals("profit=6800 volume=3", processor.processCommand("TOTALS 01.02.2017 01.02.2017"));
+    }
+
+    @Test
+    public void shouldRecordCommandStatistics() {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.setEcho(false);
+        processor.registerProcessedController(new ProductController(new ProductServiceImpl()));
+
+        processor.processCommand("NEW iphone");
+        processor.processCommand("PURCHASE iphone 1 1000 01.01.2017");
+        processor.processCommand("PURCHASE iphone 1 -1 01.01.2017");
+        processor.processCommand("PURCHASE iphone x 1000 01.01.2017");
+
+        final Map<String, CommandStatistics.Snapshot> statistics = processor.getStatistics();
+        assertEquals(2, statistics.size());
+
+        final CommandStatistics.Snapshot purchase = statistics.get("PURCHASE");
+        assertEquals(3, purchase.getCalls());
+        assertEquals(2, purchase.getFailures());
+        assertEquals(3, purchase.getPhase(CommandPhase.PARSE).getCount());
+        assertEquals(2, purchase.getPhase(CommandPhase.VALIDATE).getCount());
+        assertEquals(1, purchase.getPhase(CommandPhase.INVOKE).getCount());
+
+        final String report = processor.processCommand("STATS");
+        assertTrue(report, report.contains(" PURCHASE calls=3 errors=2 parse="));
+    }
+
+    @Test
+    public void shouldNotAllocateWhileProcessingValidCommands() {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.setEcho(false);
+
+        final TestCounterController controller = new TestCounterController();
+        processor.registerProcessedController(controller);
+
+        final Consumer<String> ignored = message -> {
+        };
+        final StringBuilder commandLine = new StringBuilder();
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        long allocated = 0;
+        long expectedTotal = 0;
+        for (int round = 0; round < 3; round++) {
+            final long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int index = 0; index < 10000; index++) {
+                final int amount = 1000 + index * 10;
+                commandLine.setLength(0);
+                commandLine.append(index % 2 == 0 ? "add " : " ADD  ").append(amount).append(" seconds");
+
+                assertEquals("OK", processor.processCommand(commandLine, ignored));
+                expectedTotal += amount;
+            }
+            allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        }
+
+        assertEquals(expectedTotal, controller.getTotal());
+        assertTrue("allocated " + allocated + " bytes", allocated < 10000);
+    }
+
+    @Test
+    public void shouldPassNumericArgumentsToReflectedCommands() {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.setEcho(false);
+        processor.registerProcessedController(new MultiplyController());
+
+        assertEquals("15000000000", processor.processCommand("MUL 3 x 5000000000"));
+        assertEquals("ERROR", processor.processCommand("MUL 0 x 1"));
+        assertEquals("ERROR", processor.processCommand("MUL 3000000000 x 1"));
+    }
+
+    /**
+     * Вложенный контроллер: реестр для него не составляется, команда вызывается через {@link java.lang.invoke.MethodHandle}
+     */
+    public static final class MultiplyController {
+
+        @CommandMethod("MUL")
+        public long multiply(@Positive @Argument("factor") int factor, @Argument("sign") String sign,
+                             @Argument("value") long value) {
+            return factor * value;
+        }
+
+    }
+
+}
+
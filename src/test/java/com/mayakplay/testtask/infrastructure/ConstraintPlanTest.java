@@ -0,0 +1,101 @@
+package com.mayakplay.testtask.infrastructure;
+
+import com.mayakplay.testtask.controller.ProductController;
+import org.junit.Test;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ElementKind;
+import javax.validation.Path;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.constraints.*;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConstraintPlanTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    public void shouldCompileProductControllerConstraints() throws Exception {
+        final Method method = ProductController.class.getMethod(
+                "purchaseProduct", String.class, int.class, int.class, LocalDate.class);
+
+        final ConstraintPlan plan = ConstraintPlan.compile(method);
+        assertFalse(plan.isValidatorRequired());
+
+        final ProductController controller = new ProductController(null);
+        assertSameViolations(controller, method, plan, new Object[]{"iphone", 1, 1, LocalDate.now()});
+        assertSameViolations(controller, method, plan, new Object[]{"iphone", 0, -5, LocalDate.now().plusDays(1)});
+    }
+
+    @Test
+    public void shouldCheckNumericAndTemporalConstraints() throws Exception {
+        final Method method = Constrained.class.getDeclaredMethod(
+                "command", Integer.class, long.class, int.class, LocalDate.class, LocalDate.class);
+
+        final ConstraintPlan plan = ConstraintPlan.compile(method);
+        assertFalse(plan.isValidatorRequired());
+
+        final Constrained controller = new Constrained();
+        assertSameViolations(controller, method, plan, new Object[]{null, 10L, -1, LocalDate.now(), LocalDate.now()});
+        assertSameViolations(controller, method, plan, new Object[]{1, 11L, 0, LocalDate.now().plusDays(2), LocalDate.now().minusDays(1)});
+    }
+
+    @Test
+    public void shouldRequireValidatorForUnsupportedConstraints() throws Exception {
+        assertTrue(ConstraintPlan.compile(
+                Constrained.class.getDeclaredMethod("customMessage", int.class)).isValidatorRequired());
+        assertTrue(ConstraintPlan.compile(
+                Constrained.class.getDeclaredMethod("stringSize", String.class)).isValidatorRequired());
+    }
+
+    private void assertSameViolations(Object controller, Method method, ConstraintPlan plan, Object[] arguments) {
+        final Set<String> expected = new HashSet<>();
+        for (ConstraintViolation<Object> violation : validator.forExecutables()
+                .validateParameters(controller, method, arguments)) {
+            for (Path.Node node : violation.getPropertyPath()) {
+                if (node.getKind() == ElementKind.PARAMETER) {
+                    expected.add(node.as(Path.ParameterNode.class).getParameterIndex() + violation.getMessage());
+                }
+            }
+        }
+
+        final long[] numbers = new long[arguments.length];
+        for (int index = 0; index < arguments.length; index++) {
+            if (ArgumentDefinition.isNumericType(method.getParameterTypes()[index])) {
+                numbers[index] = ((Number) arguments[index]).longValue();
+            }
+        }
+
+        final Set<String> actual = new HashSet<>();
+        final boolean valid = plan.validate(arguments, numbers, (message, index) -> actual.add(index + message));
+
+        assertEquals(expected, actual);
+        assertEquals(expected.isEmpty(), valid);
+    }
+
+    @SuppressWarnings("unused")
+    public static final class Constrained {
+
+        void command(
+                @NotNull Integer first,
+                @Max(10) long second,
+                @PositiveOrZero @Min(-1) int third,
+                @FutureOrPresent @Future LocalDate fourth,
+                @Past LocalDate fifth
+        ) {
+        }
+
+        void customMessage(@Positive(message = "{value} is wrong") int value) {
+        }
+
+        void stringSize(@Size(max = 3) String value) {
+        }
+
+    }
+
+}
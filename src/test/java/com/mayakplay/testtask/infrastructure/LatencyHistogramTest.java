@@ -0,0 +1,38 @@
+package com.mayakplay.testtask.infrastructure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldKeepValuesInsideTheirBuckets() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+
+            assertTrue(value + " <= bucket max", value <= LatencyHistogram.highestValueOf(bucket));
+            assertTrue(value + " > previous bucket max", bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value * 100L);
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(1000000, snapshot.getMax());
+        assertWithinPrecision(500000, snapshot.getP50());
+        assertWithinPrecision(990000, snapshot.getP99());
+        assertWithinPrecision(999000, snapshot.getP999());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, actual >= expected && actual <= expected + expected / 16);
+    }
+
+}
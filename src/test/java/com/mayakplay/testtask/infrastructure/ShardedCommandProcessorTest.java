@@ -0,0 +1,118 @@
+package com.mayakplay.testtask.infrastructure;
+
+import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ShardedCommandProcessorTest {
+
+    @Test
+    public void shouldAnswerLikeSequentialProcessorInSubmissionOrder() {
+        final List<String> commandLines = generateCommands(new Random(42), 50, 20000);
+
+        final CommandProcessor sequential = new CommandProcessor();
+        sequential.setEcho(false);
+        sequential.registerProcessedController(new ProductController(new ProductServiceImpl()));
+        final List<String> expected = run(sequential, commandLines);
+
+        final ShardedCommandProcessor sharded = new ShardedCommandProcessor(4, 8,
+                processor -> processor.registerProcessedController(new ProductController(new ProductServiceImpl())));
+        try {
+            assertEquals(expected, run(sharded, commandLines));
+        } finally {
+            sharded.close();
+        }
+    }
+
+    @Test
+    public void shouldEchoCommandLines() {
+        final ShardedCommandProcessor sharded = new ShardedCommandProcessor(2, 2,
+                processor -> processor.registerProcessedController(new ProductController(new ProductServiceImpl())));
+        sharded.setEcho(true);
+
+        final List<String> output = new ArrayList<>();
+        sharded.submit("NEW iphone", output::add);
+        sharded.submit("NEW iphone", output::add);
+        sharded.close();
+
+        assertArrayEquals(new String[]{"NEW iphone", "OK", "NEW iphone", "ERROR"}, output.toArray());
+    }
+
+    @Test
+    public void shouldWakeSleepingShards() throws Exception {
+        final ShardedCommandProcessor sharded = new ShardedCommandProcessor(2, 2,
+                processor -> processor.registerProcessedController(new ProductController(new ProductServiceImpl())));
+
+        final List<String> output = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            Thread.sleep(20);
+            sharded.submit("NEW iphone" + round, output::add);
+            sharded.flush();
+        }
+        sharded.close();
+
+        assertArrayEquals(new String[]{"OK", "OK", "OK"}, output.toArray());
+    }
+
+    @Test
+    public void shouldRejectCrossShardCommandsInSubmissionOrder() {
+        final ShardedCommandProcessor sharded = new ShardedCommandProcessor(2, 2,
+                processor -> processor.registerProcessedController(new ProductController(new ProductServiceImpl())));
+        sharded.rejectCommands("BEGIN", "PURCHASES");
+
+        final List<String> output = new ArrayList<>();
+        sharded.submit("NEW iphone", output::add);
+        sharded.submit("begin", output::add);
+        sharded.submit("PURCHASES 01.01.2017 iphone:1:1", output::add);
+        sharded.submit("PURCHASE iphone 1 1 01.01.2017", output::add);
+        sharded.close();
+
+        assertArrayEquals(new String[]{"OK", " Command \"begin\" is not supported with shards", "ERROR",
+                " Command \"PURCHASES\" is not supported with shards", "ERROR", "OK"}, output.toArray());
+    }
+
+    private static List<String> run(CommandPipeline pipeline, List<String> commandLines) {
+        final List<String> output = new ArrayList<>();
+        for (String commandLine : commandLines) {
+            pipeline.submit(commandLine, output::add);
+        }
+        pipeline.flush();
+        return output;
+    }
+
+    private static List<String> generateCommands(Random random, int products, int count) {
+        final List<String> commandLines = new ArrayList<>();
+        for (int product = 0; product < products; product++) {
+            commandLines.add("NEW product" + product);
+        }
+
+        for (int index = 0; index < count; index++) {
+            final String product = "product" + random.nextInt(products + 1);
+            final String date = String.format("%02d.01.2017", 1 + random.nextInt(28));
+
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    commandLines.add("PURCHASE " + product + " " + (1 + random.nextInt(5)) + " 100 " + date);
+                    break;
+                case 2:
+                    commandLines.add("DEMAND " + product + " " + (1 + random.nextInt(5)) + " 150 " + date);
+                    break;
+                case 3:
+                    commandLines.add("SALESREPORT " + product + " " + date);
+                    break;
+                default:
+                    commandLines.add("DEMAND " + product + " -1");
+                    break;
+            }
+        }
+        return commandLines;
+    }
+
+}
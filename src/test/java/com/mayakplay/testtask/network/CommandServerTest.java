@@ -0,0 +1,142 @@
+package com.mayakplay.testtask.network;
+
+import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.infrastructure.CommandProcessor;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class CommandServerTest {
+
+    private CommandServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.registerProcessedController(new ProductController(new ProductServiceImpl()));
+
+        server = CommandServer.start(processor, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void shouldAnswerPipelinedCommandsInOrder() throws Exception {
+        try (Socket socket = connect()) {
+            final OutputStream output = socket.getOutputStream();
+            output.write(("NEW iphone\n"
+                    + "PURCHASE iphone 1 1000 01.01.2017\r\n"
+                    + "PURCHASE iphone 2 2000 01.02.2017\n"
+                    + "DEMAND iphone 2 5000 01.03.2017\n"
+                    + "DEMAND iphone 2\n"
+                    + "SALESREPORT iphone 02.03.2017\n"
+                    + "Q\n"
+                    + "NEW айфон\n").getBytes(StandardCharsets.UTF_8));
+
+            final BufferedReader reader = reader(socket);
+            assertEquals("OK", reader.readLine());
+            assertEquals("OK", reader.readLine());
+            assertEquals("OK", reader.readLine());
+            assertEquals("OK", reader.readLine());
+            assertEquals(" Argument \"price\" is not specified!", reader.readLine());
+            assertEquals(" Argument \"date\" is not specified!", reader.readLine());
+            assertEquals("ERROR", reader.readLine());
+            assertEquals("7000", reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void shouldKeepTransactionPerConnection() throws Exception {
+        try (Socket first = connect(); Socket second = connect()) {
+            final BufferedReader firstReader = reader(first);
+            first.getOutputStream().write(("NEW iphone\n"
+                    + "BEGIN\n"
+                    + "PURCHASE iphone 5 100 01.01.2017\n").getBytes(StandardCharsets.UTF_8));
+            assertEquals("OK", firstReader.readLine());
+            assertEquals("OK", firstReader.readLine());
+            assertEquals("QUEUED", firstReader.readLine());
+
+            final BufferedReader secondReader = reader(second);
+            second.getOutputStream().write(("PURCHASE iphone 1 100 01.01.2017\n"
+                    + "COMMIT\n"
+                    + "STOCK iphone 01.01.2017\n").getBytes(StandardCharsets.UTF_8));
+            assertEquals("OK", secondReader.readLine());
+            assertEquals("ERROR", secondReader.readLine());
+            assertEquals("amount=1 value=100", secondReader.readLine());
+
+            first.getOutputStream().write("COMMIT\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("OK", firstReader.readLine());
+
+            second.getOutputStream().write("STOCK iphone 01.01.2017\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("amount=6 value=600", secondReader.readLine());
+        }
+    }
+
+    @Test
+    public void shouldServeConcurrentClients() throws Exception {
+        final int clients = 8;
+        final int purchases = 5000;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                final String product = "product" + client;
+
+                results.add(executor.submit(() -> {
+                    try (Socket socket = connect()) {
+                        final StringBuilder commands = new StringBuilder("NEW " + product + "\n");
+                        for (int index = 0; index < purchases; index++) {
+                            commands.append("PURCHASE ").append(product).append(" 1 1 01.01.2017\n");
+                        }
+                        commands.append("DEMAND ").append(product).append(' ').append(purchases).append(" 2 01.01.2017\n");
+                        commands.append("SALESREPORT ").append(product).append(" 01.01.2017\n");
+                        socket.getOutputStream().write(commands.toString().getBytes(StandardCharsets.UTF_8));
+
+                        final BufferedReader reader = reader(socket);
+                        for (int index = 0; index < purchases + 2; index++) {
+                            assertEquals("OK", reader.readLine());
+                        }
+                        return Integer.parseInt(reader.readLine());
+                    }
+                }));
+            }
+
+            for (Future<Integer> result : results) {
+                assertEquals(purchases, (int) result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Socket connect() throws Exception {
+        final Socket socket = new Socket();
+        socket.connect(server.getLocalAddress());
+        socket.setSoTimeout(30_000);
+        return socket;
+    }
+
+    private static BufferedReader reader(Socket socket) throws Exception {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.mayakplay.testtask.output;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import static org.junit.Assert.*;
+
+public class AsyncSinkTest {
+
+    @Test
+    public void shouldWriteAllLinesInOrderBeforeClose() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AsyncSink sink = new AsyncSink(new SlowOutputStream(bytes), 64);
+
+        final StringBuilder expected = new StringBuilder();
+        for (int index = 0; index < 10000; index++) {
+            sink.println("line " + index);
+            expected.append("line ").append(index).append(System.lineSeparator());
+        }
+        sink.close();
+
+        assertEquals(expected.toString(), bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void shouldReportWriteFailure() {
+        final AsyncSink sink = new AsyncSink(new OutputStream() {
+            @Override
+            public void write(int value) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        }, 16);
+
+        try {
+            for (int index = 0; index < 1000; index++) {
+                sink.println("line " + index);
+            }
+            fail();
+        } catch (UncheckedIOException ignored) {
+        }
+        sink.close();
+    }
+
+    /**
+     * Поток, запись в который занимает время, чтобы строки копились в накопителе
+     */
+    private static final class SlowOutputStream extends OutputStream {
+
+        private final OutputStream target;
+
+        private SlowOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            target.write(value);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                Thread.sleep(0, 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            target.write(bytes, offset, length);
+        }
+
+    }
+
+}
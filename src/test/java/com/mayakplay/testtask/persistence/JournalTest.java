@@ -0,0 +1,143 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import com.mayakplay.testtask.type.FsyncPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class JournalTest {
+
+    private Path path;
+
+    @Before
+    public void createJournalFile() throws Exception {
+        path = Files.createTempFile("journal", ".log");
+    }
+
+    @After
+    public void deleteJournalFile() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void shouldRestoreStateWithEveryFsyncPolicy() throws Exception {
+        for (FsyncPolicy fsyncPolicy : FsyncPolicy.values()) {
+            Files.write(path, new byte[0]);
+
+            try (Journal journal = Journal.open(path, fsyncPolicy, 1)) {
+                fillProducts(new JournaledProductService(new ProductServiceImpl(), journal));
+            }
+
+            final ProductServiceImpl restored = new ProductServiceImpl();
+            assertEquals(fsyncPolicy.name(), 1 + 1 + 200 + 100, JournalReader.replay(path, restored));
+            assertRestored(restored);
+        }
+    }
+
+    @Test
+    public void shouldCutTornRecordAtTheEnd() throws Exception {
+        try (Journal journal = Journal.open(path, FsyncPolicy.OS, 1000)) {
+            fillProducts(new JournaledProductService(new ProductServiceImpl(), journal));
+        }
+        final long size = Files.size(path);
+
+        Files.write(path, new byte[]{0, 0, 0, 20, 2, 0, 6, 'i'}, StandardOpenOption.APPEND);
+        assertRestored(replay());
+        assertEquals(size, Files.size(path));
+
+        try (Journal journal = Journal.open(path, FsyncPolicy.ALWAYS, 0)) {
+            journal.appendDemand("iphone", 1, 10, (int) LocalDate.of(2017, 6, 1).toEpochDay());
+        }
+
+        final ProductServiceImpl restored = replay();
+        assertEquals(restored.getProfitFor("iphone", LocalDate.of(2017, 5, 31)) + 10 - 51,
+                restored.getProfitFor("iphone", LocalDate.of(2017, 6, 1)));
+    }
+
+    @Test
+    public void shouldReplayOnlyCompleteTransactions() throws Exception {
+        final LocalDate date = LocalDate.of(2017, 1, 1);
+
+        try (Journal journal = Journal.open(path, FsyncPolicy.ALWAYS, 0)) {
+            final JournaledProductService productService = new JournaledProductService(new ProductServiceImpl(), journal);
+            productService.createProduct("iphone");
+            productService.applyOperations(Arrays.asList(
+                    ProductOperation.purchase("iphone", 2, 100, date),
+                    ProductOperation.demand("iphone", 1, 300, date)
+            ));
+
+            try {
+                productService.applyOperations(Arrays.asList(
+                        ProductOperation.demand("iphone", 1, 300, date),
+                        ProductOperation.demand("iphone", 1, 300, date)
+                ));
+                fail();
+            } catch (NotEnoughProductionException ignored) {
+            }
+        }
+        final long size = Files.size(path);
+
+        try (Journal journal = Journal.open(path, FsyncPolicy.ALWAYS, 0)) {
+            journal.appendTransaction(Arrays.asList(
+                    ProductOperation.purchase("iphone", 5, 100, date),
+                    ProductOperation.demand("iphone", 5, 300, date)
+            ));
+        }
+        final byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+
+        final ProductServiceImpl restored = replay();
+        assertEquals(200, restored.getProfitFor("iphone", date));
+        assertEquals(1, restored.getStock("iphone", date).getAmount());
+        assertEquals(size, Files.size(path));
+    }
+
+    private ProductServiceImpl replay() throws Exception {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+        JournalReader.replay(path, productService);
+        return productService;
+    }
+
+    private static void fillProducts(ProductService productService) {
+        productService.createProduct("iphone");
+        productService.createProduct("айфон");
+
+        for (int index = 0; index < 100; index++) {
+            final LocalDate date = LocalDate.of(2017, 1, 1).plusDays(index);
+
+            productService.purchaseBatch("iphone", 2, 1 + index, date);
+            productService.purchaseBatch("айфон", 1, 1, date);
+            productService.demandProduct("iphone", 1, 200, date);
+
+            try {
+                productService.demandProduct("айфон", 1000, 5, date);
+                fail();
+            } catch (NotEnoughProductionException ignored) {
+            }
+        }
+    }
+
+    private static void assertRestored(ProductService productService) {
+        int expectedProfit = 0;
+        for (int index = 0; index < 100; index++) {
+            expectedProfit += 200 - (1 + index / 2);
+        }
+
+        assertEquals(expectedProfit, productService.getProfitFor("iphone", LocalDate.of(2017, 5, 1)));
+        assertEquals(100, productService.getBatches("айфон").size());
+        assertTrue(productService.getSales("айфон").isEmpty());
+    }
+
+}
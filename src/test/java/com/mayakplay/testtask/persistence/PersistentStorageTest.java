@@ -0,0 +1,99 @@
+package com.mayakplay.testtask.persistence;
+
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import com.mayakplay.testtask.type.FsyncPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PersistentStorageTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("storage");
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldRestoreFromSnapshotAndNewerJournal() throws Exception {
+        final PersistentStorage storage = open();
+        final ProductService productService = storage.getProductService();
+
+        productService.createProduct("iphone");
+        productService.purchaseBatch("iphone", 10, 100, LocalDate.of(2017, 1, 1));
+        productService.demandProduct("iphone", 2, 150, LocalDate.of(2017, 1, 2));
+        storage.snapshot().join();
+
+        productService.purchaseBatch("iphone", 5, 50, LocalDate.of(2016, 12, 31));
+        productService.demandProduct("iphone", 6, 200, LocalDate.of(2017, 1, 3));
+
+        final Path crashed = Files.createTempDirectory("crashed");
+        for (Path file : listFiles(directory)) {
+            Files.copy(file, crashed.resolve(file.getFileName()));
+        }
+
+        final ProductServiceImpl restored = new ProductServiceImpl();
+        PersistentStorage.open(crashed, restored, FsyncPolicy.ALWAYS, 0).close();
+        deleteDirectory(crashed);
+
+        assertEquals(100, restored.getProfitFor("iphone", LocalDate.of(2017, 1, 2)));
+        assertEquals(100 + 6 * 200 - 5 * 50 - 100, restored.getProfitFor("iphone", LocalDate.of(2017, 1, 3)));
+        assertEquals(2, restored.getBatches("iphone").size());
+
+        storage.close();
+    }
+
+    @Test
+    public void shouldDeleteJournalsCoveredBySnapshot() throws Exception {
+        try (PersistentStorage storage = open()) {
+            storage.getProductService().createProduct("iphone");
+            storage.snapshot().join();
+            storage.getProductService().createProduct("айфон");
+        }
+
+        final List<Path> files = listFiles(directory);
+        assertEquals(files.toString(), 2, files.size());
+
+        final ProductServiceImpl restored = new ProductServiceImpl();
+        try (PersistentStorage ignored = PersistentStorage.open(directory, restored, FsyncPolicy.OS, 10)) {
+            assertTrue(restored.getBatches("iphone").isEmpty());
+            assertTrue(restored.getBatches("айфон").isEmpty());
+        }
+    }
+
+    private PersistentStorage open() throws Exception {
+        return PersistentStorage.open(directory, new ProductServiceImpl(), FsyncPolicy.ALWAYS, 0);
+    }
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        for (Path file : listFiles(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static List<Path> listFiles(Path directory) throws Exception {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+}
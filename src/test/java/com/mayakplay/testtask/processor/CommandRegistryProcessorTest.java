@@ -0,0 +1,79 @@
+package com.mayakplay.testtask.processor;
+
+import com.mayakplay.testtask.annotation.Argument;
+import com.mayakplay.testtask.annotation.CommandDescription;
+import com.mayakplay.testtask.annotation.CommandMethod;
+import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.controller.ProductController_Commands;
+import com.mayakplay.testtask.infrastructure.CommandDeclaration;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import com.mayakplay.testtask.type.OperationStatus;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class CommandRegistryProcessorTest {
+
+    @Test
+    public void shouldDeclareCommandsAsAnnotated() throws Exception {
+        final CommandDeclaration[] declarations = new ProductController_Commands().getDeclarations();
+
+        int commands = 0;
+        for (Method method : ProductController.class.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(CommandMethod.class))
+                commands++;
+        }
+        assertEquals(commands, declarations.length);
+
+        for (CommandDeclaration declaration : declarations) {
+            final Method method = ProductController.class
+                    .getDeclaredMethod(declaration.getMethodName(), declaration.getParameterTypes());
+
+            assertEquals(method.getAnnotation(CommandMethod.class).value(), declaration.getName());
+
+            final CommandDescription description = method.getAnnotation(CommandDescription.class);
+            assertEquals(description == null ? "" : description.value(), declaration.getDescription());
+
+            final Parameter[] parameters = method.getParameters();
+            for (int index = 0; index < parameters.length; index++) {
+                assertEquals(parameters[index].getAnnotation(Argument.class).value(), declaration.getArgumentNames()[index]);
+            }
+        }
+    }
+
+    @Test
+    public void shouldInvokeCommandsDirectly() throws Throwable {
+        final ProductController_Commands registry = new ProductController_Commands();
+        final ProductController controller = new ProductController(new ProductServiceImpl());
+        final CommandDeclaration[] declarations = registry.getDeclarations();
+
+        assertEquals(OperationStatus.OK, registry.invoke(controller, indexOf(declarations, "NEW"),
+                new Object[]{"iphone"}, new long[1]));
+        registry.invoke(controller, indexOf(declarations, "PURCHASE"),
+                new Object[]{"iphone", null, null, LocalDate.of(2017, 1, 1)}, new long[]{0, 2, 1000, 0});
+        registry.invoke(controller, indexOf(declarations, "DEMAND"),
+                new Object[]{"iphone", null, null, LocalDate.of(2017, 1, 2)}, new long[]{0, 1, 1500, 0});
+
+        assertEquals("500", registry.invoke(controller, indexOf(declarations, "SALESREPORT"),
+                new Object[]{"iphone", LocalDate.of(2017, 1, 2)}, new long[2]).toString());
+
+        try {
+            registry.invoke(controller, declarations.length, new Object[0], new long[0]);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    private static int indexOf(CommandDeclaration[] declarations, String name) {
+        for (int index = 0; index < declarations.length; index++) {
+            if (declarations[index].getName().equals(name))
+                return index;
+        }
+        throw new AssertionError(name);
+    }
+
+}
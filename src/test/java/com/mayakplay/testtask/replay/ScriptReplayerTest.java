@@ -0,0 +1,46 @@
+package com.mayakplay.testtask.replay;
+
+import com.mayakplay.testtask.controller.ProductController;
+import com.mayakplay.testtask.infrastructure.CommandProcessor;
+import com.mayakplay.testtask.output.BufferedSink;
+import com.mayakplay.testtask.service.impl.ProductServiceImpl;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ScriptReplayerTest {
+
+    @Test
+    public void shouldReplayScriptWithoutEcho() throws Exception {
+        final CommandProcessor processor = new CommandProcessor();
+        processor.registerProcessedController(new ProductController(new ProductServiceImpl()));
+
+        final Path script = Files.createTempFile("script", ".cmd");
+        try {
+            Files.write(script, ("NEW iphone\n"
+                    + "PURCHASE  iphone 1 1000 01.01.2017\r\n"
+                    + "\n"
+                    + "PURCHASE iphone 2 2000 01.02.2017\n"
+                    + "DEMAND iphone 2 5000 01.03.2017\n"
+                    + "SALESREPORT iphone 02.03.2017").getBytes(StandardCharsets.UTF_8));
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ScriptReplayer.ReplayStatistics statistics = new ScriptReplayer(processor, new BufferedSink(bytes, 1024))
+                    .replay(script);
+
+            assertEquals(6, statistics.getLines());
+            assertArrayEquals(
+                    new String[]{"OK", "OK", "OK", "OK", "7000"},
+                    bytes.toString("UTF-8").split(System.lineSeparator()));
+            assertTrue(processor.isEcho());
+        } finally {
+            Files.delete(script);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.mayakplay.testtask.service.impl;
+
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
+import com.mayakplay.testtask.exception.SalesDoesNotFoundException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.storage.LedgerVersion;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentProductServiceImplTest {
+
+    private static final int THREADS = 8;
+    private static final int PRODUCTS = 64;
+    private static final int OPERATIONS = 2000;
+
+    private static final LocalDate START = LocalDate.of(2017, 1, 1);
+
+    @Test
+    public void shouldCalculateSameProfitAsSequentialImplementation() throws Exception {
+        final ProductServiceImpl sequential = new ProductServiceImpl();
+        final ConcurrentProductServiceImpl concurrent = new ConcurrentProductServiceImpl();
+
+        for (int product = 0; product < PRODUCTS; product++) {
+            sequential.createProduct(productName(product));
+            concurrent.createProduct(productName(product));
+        }
+
+        for (int product = 0; product < PRODUCTS; product++) {
+            runOperations(sequential, product);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS + 2);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int firstProduct = thread;
+                writers.add(executor.submit(() -> {
+                    for (int product = firstProduct; product < PRODUCTS; product += THREADS) {
+                        runOperations(concurrent, product);
+                    }
+                }));
+            }
+
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int thread = 0; thread < 2; thread++) {
+                readers.add(executor.submit(() -> {
+                    final Random random = new Random();
+                    while (running.get()) {
+                        try {
+                            concurrent.getProfitFor(productName(random.nextInt(PRODUCTS)), START.plusDays(400));
+                        } catch (SalesDoesNotFoundException ignored) {
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+
+        for (int product = 0; product < PRODUCTS; product++) {
+            final String productName = productName(product);
+
+            for (int day = 0; day <= 400; day += 50) {
+                final LocalDate date = START.plusDays(day);
+
+                assertEquals(profitOrZero(sequential, productName, date), profitOrZero(concurrent, productName, date));
+            }
+
+            final List<Batch> expectedBatches = sequential.getBatches(productName);
+            final List<Batch> actualBatches = concurrent.getBatches(productName);
+            assertEquals(expectedBatches.size(), actualBatches.size());
+            for (int index = 0; index < expectedBatches.size(); index++) {
+                assertEquals(expectedBatches.get(index).getAmount(), actualBatches.get(index).getAmount());
+            }
+        }
+    }
+
+    @Test
+    public void shouldPullEachUnitOnceUnderContention() throws Exception {
+        final ConcurrentProductServiceImpl concurrent = new ConcurrentProductServiceImpl();
+        final String productName = "iphone";
+        final int units = 10000;
+
+        concurrent.createProduct(productName);
+        for (int unit = 0; unit < units; unit++) {
+            concurrent.purchaseBatch(productName, 1, 1 + unit % 10, START);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int unit = 0; unit < units / THREADS; unit++) {
+                        concurrent.demandProduct(productName, 1, 20, START.plusDays(1));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final int purchasePrice = units / 10 * (1 + 2 + 3 + 4 + 5 + 6 + 7 + 8 + 9 + 10);
+        assertEquals(units * 20 - purchasePrice, concurrent.getProfitFor(productName, START.plusDays(1)));
+
+        try {
+            concurrent.demandProduct(productName, 1, 20, START.plusDays(1));
+            fail();
+        } catch (NotEnoughProductionException ignored) {
+        }
+    }
+
+    @Test
+    public void shouldKeepReadVersionUnchanged() {
+        final ConcurrentProductServiceImpl concurrent = new ConcurrentProductServiceImpl();
+        concurrent.createProduct("iphone");
+        concurrent.purchaseBatch("iphone", 2, 1000, START);
+
+        final LedgerVersion before = concurrent.getLedgerVersion("iphone");
+        concurrent.demandProduct("iphone", 1, 1500, START.plusDays(1));
+        concurrent.purchaseBatch("iphone", 5, 900, START.plusDays(2));
+        final LedgerVersion after = concurrent.getLedgerVersion("iphone");
+
+        assertTrue(after.getVersion() > before.getVersion());
+
+        assertFalse(before.hasSales());
+        assertEquals(2, before.getStockAt(START.plusDays(5).toEpochDay()));
+        assertEquals(1, before.getBatches().size());
+        assertEquals(2, before.getBatches().get(0).getAmount());
+
+        assertEquals(500, after.getProfitUpTo(START.plusDays(5).toEpochDay()));
+        assertEquals(6, after.getStockAt(START.plusDays(5).toEpochDay()));
+        assertEquals(1000 + 5 * 900, after.getStockValueAt(START.plusDays(5).toEpochDay()));
+    }
+
+    /**
+     * Выполняет детерминированную последовательность операций над продуктом,
+     * включая закупки задним числом и неудачные продажи
+     */
+    private static void runOperations(ProductService productService, int product) {
+        final String productName = productName(product);
+        final Random random = new Random(product);
+
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            final LocalDate date = START.plusDays(random.nextInt(365));
+            final int amount = 1 + random.nextInt(20);
+            final int price = 1 + random.nextInt(1000);
+
+            if (random.nextBoolean()) {
+                productService.purchaseBatch(productName, amount, price, date);
+            } else {
+                try {
+                    productService.demandProduct(productName, amount, price, date);
+                } catch (NotEnoughProductionException ignored) {
+                }
+            }
+        }
+    }
+
+    private static int profitOrZero(ProductService productService, String productName, LocalDate date) {
+        try {
+            return productService.getProfitFor(productName, date);
+        } catch (SalesDoesNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static String productName(int product) {
+        return "product" + product;
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.mayakplay.testtask.service.impl;
+
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.Stock;
+import com.mayakplay.testtask.service.ProductService;
+import com.mayakplay.testtask.storage.MappedLedger;
+import com.mayakplay.testtask.storage.MappedOperationLog;
+import com.mayakplay.testtask.storage.MappedSegmentFile;
+import com.mayakplay.testtask.type.OperationStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MappedProductServiceImplTest {
+
+    /**
+     * Шесть партий или один день на сегмент, чтобы цепочки росли быстро
+     */
+    private static final int SEGMENT_SIZE = 128;
+
+    private static final String[] PRODUCTS = {"iphone", "ipad", "айфон"};
+
+    private static final LocalDate START = LocalDate.of(2017, 1, 1);
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("mapped");
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void shouldKeepDataAfterReopening() throws Exception {
+        try (MappedProductServiceImpl productService = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            productService.createProduct("iphone");
+            productService.purchaseBatch("iphone", 1, 1000, LocalDate.of(2017, 1, 1));
+            productService.purchaseBatch("iphone", 2, 2000, LocalDate.of(2017, 2, 1));
+            productService.demandProduct("iphone", 2, 5000, LocalDate.of(2017, 3, 1));
+        }
+
+        try (MappedProductServiceImpl productService = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            assertEquals(OperationStatus.PRODUCT_ALREADY_EXISTS, productService.tryCreateProduct("iphone"));
+            assertEquals(7000, productService.getProfitFor("iphone", LocalDate.of(2017, 3, 2)));
+            assertEquals(1, productService.getBatches("iphone").size());
+            assertEquals(1, productService.getSales("iphone").size());
+
+            productService.demandProduct("iphone", 1, 3000, LocalDate.of(2017, 3, 2));
+            assertEquals(8000, productService.getProfitFor("iphone", LocalDate.of(2017, 3, 2)));
+            assertTrue(productService.getBatches("iphone").isEmpty());
+        }
+
+        try {
+            MappedProductServiceImpl.open(directory, SEGMENT_SIZE * 2);
+            fail();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void shouldMatchHeapServiceAcrossSegmentsAndRestarts() throws Exception {
+        final ProductServiceImpl expected = new ProductServiceImpl();
+        MappedProductServiceImpl actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE);
+        for (String product : PRODUCTS) {
+            assertEquals(expected.tryCreateProduct(product), actual.tryCreateProduct(product));
+        }
+
+        final Random random = new Random(25);
+        for (int round = 0; round < 4; round++) {
+            for (int step = 0; step < 2000; step++) {
+                applyRandomOperation(random, expected, actual);
+            }
+            assertSameState(expected, actual);
+
+            actual.close();
+            actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE);
+            assertSameState(expected, actual);
+        }
+        actual.close();
+    }
+
+    @Test
+    public void shouldApplyFarBackdatedOperations() throws Exception {
+        final ProductServiceImpl expected = new ProductServiceImpl();
+        try (MappedProductServiceImpl actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            for (ProductService productService : Arrays.<ProductService>asList(expected, actual)) {
+                productService.createProduct("iphone");
+                productService.purchaseBatch("iphone", 5000, 1000, START.plusDays(1));
+                for (int day = 2; day < 3000; day++) {
+                    productService.purchaseBatch("iphone", 1, 1000 + day, START.plusDays(day));
+                    productService.demandProduct("iphone", 2, 3000, START.plusDays(day));
+                }
+
+                assertEquals(OperationStatus.OK, productService.tryPurchaseBatch("iphone", 10, 500, START));
+                assertEquals(OperationStatus.OK, productService.tryDemandProduct("iphone", 3, 2000, START));
+            }
+
+            for (LocalDate date = START; date.isBefore(START.plusDays(3000)); date = date.plusDays(97)) {
+                assertEquals(expected.getStock("iphone", date).getAmount(), actual.getStock("iphone", date).getAmount());
+                assertEquals(expected.getStock("iphone", date).getValue(), actual.getStock("iphone", date).getValue());
+                assertEquals(expected.getProfitBetween("iphone", START, date), actual.getProfitBetween("iphone", START, date));
+            }
+            assertEquals(7, actual.getBatches("iphone").get(0).getAmount());
+        }
+    }
+
+    @Test
+    public void shouldCompleteInterruptedOperationsOnOpen() throws Exception {
+        final ProductServiceImpl expected = new ProductServiceImpl();
+        final Random random = new Random(9);
+        int purchases = 0;
+        try (MappedProductServiceImpl actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            for (ProductService productService : Arrays.<ProductService>asList(expected, actual)) {
+                for (String product : PRODUCTS) {
+                    productService.createProduct(product);
+                }
+                productService.purchaseBatch("iphone", 100, 1000, START);
+            }
+            purchases++;
+
+            for (int step = 0; step < 300; step++) {
+                final int amount = 1 + random.nextInt(10);
+                final LocalDate date = START.plusDays(random.nextInt(60));
+                if (random.nextBoolean()) {
+                    expected.purchaseBatch("iphone", amount, 100 + step, date);
+                    actual.purchaseBatch("iphone", amount, 100 + step, date);
+                    purchases++;
+                } else {
+                    assertEquals(expected.tryDemandProduct("iphone", amount, 3000, date),
+                            actual.tryDemandProduct("iphone", amount, 3000, date));
+                }
+            }
+        }
+
+        final LocalDate date = START.plusDays(30);
+        long stock = expected.getStock("iphone", START.plusDays(60)).getAmount();
+        expected.purchaseBatch("iphone", 4, 500, date);
+        interrupt(MappedOperationLog.PURCHASE, 4, 500, date, purchases, 0, stock);
+        try (MappedProductServiceImpl actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            assertSameState(expected, actual);
+        }
+
+        stock = expected.getStock("iphone", START.plusDays(60)).getAmount();
+        final int sales = expected.getSales("iphone").size();
+        expected.demandProduct("iphone", 7, 3000, date);
+        final int cost = expected.getSales("iphone").get(sales).getPrice();
+        interrupt(MappedOperationLog.DEMAND, 7, 3000, date, sales, cost, stock);
+        try (MappedProductServiceImpl actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            assertSameState(expected, actual);
+
+            expected.demandProduct("iphone", 2, 3000, date);
+            actual.demandProduct("iphone", 2, 3000, date);
+        }
+
+        final int completedSales = expected.getSales("iphone").size() - 1;
+        final int completedCost = expected.getSales("iphone").get(completedSales).getPrice();
+        interrupt(MappedOperationLog.DEMAND, 2, 3000, date, completedSales, completedCost,
+                expected.getStock("iphone", START.plusDays(60)).getAmount() + 2);
+        try (MappedProductServiceImpl actual = MappedProductServiceImpl.open(directory, SEGMENT_SIZE)) {
+            assertSameState(expected, actual);
+        }
+    }
+
+    /**
+     * Отмечает операцию начатой, как будто процесс прервался до или после ее записей,
+     * и портит производные записи дней
+     */
+    private void interrupt(int type, int amount, int price, LocalDate date, int records, int cost, long stock)
+            throws IOException {
+        try (MappedSegmentFile file = MappedSegmentFile.open(directory.resolve("segments.dat"), SEGMENT_SIZE)) {
+            new MappedOperationLog(file).begin(0, type, amount, price, (int) date.toEpochDay(), records, cost, stock);
+            file.forEachSegment((segment, owner, kind, ordinal, count) -> {
+                if (kind == MappedLedger.DAY_KIND) {
+                    for (int position = MappedSegmentFile.HEADER_SIZE; position < SEGMENT_SIZE; position += 4) {
+                        file.putInt(segment, position, -7);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void applyRandomOperation(Random random, ProductService expected, ProductService actual) {
+        final String product = PRODUCTS[random.nextInt(PRODUCTS.length)];
+        final int amount = 1 + random.nextInt(10);
+        final int price = 1 + random.nextInt(100);
+        final LocalDate date = START.plusDays(random.nextInt(60));
+
+        switch (random.nextInt(4)) {
+            case 0:
+                assertEquals(expected.tryPurchaseBatch(product, amount, price, date),
+                        actual.tryPurchaseBatch(product, amount, price, date));
+                break;
+            case 1:
+            case 2:
+                assertEquals(expected.tryDemandProduct(product, amount, price, date),
+                        actual.tryDemandProduct(product, amount, price, date));
+                break;
+            case 3:
+                final List<ProductOperation> operations = Arrays.asList(
+                        ProductOperation.purchase(product, amount, price, date),
+                        ProductOperation.demand(product, amount + random.nextInt(10), price, date.plusDays(random.nextInt(5) - 2)),
+                        ProductOperation.demand(PRODUCTS[random.nextInt(PRODUCTS.length)], amount, price, date.minusDays(1))
+                );
+                assertEquals(expected.tryApplyOperations(operations), actual.tryApplyOperations(operations));
+                break;
+        }
+    }
+
+    private static void assertSameState(ProductService expected, ProductService actual) {
+        final LocalDate end = START.plusDays(60);
+
+        for (String product : PRODUCTS) {
+            for (LocalDate date = START.minusDays(1); !date.isAfter(end); date = date.plusDays(7)) {
+                final Stock expectedStock = expected.getStock(product, date);
+                final Stock actualStock = actual.getStock(product, date);
+
+                assertEquals(expectedStock.getAmount(), actualStock.getAmount());
+                assertEquals(expectedStock.getValue(), actualStock.getValue());
+                assertEquals(expected.getProfitBetween(product, START, date), actual.getProfitBetween(product, START, date));
+            }
+
+            final List<Sale> expectedSales = expected.getSales(product);
+            final List<Sale> actualSales = actual.getSales(product);
+            assertEquals(expectedSales.size(), actualSales.size());
+            for (int index = 0; index < expectedSales.size(); index++) {
+                assertEquals(expectedSales.get(index).toString(), actualSales.get(index).toString());
+            }
+        }
+
+        assertEquals(expected.getSalesSummary(START, end).toString(), actual.getSalesSummary(START, end).toString());
+    }
+
+}
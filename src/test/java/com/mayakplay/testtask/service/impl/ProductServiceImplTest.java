@@ -1,9 +1,23 @@
 package com.mayakplay.testtask.service.impl;
 
+import com.mayakplay.testtask.exception.NotEnoughProductionException;
 import com.mayakplay.testtask.exception.ProductDoesNotExistsException;
+import com.mayakplay.testtask.model.Batch;
+import com.mayakplay.testtask.model.ProductOperation;
+import com.mayakplay.testtask.model.ProductSales;
+import com.mayakplay.testtask.model.Sale;
+import com.mayakplay.testtask.model.SalesSummary;
+import com.mayakplay.testtask.model.Stock;
+import com.mayakplay.testtask.storage.ProductLedger;
+import com.mayakplay.testtask.type.OperationStatus;
+import com.mayakplay.testtask.type.SalesRanking;
 import org.junit.Test;
 
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
 
@@ -33,6 +47,32 @@ public class ProductServiceImplTest {
         }
     }
 
+    @Test
+    public void shouldReturnStatusesWithoutChangingState() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        assertEquals(OperationStatus.OK, productService.tryCreateProduct(productName));
+        assertEquals(OperationStatus.PRODUCT_ALREADY_EXISTS, productService.tryCreateProduct(productName));
+        assertEquals(OperationStatus.PRODUCT_DOES_NOT_EXIST, productService.tryPurchaseBatch("test", 1, 1, LocalDate.of(2017, 1, 1)));
+        assertEquals(OperationStatus.PRODUCT_DOES_NOT_EXIST, productService.tryDemandProduct(7, 1, 1, LocalDate.of(2017, 1, 1)));
+
+        assertEquals(OperationStatus.OK, productService.tryPurchaseBatch(productName, 1, 1000, LocalDate.of(2017, 1, 1)));
+        assertEquals(OperationStatus.NOT_ENOUGH_PRODUCTION, productService.tryDemandProduct(productName, 2, 1500, LocalDate.of(2017, 1, 2)));
+        assertEquals(OperationStatus.INVALID_OPERATION, productService.tryApplyOperations(Arrays.asList(
+                ProductOperation.demand(productName, 1, 1500, LocalDate.of(2017, 1, 2)),
+                ProductOperation.purchase(productName, 0, 1000, LocalDate.of(2017, 1, 2))
+        )));
+        assertEquals(OperationStatus.NOT_ENOUGH_PRODUCTION, productService.tryApplyOperations(Arrays.asList(
+                ProductOperation.demand(productName, 1, 1500, LocalDate.of(2017, 1, 2)),
+                ProductOperation.demand(productName, 1, 1500, LocalDate.of(2017, 1, 2))
+        )));
+
+        assertTrue(productService.getSales(productName).isEmpty());
+        assertEquals(1, productService.getStock(productName, LocalDate.of(2017, 1, 2)).getAmount());
+    }
+
     @Test
     public void shouldCalculateCorrectPrice() {
         final ProductServiceImpl productService = new ProductServiceImpl();
@@ -50,4 +90,279 @@ public class ProductServiceImplTest {
         assertEquals(7000, profitFor);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldPullBackdatedBatchFirst() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        productService.createProduct(productName);
+        productService.purchaseBatch(productName, 1, 2000, LocalDate.of(2017, 2, 1));
+        productService.purchaseBatch(productName, 1, 1000, LocalDate.of(2017, 1, 1));
+
+        productService.demandProduct(productName, 1, 5000, LocalDate.of(2017, 3, 1));
+
+        assertEquals(4000, productService.getProfitFor(productName, LocalDate.of(2017, 3, 1)));
+    }
+
+    @Test
+    public void shouldNotDemandProductPurchasedLater() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        productService.createProduct(productName);
+        productService.purchaseBatch(productName, 1, 1000, LocalDate.of(2017, 1, 1));
+        productService.purchaseBatch(productName, 5, 1000, LocalDate.of(2017, 3, 1));
+
+        try {
+            productService.demandProduct(productName, 2, 5000, LocalDate.of(2017, 2, 1));
+
+            fail();
+        } catch (NotEnoughProductionException ignored) {
+        }
+
+        productService.demandProduct(productName, 1, 5000, LocalDate.of(2017, 2, 1));
+        productService.demandProduct(productName, 5, 5000, LocalDate.of(2017, 3, 1));
+
+        assertEquals(24000, productService.getProfitFor(productName, LocalDate.of(2017, 3, 1)));
+    }
+
+    @Test
+    public void shouldSkipExhaustedBatches() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        productService.createProduct(productName);
+        for (int day = 1; day <= 20; day++) {
+            productService.purchaseBatch(productName, 2, day, LocalDate.of(2017, 1, day));
+        }
+
+        productService.demandProduct(productName, 3, 100, LocalDate.of(2017, 2, 1));
+        productService.purchaseBatch(productName, 1, 50, LocalDate.of(2016, 12, 31));
+        productService.demandProduct(productName, 3, 100, LocalDate.of(2017, 2, 1));
+
+        assertEquals(600 - (1 + 1 + 2) - (50 + 2 + 3), productService.getProfitFor(productName, LocalDate.of(2017, 2, 1)));
+    }
+
+    @Test
+    public void shouldCalculateProfitUpToDate() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        productService.createProduct(productName);
+        productService.purchaseBatch(productName, 10, 100, LocalDate.of(2017, 1, 1));
+
+        productService.demandProduct(productName, 1, 300, LocalDate.of(2017, 3, 1));
+        productService.demandProduct(productName, 1, 200, LocalDate.of(2017, 2, 1));
+        productService.demandProduct(productName, 1, 400, LocalDate.of(2017, 3, 1));
+        productService.demandProduct(productName, 1, 150, LocalDate.of(2017, 1, 15));
+
+        assertEquals(0, productService.getProfitFor(productName, LocalDate.of(2017, 1, 14)));
+        assertEquals(50, productService.getProfitFor(productName, LocalDate.of(2017, 1, 15)));
+        assertEquals(150, productService.getProfitFor(productName, LocalDate.of(2017, 2, 28)));
+        assertEquals(650, productService.getProfitFor(productName, LocalDate.of(2017, 3, 1)));
+    }
+
+    @Test
+    public void shouldExposeBatchesAndSalesAsViews() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        productService.createProduct(productName);
+        productService.purchaseBatch(productName, 3, 1000, LocalDate.of(2017, 2, 1));
+        productService.purchaseBatch(productName, 2, 500, LocalDate.of(2017, 1, 1));
+        productService.demandProduct(productName, 4, 2000, LocalDate.of(2017, 3, 1));
+
+        final List<Batch> batches = productService.getBatches(productName);
+        assertEquals(2, batches.size());
+        assertEquals(0, batches.get(0).getAmount());
+        assertEquals(LocalDate.of(2017, 1, 1), batches.get(0).getDate());
+        assertEquals(1, batches.get(1).getAmount());
+
+        final List<Sale> sales = productService.getSales(productName);
+        assertEquals(1, sales.size());
+        assertEquals(3000, sales.get(0).getPrice());
+        assertEquals(5000, sales.get(0).getProfit());
+        assertEquals(LocalDate.of(2017, 3, 1), sales.get(0).getDate());
+    }
+
+    @Test
+    public void shouldAssignDenseIdsAndServeOperationsById() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        for (int index = 0; index < 1000; index++) {
+            assertEquals(index, productService.createProduct("product" + index));
+        }
+        assertEquals(777, productService.getProductId("product777"));
+        assertEquals("product777", productService.getProductName(777));
+
+        productService.purchaseBatch(777, 2, 1000, LocalDate.of(2017, 1, 1));
+        productService.demandProduct("product777", 1, 1500, LocalDate.of(2017, 1, 2));
+        productService.demandProduct(777, 1, 2000, LocalDate.of(2017, 1, 3));
+
+        assertEquals(500, productService.getProfitFor(777, LocalDate.of(2017, 1, 2)));
+        assertEquals(1500, productService.getProfitFor("product777", LocalDate.of(2017, 1, 3)));
+
+        try {
+            productService.purchaseBatch(1000, 1, 1, LocalDate.now());
+            fail();
+        } catch (ProductDoesNotExistsException ignored) {
+        }
+    }
+
+    @Test
+    public void shouldReportSalesBetweenDatesAcrossProducts() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        productService.createProduct("iphone");
+        productService.createProduct("ipad");
+        productService.createProduct("imac");
+        productService.purchaseBatch("iphone", 10, 100, LocalDate.of(2017, 1, 1));
+        productService.purchaseBatch("ipad", 10, 100, LocalDate.of(2017, 1, 1));
+
+        productService.demandProduct("iphone", 1, 300, LocalDate.of(2017, 1, 10));
+        productService.demandProduct("iphone", 2, 300, LocalDate.of(2017, 2, 10));
+        productService.demandProduct("ipad", 5, 150, LocalDate.of(2017, 2, 5));
+        productService.demandProduct("ipad", 1, 150, LocalDate.of(2017, 1, 5));
+
+        final LocalDate from = LocalDate.of(2017, 2, 1);
+        final LocalDate to = LocalDate.of(2017, 2, 28);
+
+        assertEquals(400, productService.getProfitBetween("iphone", from, to));
+        assertEquals(0, productService.getProfitBetween("imac", from, to));
+        assertEquals(0, productService.getProfitBetween("iphone", to, from));
+
+        final SalesSummary summary = productService.getSalesSummary(from, to);
+        assertEquals(650, summary.getProfit());
+        assertEquals(7, summary.getVolume());
+
+        final List<ProductSales> byProfit = productService.getTopProducts(SalesRanking.PROFIT, 5, from, to);
+        assertEquals(2, byProfit.size());
+        assertEquals("iphone", byProfit.get(0).getProductName());
+        assertEquals("ipad", byProfit.get(1).getProductName());
+
+        final List<ProductSales> byVolume = productService.getTopProducts(SalesRanking.VOLUME, 1,
+                LocalDate.of(2017, 1, 1), LocalDate.of(2017, 1, 31));
+        assertEquals(1, byVolume.size());
+        assertEquals("ipad", byVolume.get(0).getProductName());
+        assertEquals(50, byVolume.get(0).getProfit());
+    }
+
+    @Test
+    public void shouldRestoreSalesTotals() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        productService.createProduct("iphone");
+        productService.purchaseBatch("iphone", 10, 100, LocalDate.of(2017, 1, 1));
+        productService.demandProduct("iphone", 3, 200, LocalDate.of(2017, 1, 2));
+
+        final ProductServiceImpl restored = new ProductServiceImpl();
+        restored.restoreLedgers(productService.captureLedgers().get());
+
+        final SalesSummary summary = restored.getSalesSummary(LocalDate.of(2017, 1, 1), LocalDate.of(2017, 1, 31));
+        assertEquals(300, summary.getProfit());
+        assertEquals(3, summary.getVolume());
+    }
+
+    @Test
+    public void shouldNotChangeCapturedLedgersAfterOperations() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        productService.createProduct("iphone");
+        productService.purchaseBatch("iphone", 10, 100, LocalDate.of(2017, 1, 2));
+        productService.demandProduct("iphone", 3, 200, LocalDate.of(2017, 1, 3));
+
+        final Supplier<Map<String, ProductLedger>> capture = productService.captureLedgers();
+
+        productService.purchaseBatch("iphone", 5, 50, LocalDate.of(2017, 1, 1));
+        productService.demandProduct("iphone", 10, 200, LocalDate.of(2017, 1, 3));
+        productService.createProduct("ipad");
+
+        final ProductServiceImpl restored = new ProductServiceImpl();
+        restored.restoreLedgers(capture.get());
+
+        assertEquals(7, restored.getStock("iphone", LocalDate.of(2017, 1, 3)).getAmount());
+        assertEquals(1, restored.getSales("iphone").size());
+        assertEquals(300, restored.getProfitFor("iphone", LocalDate.of(2017, 1, 3)));
+        assertEquals(OperationStatus.OK, restored.tryCreateProduct("ipad"));
+    }
+
+    @Test
+    public void shouldReportStockAndItsCostOnDate() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+
+        productService.createProduct(productName);
+        productService.purchaseBatch(productName, 2, 1000, LocalDate.of(2017, 1, 1));
+        productService.purchaseBatch(productName, 3, 2000, LocalDate.of(2017, 3, 1));
+        productService.purchaseBatch(productName, 1, 500, LocalDate.of(2017, 2, 1));
+
+        productService.demandProduct(productName, 2, 5000, LocalDate.of(2017, 2, 10));
+
+        final Stock february = productService.getStock(productName, LocalDate.of(2017, 2, 15));
+        assertEquals(1, february.getAmount());
+        assertEquals(500, february.getValue());
+
+        final Stock march = productService.getStock(productName, LocalDate.of(2017, 3, 1));
+        assertEquals(4, march.getAmount());
+        assertEquals(6500, march.getValue());
+
+        assertEquals(0, productService.getStock(productName, LocalDate.of(2016, 12, 31)).getAmount());
+    }
+
+    @Test
+    public void shouldDropExhaustedBatchesWithoutChangingFifo() {
+        final ProductServiceImpl productService = new ProductServiceImpl();
+
+        final String productName = "iphone";
+        final LocalDate start = LocalDate.of(2017, 1, 1);
+
+        productService.createProduct(productName);
+        for (int day = 0; day < 1000; day++) {
+            productService.purchaseBatch(productName, 2, 100 + day, start.plusDays(day));
+        }
+        productService.demandProduct(productName, 1500, 1000, start.plusDays(1000));
+
+        final List<Batch> batches = productService.getBatches(productName);
+        assertEquals(250, batches.size());
+        assertEquals(100 + 750, batches.get(0).getPrice());
+        assertEquals(2, batches.get(0).getAmount());
+
+        productService.demandProduct(productName, 3, 1000, start.plusDays(1000));
+        assertEquals(start.plusDays(751), productService.getBatches(productName).get(1).getDate());
+        assertEquals(1, productService.getBatches(productName).get(1).getAmount());
+        assertEquals(1000 * 1500 - 2 * (100 * 750 + 749 * 750 / 2) + 3 * 1000 - 2 * 850 - 851,
+                productService.getProfitFor(productName, start.plusDays(1000)));
+    }
+
+    @Test
+    public void shouldKeepExactProfitForArchivedSales() {
+        final ProductServiceImpl archiving = new ProductServiceImpl(30);
+        final ProductServiceImpl keeping = new ProductServiceImpl();
+
+        final String productName = "iphone";
+        final LocalDate start = LocalDate.of(2017, 1, 1);
+
+        for (ProductServiceImpl productService : Arrays.asList(archiving, keeping)) {
+            productService.createProduct(productName);
+            productService.purchaseBatch(productName, 10000, 100, start);
+            for (int sale = 0; sale < 5000; sale++) {
+                productService.demandProduct(productName, 1, 100 + sale % 7, start.plusDays(sale / 10));
+            }
+        }
+
+        assertTrue(archiving.getSales(productName).size() < 1024);
+        assertEquals(5000, keeping.getSales(productName).size());
+
+        for (int day = 0; day < 500; day += 17) {
+            final LocalDate date = start.plusDays(day);
+            assertEquals(keeping.getProfitFor(productName, date), archiving.getProfitFor(productName, date));
+        }
+    }
+
+}